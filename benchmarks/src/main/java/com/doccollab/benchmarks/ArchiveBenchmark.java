@@ -0,0 +1,79 @@
+package com.doccollab.benchmarks;
+
+import com.doccollab.storage.VersionStore;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an old version from loose objects against reading it from an archive segment
+ * with ranged GETs. Two documents get identical histories; only the second is archived,
+ * so both read the same bytes.
+ */
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+
+    @Param({"65536"})
+    public int documentBytes;
+
+    @Param({"300"})
+    public int historyLength;
+
+    @Param({"0", "5"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private VersionStore versionStore;
+    private String[] looseVersion;
+    private String[] archivedVersion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        versionStore = new VersionStore(backend.s3(), LocalBackend.BUCKET, backend.config().getSnapshotInterval(), null);
+        String looseId = backend.seedDocument(documentBytes, historyLength);
+        String archivedId = backend.seedDocument(documentBytes, historyLength);
+        backend.historyArchiveHandler().handleRequest(Map.of("documentId", archivedId), LocalBackend.CONTEXT);
+
+        // A delta in the middle of the archived range: one read for it, one for its snapshot
+        int editNumber = (historyLength - backend.config().getArchiveKeepVersions()) / 2 + 5;
+        looseVersion = files(looseId, editNumber);
+        archivedVersion = files(archivedId, editNumber);
+        if (!archivedVersion[0].startsWith("archives/")) {
+            throw new IllegalStateException("Version " + editNumber + " was not archived: " + archivedVersion[0]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public String readLoose() {
+        return versionStore.readVersion(looseVersion[0], looseVersion[1]);
+    }
+
+    @Benchmark
+    public String readArchived() {
+        return versionStore.readVersion(archivedVersion[0], archivedVersion[1]);
+    }
+
+    private String[] files(String documentId, int editNumber) {
+        Map<String, AttributeValue> row = backend.dynamoDb().getItem(GetItemRequest.builder()
+                .tableName(LocalBackend.HISTORY_TABLE)
+                .key(Map.of(
+                        "documentId", AttributeValue.builder().s(documentId).build(),
+                        "editNumber", AttributeValue.builder().n(String.valueOf(editNumber)).build()))
+                .build()).item();
+        return new String[] {row.get("filePath").s(), row.get("baseFile").s()};
+    }
+}
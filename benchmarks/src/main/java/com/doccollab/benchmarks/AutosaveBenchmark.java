@@ -0,0 +1,88 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentEditHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One editor's autosave storm: back-to-back PUTs of slightly different content, with edit
+ * coalescing off and with a window longer than each iteration. The {@code versions} and
+ * {@code coalesced} counters show how many saves appended a version and how many replaced
+ * the open one instead.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AutosaveBenchmark {
+
+    // Distinct saves cycled through, so consecutive versions always differ
+    private static final int VARIANTS = 16;
+
+    @Param({"65536"})
+    public int documentBytes;
+
+    @Param({"0", "300"})
+    public long coalesceSeconds;
+
+    @Param({"0", "5"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentEditHandler handler;
+    private String documentId;
+    private String[] bodies;
+    private int save;
+
+    /** Saves per outcome, reported by JMH next to the save rate. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Saves {
+        public long versions;
+        public long coalesced;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.coalescingEditHandler(coalesceSeconds);
+
+        Random random = new Random(documentBytes);
+        String content = LocalBackend.text(documentBytes, random);
+        bodies = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            int position = random.nextInt(content.length());
+            String edited = content.substring(0, position) + "typed-" + i + " " + content.substring(position);
+            bodies[i] = LocalBackend.json("content", edited, "editedBy", "autosave", "changeDescription", "Autosave");
+        }
+    }
+
+    // Each iteration starts a fresh storm, with no window open yet
+    @Setup(Level.Iteration)
+    public void seed() {
+        backend.clear();
+        documentId = backend.seedDocument(documentBytes, 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent save(Saves saves) {
+        APIGatewayProxyResponseEvent response = handler.handleRequest(
+                LocalBackend.request(documentId, bodies[save++ % VARIANTS]), LocalBackend.CONTEXT);
+        if (response.getBody().contains("\"coalesced\":true")) {
+            saves.coalesced++;
+        } else {
+            saves.versions++;
+        }
+        return response;
+    }
+}
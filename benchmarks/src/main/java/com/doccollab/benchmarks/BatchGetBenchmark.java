@@ -0,0 +1,84 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentBatchGetHandler;
+import com.doccollab.handlers.DocumentGetHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a workspace of several documents: one GET /documents/{id} per document, as the
+ * workspace screen did, against one POST /documents/batch with and without bodies.
+ */
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchGetBenchmark {
+
+    @Param({"50"})
+    public int documents;
+
+    @Param({"1024", "65536"})
+    public int documentBytes;
+
+    @Param({"5"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentGetHandler getHandler;
+    private DocumentBatchGetHandler batchHandler;
+    private List<APIGatewayProxyRequestEvent> getRequests;
+    private APIGatewayProxyRequestEvent batchRequest;
+    private APIGatewayProxyRequestEvent metadataRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        getHandler = backend.getHandler();
+        batchHandler = backend.batchGetHandler();
+
+        getRequests = new ArrayList<>();
+        StringBuilder body = new StringBuilder("{\"documentIds\": [");
+        for (int i = 0; i < documents; i++) {
+            String documentId = backend.seedDocument(documentBytes + i, 1);
+            getRequests.add(LocalBackend.request(documentId, null));
+            body.append(i == 0 ? "\"" : ", \"").append(documentId).append('"');
+        }
+        body.append("]}");
+
+        batchRequest = LocalBackend.request(null, body.toString());
+        metadataRequest = LocalBackend.request(null, body.toString());
+        metadataRequest.setQueryStringParameters(Map.of("mode", "metadata"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public void individualGets(Blackhole blackhole) {
+        for (APIGatewayProxyRequestEvent request : getRequests) {
+            blackhole.consume(LocalBackend.check(getHandler.handleRequest(request, LocalBackend.CONTEXT)));
+        }
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent batchGet() {
+        return LocalBackend.check(batchHandler.handleRequest(batchRequest, LocalBackend.CONTEXT));
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent batchGetMetadata() {
+        return LocalBackend.check(batchHandler.handleRequest(metadataRequest, LocalBackend.CONTEXT));
+    }
+}
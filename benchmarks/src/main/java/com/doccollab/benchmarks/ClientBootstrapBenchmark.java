@@ -0,0 +1,67 @@
+package com.doccollab.benchmarks;
+
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.handlers.DocumentEditHandler;
+import com.doccollab.handlers.DocumentGetHandler;
+import com.doccollab.handlers.DocumentHistoryHandler;
+import com.doccollab.handlers.DocumentUploadHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client bootstrap in a fresh JVM: the get, edit, history and upload handlers built on the
+ * shared {@link AwsClients}, against each handler building its own default SDK clients the
+ * way they did before. The default builders start an Apache HTTP client and walk the region
+ * and credentials chains per client; the shared bootstrap does that once, on URLConnection.
+ *
+ * Both variants end with one presigned URL, so the first credentials lookup and signing are
+ * counted too. Nothing goes over the network. Region and credentials come from system
+ * properties here; run with {@code AWS_REGION} and {@code AWS_ACCESS_KEY_ID} set to measure
+ * the environment path {@link AwsClients} pins on Lambda.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 20, jvmArgsAppend = {
+        "-Daws.region=us-east-1", "-Daws.accessKeyId=AKIDBENCHMARK", "-Daws.secretAccessKey=benchmark",
+        // Apache was the only sync HTTP client on the classpath before the bootstrap
+        "-Dsoftware.amazon.awssdk.http.service.impl=software.amazon.awssdk.http.apache.ApacheSdkHttpService"})
+@State(Scope.Benchmark)
+public class ClientBootstrapBenchmark {
+
+    private static final GetObjectPresignRequest PRESIGN_REQUEST = GetObjectPresignRequest.builder()
+            .signatureDuration(Duration.ofMinutes(15))
+            .getObjectRequest(request -> request.bucket(LocalBackend.BUCKET).key("cold-start"))
+            .build();
+
+    @Benchmark
+    public void sharedClients(Blackhole blackhole) {
+        blackhole.consume(new DocumentGetHandler());
+        blackhole.consume(new DocumentEditHandler());
+        blackhole.consume(new DocumentHistoryHandler());
+        blackhole.consume(new DocumentUploadHandler());
+        blackhole.consume(AwsClients.s3Presigner().presignGetObject(PRESIGN_REQUEST).url());
+    }
+
+    @Benchmark
+    public void defaultClientsPerHandler(Blackhole blackhole) {
+        ServiceConfig config = ServiceConfig.fromEnv();
+        S3Presigner presigner = S3Presigner.create();
+        blackhole.consume(new DocumentGetHandler(DynamoDbClient.create(), S3Client.create(), presigner, config));
+        blackhole.consume(new DocumentEditHandler(DynamoDbClient.create(), S3Client.create(), config));
+        blackhole.consume(new DocumentHistoryHandler(DynamoDbClient.create(), config));
+        blackhole.consume(new DocumentUploadHandler(DynamoDbAsyncClient.create(), S3AsyncClient.create(), config));
+        blackhole.consume(presigner.presignGetObject(PRESIGN_REQUEST).url());
+    }
+}
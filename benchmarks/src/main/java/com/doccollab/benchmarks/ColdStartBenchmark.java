@@ -0,0 +1,85 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentGetHandler;
+import com.doccollab.handlers.DocumentUploadHandler;
+import com.doccollab.storage.VersionStore;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * First request in a fresh JVM: handler construction plus one invocation, which is
+ * where class loading and JSON/SDK initialization land on a Lambda cold start.
+ *
+ * Each fork measures a single call. The document is seeded straight into the stand-ins
+ * so no handler code runs before the measurement; SDK model classes used for seeding
+ * are already loaded, so this is a lower bound on the handler's own share.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark {
+
+    private static final String DOCUMENT_ID = "doc-cold0001";
+
+    private LocalBackend backend;
+    private APIGatewayProxyRequestEvent getRequest;
+    private APIGatewayProxyRequestEvent uploadRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(0);
+        String content = LocalBackend.text(4096, new Random(1));
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String key = VersionStore.BLOB_PREFIX + "cold-start";
+
+        backend.s3().putObject(PutObjectRequest.builder().bucket(LocalBackend.BUCKET).key(key).build(),
+                RequestBody.fromBytes(bytes));
+        backend.dynamoDb().putItem(PutItemRequest.builder()
+                .tableName(LocalBackend.DOCUMENTS_TABLE)
+                .item(Map.of(
+                        "documentId", AttributeValue.builder().s(DOCUMENT_ID).build(),
+                        "title", AttributeValue.builder().s("cold.txt").build(),
+                        "originalFile", AttributeValue.builder().s(key).build(),
+                        "currentFile", AttributeValue.builder().s(key).build(),
+                        "currentBaseFile", AttributeValue.builder().s(key).build(),
+                        "currentEditNumber", AttributeValue.builder().n("1").build(),
+                        "materializedEditNumber", AttributeValue.builder().n("1").build(),
+                        "currentContentLength", AttributeValue.builder().n(String.valueOf(bytes.length)).build(),
+                        "createdAt", AttributeValue.builder().s("2025-01-15T10:00:00Z").build(),
+                        "lastModified", AttributeValue.builder().s("2025-01-15T10:00:00Z").build()))
+                .build());
+
+        getRequest = LocalBackend.request(DOCUMENT_ID, null);
+        uploadRequest = LocalBackend.request(null, LocalBackend.json("fileName", "cold.txt", "fileContent", content));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstGet() {
+        DocumentGetHandler handler = backend.getHandler();
+        return handler.handleRequest(getRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstUpload() {
+        DocumentUploadHandler handler = backend.uploadHandler();
+        return handler.handleRequest(uploadRequest, LocalBackend.CONTEXT);
+    }
+}
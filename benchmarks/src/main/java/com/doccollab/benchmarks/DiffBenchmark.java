@@ -0,0 +1,111 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.diff.Granularity;
+import com.doccollab.diff.TextDiff;
+import com.doccollab.handlers.DocumentDiffHandler;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /documents/{id}/diff between two versions that differ by scattered edits: the
+ * diff computation alone, a request that computes and stores the diff, and a repeat
+ * request served from the stored copy.
+ */
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+    private static final String[] EDITS = {"revised ", "new paragraph\n", "", "final "};
+
+    @Param({"1048576", "10485760"})
+    public int documentBytes;
+
+    @Param({"line", "word"})
+    public String granularity;
+
+    @Param({"100"})
+    public int edits;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentDiffHandler handler;
+    private DocumentDiffHandler uncachedHandler;
+    private String original;
+    private String edited;
+    private String diffKey;
+    private APIGatewayProxyRequestEvent diffRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.diffHandler();
+        uncachedHandler = backend.uncachedDiffHandler();
+        Random random = new Random(documentBytes);
+        original = LocalBackend.text(documentBytes, random);
+        edited = scatterEdits(original, edits, random);
+
+        APIGatewayProxyResponseEvent upload = LocalBackend.check(backend.uploadHandler().handleRequest(
+                LocalBackend.request(null, LocalBackend.json("fileName", "diff.txt", "fileContent", original)),
+                LocalBackend.CONTEXT));
+        String documentId = LocalBackend.field(upload, "documentId");
+        LocalBackend.check(backend.editHandler().handleRequest(LocalBackend.request(documentId,
+                LocalBackend.json("content", edited, "editedBy", "benchmark")), LocalBackend.CONTEXT));
+
+        String format = granularity.equals("line") ? "unified" : "json";
+        diffRequest = LocalBackend.request(documentId, null);
+        Map<String, String> params = new HashMap<>();
+        params.put("from", "1");
+        params.put("to", "2");
+        params.put("granularity", granularity);
+        params.put("format", format);
+        diffRequest.setQueryStringParameters(params);
+        diffKey = DocumentDiffHandler.DIFF_PREFIX + documentId + "/1-2-" + granularity + "-3." + format;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public TextDiff compute() throws IOException {
+        return TextDiff.compute(new StringReader(original), new StringReader(edited), Granularity.parse(granularity));
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent diff() {
+        backend.s3().deleteObject(DeleteObjectRequest.builder().bucket(LocalBackend.BUCKET).key(diffKey).build());
+        return LocalBackend.check(uncachedHandler.handleRequest(diffRequest, LocalBackend.CONTEXT));
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent diffStored() {
+        return LocalBackend.check(handler.handleRequest(diffRequest, LocalBackend.CONTEXT));
+    }
+
+    /** {@code text} with {@code count} insertions, deletions and replacements at random positions. */
+    private static String scatterEdits(String text, int count, Random random) {
+        StringBuilder result = new StringBuilder(text);
+        for (int i = 0; i < count; i++) {
+            int position = random.nextInt(result.length() - 64);
+            String insert = EDITS[random.nextInt(EDITS.length)];
+            result.replace(position, position + random.nextInt(32), insert);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentEditHandler;
+import com.doccollab.utils.ETagUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PUT /documents/{id}: reads the current version's metadata, writes a snapshot or delta
+ * and commits the transaction. {@code ifMatch} skips the initial read.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EditBenchmark {
+
+    // Distinct edits cycled through, so consecutive versions always differ
+    private static final int VARIANTS = 16;
+
+    @Param({"1024", "65536", "1048576"})
+    public int documentBytes;
+
+    @Param({"10", "100", "1000"})
+    public int historyLength;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentEditHandler handler;
+    private String documentId;
+    private String[] bodies;
+    private int editNumber;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.editHandler();
+
+        Random random = new Random(documentBytes);
+        String content = LocalBackend.text(documentBytes, random);
+        bodies = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            int position = random.nextInt(content.length());
+            String edited = content.substring(0, position) + "edit-" + i + " " + content.substring(position);
+            bodies[i] = LocalBackend.json("content", edited, "editedBy", "benchmark", "changeDescription", "Edit " + i);
+        }
+    }
+
+    // History grows with every edit, so reseed each iteration to keep it at historyLength
+    @Setup(Level.Iteration)
+    public void seed() {
+        backend.clear();
+        documentId = backend.seedDocument(documentBytes, historyLength);
+        editNumber = historyLength;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent edit() {
+        APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, bodies[editNumber % VARIANTS]);
+        APIGatewayProxyResponseEvent response = handler.handleRequest(request, LocalBackend.CONTEXT);
+        editNumber++;
+        return response;
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent editWithIfMatch() {
+        APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, bodies[editNumber % VARIANTS]);
+        request.getHeaders().put("If-Match", ETagUtil.format(documentId, editNumber));
+        APIGatewayProxyResponseEvent response = handler.handleRequest(request, LocalBackend.CONTEXT);
+        editNumber++;
+        return response;
+    }
+}
@@ -0,0 +1,77 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentGetHandler;
+import com.doccollab.utils.ETagUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /documents/{id}: full inline response, a conditional request answered with 304,
+ * and a single 64 KB ranged page.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int documentBytes;
+
+    @Param({"10", "100", "1000"})
+    public int historyLength;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentGetHandler handler;
+    private APIGatewayProxyRequestEvent getRequest;
+    private APIGatewayProxyRequestEvent conditionalRequest;
+    private APIGatewayProxyRequestEvent rangeRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.getHandler();
+        String documentId = backend.seedDocument(documentBytes, historyLength);
+
+        getRequest = LocalBackend.request(documentId, null);
+
+        conditionalRequest = LocalBackend.request(documentId, null);
+        conditionalRequest.getHeaders().put("If-None-Match", ETagUtil.format(documentId, historyLength));
+
+        rangeRequest = LocalBackend.request(documentId, null);
+        Map<String, String> range = new HashMap<>();
+        range.put("offset", String.valueOf(documentBytes / 2));
+        range.put("length", "65536");
+        rangeRequest.setQueryStringParameters(range);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent get() {
+        return handler.handleRequest(getRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent getNotModified() {
+        return handler.handleRequest(conditionalRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent getRange() {
+        return handler.handleRequest(rangeRequest, LocalBackend.CONTEXT);
+    }
+}
@@ -0,0 +1,84 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentHistoryHandler;
+import com.doccollab.utils.StreamingResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /documents/{id}/history: the default page (the whole history at these lengths), a
+ * single 50-row page, the default page projected down to two fields, and an export streamed
+ * to a discarding stream the way the server writes it to the connection.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int historyLength;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentHistoryHandler handler;
+    private APIGatewayProxyRequestEvent fullRequest;
+    private APIGatewayProxyRequestEvent pageRequest;
+    private APIGatewayProxyRequestEvent projectedRequest;
+    private APIGatewayProxyRequestEvent exportRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.historyHandler();
+        // History size does not depend on the document size
+        String documentId = backend.seedDocument(1024, historyLength);
+
+        fullRequest = LocalBackend.request(documentId, null);
+
+        pageRequest = LocalBackend.request(documentId, null);
+        pageRequest.setQueryStringParameters(Map.of("limit", "50"));
+
+        projectedRequest = LocalBackend.request(documentId, null);
+        projectedRequest.setQueryStringParameters(Map.of("fields", "editNumber,editedAt"));
+
+        exportRequest = LocalBackend.request(documentId, null);
+        exportRequest.setQueryStringParameters(Map.of("export", "true"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent fullHistory() {
+        return handler.handleRequest(fullRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstPage() {
+        return handler.handleRequest(pageRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent projectedHistory() {
+        return handler.handleRequest(projectedRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public void exportHistory() throws IOException {
+        StreamingResponse response = (StreamingResponse) handler.handleRequest(exportRequest, LocalBackend.CONTEXT);
+        response.writeTo(OutputStream.nullOutputStream());
+    }
+}
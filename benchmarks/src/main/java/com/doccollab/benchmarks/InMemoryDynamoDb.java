@@ -0,0 +1,551 @@
+package com.doccollab.benchmarks;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.paginators.QueryIterable;
+import software.amazon.awssdk.services.dynamodb.paginators.ScanIterable;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * DynamoDB stand-in that keeps tables in memory.
+ *
+ * Supports the subset of the API and expression syntax the handlers use: single-table
+ * reads and writes, batch reads, transactions, queries on a numeric sort key and scans.
+ * Condition expressions are AND-ed comparisons and {@code attribute_(not_)exists}; update
+ * expressions are SET, REMOVE and numeric ADD. Anything else throws
+ * {@link UnsupportedOperationException} so a benchmark never silently measures the wrong thing.
+ */
+public class InMemoryDynamoDb implements DynamoDbClient {
+
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+    private volatile int batchGetItemLimit = Integer.MAX_VALUE;
+
+    /**
+     * @param latency delay added to every call, standing in for the network round trip
+     */
+    public InMemoryDynamoDb(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    /**
+     * @param rangeKey numeric sort key, or null for a hash-key-only table
+     */
+    public void createTable(String tableName, String hashKey, String rangeKey) {
+        tables.put(tableName, new Table(hashKey, rangeKey));
+    }
+
+    /**
+     * Caps the keys one BatchGetItem call processes; the rest come back as unprocessed
+     * keys, as DynamoDB returns them under throttling or past its 16 MB response limit.
+     */
+    public void setBatchGetItemLimit(int limit) {
+        this.batchGetItemLimit = limit;
+    }
+
+    /** Removes every item while keeping the table definitions. */
+    public synchronized void clear() {
+        for (Table table : tables.values()) {
+            table.partitions.clear();
+        }
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        pause();
+        synchronized (this) {
+            Map<String, AttributeValue> item = table(request.tableName()).get(request.key());
+            if (item == null) {
+                return GetItemResponse.builder().build();
+            }
+            return GetItemResponse.builder()
+                    .item(project(item, request.projectionExpression(), request.expressionAttributeNames()))
+                    .build();
+        }
+    }
+
+    @Override
+    public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+        pause();
+        synchronized (this) {
+            Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+            Map<String, KeysAndAttributes> unprocessed = new HashMap<>();
+            int remaining = batchGetItemLimit;
+            for (Map.Entry<String, KeysAndAttributes> entry : request.requestItems().entrySet()) {
+                Table table = table(entry.getKey());
+                KeysAndAttributes keys = entry.getValue();
+                List<Map<String, AttributeValue>> items = new ArrayList<>();
+                List<Map<String, AttributeValue>> skipped = new ArrayList<>();
+                for (Map<String, AttributeValue> key : keys.keys()) {
+                    if (remaining == 0) {
+                        skipped.add(key);
+                        continue;
+                    }
+                    remaining--;
+                    Map<String, AttributeValue> item = table.get(key);
+                    if (item != null) {
+                        items.add(project(item, keys.projectionExpression(), keys.expressionAttributeNames()));
+                    }
+                }
+                responses.put(entry.getKey(), items);
+                if (!skipped.isEmpty()) {
+                    unprocessed.put(entry.getKey(), keys.toBuilder().keys(skipped).build());
+                }
+            }
+            return BatchGetItemResponse.builder()
+                    .responses(responses)
+                    .unprocessedKeys(unprocessed)
+                    .build();
+        }
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        pause();
+        synchronized (this) {
+            Table table = table(request.tableName());
+            Map<String, AttributeValue> existing = table.get(request.item());
+            if (!matches(existing, request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues())) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            table.put(new HashMap<>(request.item()));
+            return PutItemResponse.builder().build();
+        }
+    }
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        pause();
+        synchronized (this) {
+            Table table = table(request.tableName());
+            Map<String, AttributeValue> existing = table.get(request.key());
+            if (!matches(existing, request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues())) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            Map<String, AttributeValue> updated = update(existing, request.key(), request.updateExpression(),
+                    request.expressionAttributeNames(), request.expressionAttributeValues());
+            table.put(updated);
+            return ReturnValue.ALL_NEW.equals(request.returnValues())
+                    ? UpdateItemResponse.builder().attributes(updated).build()
+                    : UpdateItemResponse.builder().build();
+        }
+    }
+
+    @Override
+    public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        pause();
+        synchronized (this) {
+            Table table = table(request.tableName());
+            Map<String, AttributeValue> existing = table.get(request.key());
+            if (!matches(existing, request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues())) {
+                throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+            }
+            table.remove(request.key());
+            return DeleteItemResponse.builder().build();
+        }
+    }
+
+    @Override
+    public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+        pause();
+        synchronized (this) {
+
+            // Check every condition before applying anything, as DynamoDB does
+            List<CancellationReason> reasons = new ArrayList<>();
+            boolean cancelled = false;
+            for (TransactWriteItem write : request.transactItems()) {
+                CancellationReason reason = check(write);
+                cancelled |= reason != null;
+                reasons.add(reason != null ? reason : CancellationReason.builder().code("None").build());
+            }
+            if (cancelled) {
+                throw TransactionCanceledException.builder()
+                        .message("Transaction cancelled, please refer cancellation reasons for specific reasons")
+                        .cancellationReasons(reasons)
+                        .build();
+            }
+
+            for (TransactWriteItem write : request.transactItems()) {
+                if (write.put() != null) {
+                    table(write.put().tableName()).put(new HashMap<>(write.put().item()));
+                } else if (write.update() != null) {
+                    Update update = write.update();
+                    Table table = table(update.tableName());
+                    table.put(update(table.get(update.key()), update.key(), update.updateExpression(),
+                            update.expressionAttributeNames(), update.expressionAttributeValues()));
+                } else if (write.delete() != null) {
+                    table(write.delete().tableName()).remove(write.delete().key());
+                }
+            }
+            return TransactWriteItemsResponse.builder().build();
+        }
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request) {
+        pause();
+        synchronized (this) {
+            Table table = table(request.tableName());
+            Map<String, String> names = request.expressionAttributeNames();
+            Map<String, AttributeValue> values = request.expressionAttributeValues();
+
+            // "hash = :v" optionally followed by "AND range <op> :v" or "AND range BETWEEN :a AND :b"
+            String[] parts = request.keyConditionExpression().trim().split("\\s+");
+            if (parts.length < 3 || !"=".equals(parts[1])) {
+                throw new UnsupportedOperationException("Unsupported key condition: " + request.keyConditionExpression());
+            }
+            String hashValue = values.get(parts[2]).s();
+            NavigableMap<BigDecimal, Map<String, AttributeValue>> partition =
+                    table.partitions.getOrDefault(hashValue, Collections.emptyNavigableMap());
+
+            if (parts.length > 3) {
+                if (!"AND".equals(parts[3]) || !resolve(parts[4], names).equals(table.rangeKey)) {
+                    throw new UnsupportedOperationException("Unsupported key condition: " + request.keyConditionExpression());
+                }
+                if ("BETWEEN".equals(parts[5])) {
+                    partition = partition.subMap(number(values.get(parts[6])), true, number(values.get(parts[8])), true);
+                } else {
+                    BigDecimal bound = number(values.get(parts[6]));
+                    switch (parts[5]) {
+                        case "=": partition = partition.subMap(bound, true, bound, true); break;
+                        case "<": partition = partition.headMap(bound, false); break;
+                        case "<=": partition = partition.headMap(bound, true); break;
+                        case ">": partition = partition.tailMap(bound, false); break;
+                        case ">=": partition = partition.tailMap(bound, true); break;
+                        default:
+                            throw new UnsupportedOperationException("Unsupported key condition: " + request.keyConditionExpression());
+                    }
+                }
+            }
+
+            if (Boolean.FALSE.equals(request.scanIndexForward())) {
+                partition = partition.descendingMap();
+            }
+            if (request.hasExclusiveStartKey()) {
+                BigDecimal start = number(request.exclusiveStartKey().get(table.rangeKey));
+                partition = partition.tailMap(start, false);
+            }
+
+            return page(partition.values().iterator(), request.limit(), table, request.projectionExpression(), names,
+                    (items, lastKey) -> QueryResponse.builder().items(items).count(items.size())
+                            .lastEvaluatedKey(lastKey).build());
+        }
+    }
+
+    @Override
+    public ScanResponse scan(ScanRequest request) {
+        pause();
+        synchronized (this) {
+            Table table = table(request.tableName());
+            List<Map<String, AttributeValue>> all = new ArrayList<>();
+            for (NavigableMap<BigDecimal, Map<String, AttributeValue>> partition : table.partitions.values()) {
+                all.addAll(partition.values());
+            }
+
+            Iterator<Map<String, AttributeValue>> items = all.iterator();
+            if (request.hasExclusiveStartKey()) {
+                // Scan order is only stable while the table is unchanged, like DynamoDB's
+                String startHash = request.exclusiveStartKey().get(table.hashKey).s();
+                BigDecimal startRange = table.rangeKey == null ? BigDecimal.ZERO : number(request.exclusiveStartKey().get(table.rangeKey));
+                while (items.hasNext()) {
+                    Map<String, AttributeValue> item = items.next();
+                    if (item.get(table.hashKey).s().equals(startHash) && table.range(item).compareTo(startRange) == 0) {
+                        break;
+                    }
+                }
+            }
+
+            return page(items, request.limit(), table, request.projectionExpression(), request.expressionAttributeNames(),
+                    (page, lastKey) -> ScanResponse.builder().items(page).count(page.size())
+                            .lastEvaluatedKey(lastKey).build());
+        }
+    }
+
+    @Override
+    public QueryIterable queryPaginator(QueryRequest request) {
+        return new QueryIterable(this, request);
+    }
+
+    @Override
+    public ScanIterable scanPaginator(ScanRequest request) {
+        return new ScanIterable(this, request);
+    }
+
+    private <T> T page(Iterator<Map<String, AttributeValue>> items, Integer limit, Table table, String projection,
+                       Map<String, String> names, PageBuilder<T> builder) {
+        List<Map<String, AttributeValue>> page = new ArrayList<>();
+        Map<String, AttributeValue> last = null;
+        while (items.hasNext() && (limit == null || page.size() < limit)) {
+            last = items.next();
+            page.add(project(last, projection, names));
+        }
+        // Like DynamoDB, a page cut short by the limit returns a key even if nothing follows
+        Map<String, AttributeValue> lastKey = limit != null && page.size() == limit && last != null
+                ? table.keyOf(last) : null;
+        return builder.build(page, lastKey);
+    }
+
+    private interface PageBuilder<T> {
+        T build(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastKey);
+    }
+
+    private CancellationReason check(TransactWriteItem write) {
+        String tableName;
+        Map<String, AttributeValue> key;
+        String condition;
+        Map<String, String> names;
+        Map<String, AttributeValue> values;
+        boolean returnOld;
+
+        if (write.put() != null) {
+            tableName = write.put().tableName();
+            key = write.put().item();
+            condition = write.put().conditionExpression();
+            names = write.put().expressionAttributeNames();
+            values = write.put().expressionAttributeValues();
+            returnOld = ReturnValuesOnConditionCheckFailure.ALL_OLD.equals(write.put().returnValuesOnConditionCheckFailure());
+        } else if (write.update() != null) {
+            tableName = write.update().tableName();
+            key = write.update().key();
+            condition = write.update().conditionExpression();
+            names = write.update().expressionAttributeNames();
+            values = write.update().expressionAttributeValues();
+            returnOld = ReturnValuesOnConditionCheckFailure.ALL_OLD.equals(write.update().returnValuesOnConditionCheckFailure());
+        } else if (write.delete() != null) {
+            tableName = write.delete().tableName();
+            key = write.delete().key();
+            condition = write.delete().conditionExpression();
+            names = write.delete().expressionAttributeNames();
+            values = write.delete().expressionAttributeValues();
+            returnOld = ReturnValuesOnConditionCheckFailure.ALL_OLD.equals(write.delete().returnValuesOnConditionCheckFailure());
+        } else if (write.conditionCheck() != null) {
+            tableName = write.conditionCheck().tableName();
+            key = write.conditionCheck().key();
+            condition = write.conditionCheck().conditionExpression();
+            names = write.conditionCheck().expressionAttributeNames();
+            values = write.conditionCheck().expressionAttributeValues();
+            returnOld = ReturnValuesOnConditionCheckFailure.ALL_OLD.equals(write.conditionCheck().returnValuesOnConditionCheckFailure());
+        } else {
+            throw new UnsupportedOperationException("Empty transaction item");
+        }
+
+        Map<String, AttributeValue> existing = table(tableName).get(key);
+        if (matches(existing, condition, names, values)) {
+            return null;
+        }
+        CancellationReason.Builder reason = CancellationReason.builder()
+                .code("ConditionalCheckFailed")
+                .message("The conditional request failed");
+        if (returnOld && existing != null) {
+            reason.item(existing);
+        }
+        return reason.build();
+    }
+
+    private static boolean matches(Map<String, AttributeValue> item, String condition, Map<String, String> names,
+                                   Map<String, AttributeValue> values) {
+        if (condition == null || condition.isEmpty()) {
+            return true;
+        }
+        for (String clause : condition.split("\\s+AND\\s+")) {
+            clause = clause.trim();
+            if (clause.startsWith("attribute_not_exists(") || clause.startsWith("attribute_exists(")) {
+                String attribute = resolve(clause.substring(clause.indexOf('(') + 1, clause.lastIndexOf(')')).trim(), names);
+                boolean exists = item != null && item.containsKey(attribute);
+                if (exists == clause.startsWith("attribute_not_exists(")) {
+                    return false;
+                }
+                continue;
+            }
+
+            String[] parts = clause.split("\\s+");
+            if (parts.length != 3) {
+                throw new UnsupportedOperationException("Unsupported condition: " + clause);
+            }
+            AttributeValue actual = item == null ? null : item.get(resolve(parts[0], names));
+            AttributeValue expected = values.get(parts[2]);
+            if (!compare(actual, parts[1], expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean compare(AttributeValue actual, String operator, AttributeValue expected) {
+        if (actual == null) {
+            return "<>".equals(operator);
+        }
+        if ("=".equals(operator)) {
+            return actual.n() != null && expected.n() != null
+                    ? number(actual).compareTo(number(expected)) == 0 : actual.equals(expected);
+        }
+        if ("<>".equals(operator)) {
+            return !compare(actual, "=", expected);
+        }
+        int order = actual.n() != null ? number(actual).compareTo(number(expected)) : actual.s().compareTo(expected.s());
+        switch (operator) {
+            case "<": return order < 0;
+            case "<=": return order <= 0;
+            case ">": return order > 0;
+            case ">=": return order >= 0;
+            default: throw new UnsupportedOperationException("Unsupported comparison: " + operator);
+        }
+    }
+
+    private static Map<String, AttributeValue> update(Map<String, AttributeValue> existing, Map<String, AttributeValue> key,
+                                                      String expression, Map<String, String> names,
+                                                      Map<String, AttributeValue> values) {
+        Map<String, AttributeValue> item = existing == null ? new HashMap<>(key) : new HashMap<>(existing);
+
+        // Split into "SET ...", "REMOVE ..." and "ADD ..." clauses
+        String[] clauses = expression.trim().split("(?=\\b(SET|REMOVE|ADD)\\s)");
+        for (String clause : clauses) {
+            clause = clause.trim();
+            if (clause.isEmpty()) {
+                continue;
+            }
+            String action = clause.substring(0, clause.indexOf(' '));
+            for (String assignment : clause.substring(action.length()).split(",")) {
+                assignment = assignment.trim();
+                switch (action) {
+                    case "SET": {
+                        String[] sides = assignment.split("\\s*=\\s*", 2);
+                        item.put(resolve(sides[0], names), value(sides[1], item, names, values));
+                        break;
+                    }
+                    case "REMOVE":
+                        item.remove(resolve(assignment, names));
+                        break;
+                    case "ADD": {
+                        String[] sides = assignment.split("\\s+");
+                        String attribute = resolve(sides[0], names);
+                        BigDecimal current = item.containsKey(attribute) ? number(item.get(attribute)) : BigDecimal.ZERO;
+                        item.put(attribute, AttributeValue.builder()
+                                .n(current.add(number(values.get(sides[1]))).toPlainString()).build());
+                        break;
+                    }
+                    default:
+                        throw new UnsupportedOperationException("Unsupported update: " + expression);
+                }
+            }
+        }
+        return item;
+    }
+
+    private static AttributeValue value(String operand, Map<String, AttributeValue> item, Map<String, String> names,
+                                        Map<String, AttributeValue> values) {
+        operand = operand.trim();
+        if (operand.startsWith(":")) {
+            return values.get(operand);
+        }
+        if (operand.startsWith("if_not_exists(")) {
+            String[] arguments = operand.substring("if_not_exists(".length(), operand.lastIndexOf(')')).split(",");
+            AttributeValue current = item.get(resolve(arguments[0].trim(), names));
+            return current != null ? current : values.get(arguments[1].trim());
+        }
+        throw new UnsupportedOperationException("Unsupported update value: " + operand);
+    }
+
+    private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, String projection,
+                                                       Map<String, String> names) {
+        if (projection == null || projection.isEmpty()) {
+            return new HashMap<>(item);
+        }
+        Map<String, AttributeValue> projected = new HashMap<>();
+        for (String token : projection.split(",")) {
+            String attribute = resolve(token.trim(), names);
+            AttributeValue value = item.get(attribute);
+            if (value != null) {
+                projected.put(attribute, value);
+            }
+        }
+        return projected;
+    }
+
+    private static String resolve(String token, Map<String, String> names) {
+        return token.startsWith("#") ? names.get(token) : token;
+    }
+
+    private static BigDecimal number(AttributeValue value) {
+        return new BigDecimal(value.n());
+    }
+
+    private Table table(String tableName) {
+        Table table = tables.get(tableName);
+        if (table == null) {
+            throw ResourceNotFoundException.builder().message("Requested resource not found: " + tableName).build();
+        }
+        return table;
+    }
+
+    /** Called before taking the table lock, so concurrent calls wait out their latency in parallel. */
+    private void pause() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static final class Table {
+        private final String hashKey;
+        private final String rangeKey;
+        private final Map<String, NavigableMap<BigDecimal, Map<String, AttributeValue>>> partitions = new HashMap<>();
+
+        private Table(String hashKey, String rangeKey) {
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+        }
+
+        private BigDecimal range(Map<String, AttributeValue> keyOrItem) {
+            return rangeKey == null ? BigDecimal.ZERO : number(keyOrItem.get(rangeKey));
+        }
+
+        private Map<String, AttributeValue> get(Map<String, AttributeValue> keyOrItem) {
+            NavigableMap<BigDecimal, Map<String, AttributeValue>> partition = partitions.get(keyOrItem.get(hashKey).s());
+            return partition == null ? null : partition.get(range(keyOrItem));
+        }
+
+        private void put(Map<String, AttributeValue> item) {
+            partitions.computeIfAbsent(item.get(hashKey).s(), k -> new TreeMap<>()).put(range(item), item);
+        }
+
+        private void remove(Map<String, AttributeValue> key) {
+            NavigableMap<BigDecimal, Map<String, AttributeValue>> partition = partitions.get(key.get(hashKey).s());
+            if (partition != null) {
+                partition.remove(range(key));
+            }
+        }
+
+        private Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> key = new HashMap<>();
+            key.put(hashKey, item.get(hashKey));
+            if (rangeKey != null) {
+                key.put(rangeKey, item.get(rangeKey));
+            }
+            return key;
+        }
+    }
+}
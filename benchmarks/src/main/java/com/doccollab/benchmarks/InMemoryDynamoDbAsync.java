@@ -0,0 +1,56 @@
+package com.doccollab.benchmarks;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Async view of an {@link InMemoryDynamoDb}. Calls run on {@code executor}, so concurrent
+ * requests overlap their simulated latency the way they would over the network.
+ */
+public class InMemoryDynamoDbAsync implements DynamoDbAsyncClient {
+
+    private final InMemoryDynamoDb delegate;
+    private final Executor executor;
+
+    public InMemoryDynamoDbAsync(InMemoryDynamoDb delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.getItem(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.putItem(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.updateItem(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<QueryResponse> query(QueryRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.query(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<TransactWriteItemsResponse> transactWriteItems(TransactWriteItemsRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.transactWriteItems(request), executor);
+    }
+}
@@ -0,0 +1,246 @@
+package com.doccollab.benchmarks;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * S3 stand-in that keeps objects in memory, covering the calls the handlers make:
+ * put, (ranged) get, head, conditional copy, single and batch delete, and listing by prefix.
+ */
+public class InMemoryS3 implements S3Client {
+
+    // Every write gets a fresh ETag, which is all a conditional copy compares
+    private static final AtomicLong WRITES = new AtomicLong();
+
+    private final Map<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+
+    /**
+     * @param latency delay added to every call, standing in for the network round trip
+     */
+    public InMemoryS3(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    /** Total bytes currently stored across all buckets. */
+    public long storedBytes() {
+        long total = 0;
+        for (NavigableMap<String, StoredObject> bucket : buckets.values()) {
+            for (StoredObject object : bucket.values()) {
+                total += object.data.length;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        pause();
+        byte[] data;
+        try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+            data = in.readAllBytes();
+        } catch (IOException e) {
+            throw SdkClientException.create("Failed to read request body", e);
+        }
+        bucket(request.bucket()).put(request.key(), new StoredObject(data, Instant.now()));
+        return PutObjectResponse.builder().build();
+    }
+
+    @Override
+    public <ReturnT> ReturnT getObject(GetObjectRequest request,
+                                       ResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        pause();
+        StoredObject object = object(request.bucket(), request.key());
+        int offset = 0;
+        int length = object.data.length;
+        GetObjectResponse.Builder response = GetObjectResponse.builder()
+                .lastModified(object.lastModified)
+                .eTag(object.eTag);
+
+        if (request.range() != null) {
+            // Only "bytes=first-last" and "bytes=first-" are needed
+            String[] bounds = request.range().substring("bytes=".length()).split("-", -1);
+            long first = Long.parseLong(bounds[0]);
+            if (first >= object.data.length) {
+                throw (S3Exception) S3Exception.builder()
+                        .statusCode(416)
+                        .message("The requested range is not satisfiable")
+                        .build();
+            }
+            long last = bounds[1].isEmpty() ? object.data.length - 1
+                    : Math.min(Long.parseLong(bounds[1]), object.data.length - 1);
+            offset = (int) first;
+            length = (int) (last - first + 1);
+            response.contentRange("bytes " + first + "-" + last + "/" + object.data.length);
+        }
+
+        response.contentLength((long) length);
+        InputStream body = new ByteArrayInputStream(object.data, offset, length);
+        try {
+            return responseTransformer.transform(response.build(), AbortableInputStream.create(body));
+        } catch (Exception e) {
+            throw SdkClientException.create("Failed to transform response", e);
+        }
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        return getObject(request, ResponseTransformer.toInputStream());
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        pause();
+        StoredObject object = object(request.bucket(), request.key());
+        return HeadObjectResponse.builder()
+                .contentLength((long) object.data.length)
+                .lastModified(object.lastModified)
+                .eTag(object.eTag)
+                .build();
+    }
+
+    @Override
+    public CopyObjectResponse copyObject(CopyObjectRequest request) {
+        pause();
+        StoredObject source = object(request.sourceBucket(), request.sourceKey());
+        if (request.copySourceIfMatch() != null && !request.copySourceIfMatch().equals(source.eTag)) {
+            throw (S3Exception) S3Exception.builder()
+                    .statusCode(412)
+                    .message("At least one of the pre-conditions you specified did not hold")
+                    .build();
+        }
+        StoredObject copy = new StoredObject(source.data, Instant.now());
+        bucket(request.destinationBucket()).put(request.destinationKey(), copy);
+        return CopyObjectResponse.builder()
+                .copyObjectResult(CopyObjectResult.builder().eTag(copy.eTag).lastModified(copy.lastModified).build())
+                .build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        pause();
+        bucket(request.bucket()).remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        pause();
+        NavigableMap<String, StoredObject> bucket = bucket(request.bucket());
+        List<DeletedObject> deleted = new ArrayList<>();
+        for (ObjectIdentifier identifier : request.delete().objects()) {
+            bucket.remove(identifier.key());
+            deleted.add(DeletedObject.builder().key(identifier.key()).build());
+        }
+        return DeleteObjectsResponse.builder()
+                .deleted(Boolean.TRUE.equals(request.delete().quiet()) ? List.of() : deleted)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        pause();
+        NavigableMap<String, StoredObject> bucket = bucket(request.bucket());
+        String prefix = request.prefix() == null ? "" : request.prefix();
+        int maxKeys = request.maxKeys() == null ? 1000 : request.maxKeys();
+        NavigableMap<String, StoredObject> candidates = request.continuationToken() != null
+                ? bucket.tailMap(request.continuationToken(), false) : bucket.tailMap(prefix, true);
+
+        List<S3Object> contents = new ArrayList<>();
+        String lastKey = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : candidates.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (contents.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            contents.add(S3Object.builder()
+                    .key(entry.getKey())
+                    .size((long) entry.getValue().data.length)
+                    .lastModified(entry.getValue().lastModified)
+                    .build());
+            lastKey = entry.getKey();
+        }
+
+        return ListObjectsV2Response.builder()
+                .contents(contents)
+                .keyCount(contents.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? lastKey : null)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Iterable listObjectsV2Paginator(ListObjectsV2Request request) {
+        return new ListObjectsV2Iterable(this, request);
+    }
+
+    private NavigableMap<String, StoredObject> bucket(String name) {
+        return buckets.computeIfAbsent(name, k -> new ConcurrentSkipListMap<>());
+    }
+
+    private StoredObject object(String bucket, String key) {
+        StoredObject object = bucket(bucket).get(key);
+        if (object == null) {
+            throw NoSuchKeyException.builder()
+                    .statusCode(404)
+                    .message("The specified key does not exist: " + key)
+                    .build();
+        }
+        return object;
+    }
+
+    private void pause() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static final class StoredObject {
+        private final byte[] data;
+        private final Instant lastModified;
+        private final String eTag;
+
+        private StoredObject(byte[] data, Instant lastModified) {
+            this.data = data;
+            this.lastModified = lastModified;
+            this.eTag = "\"" + Long.toHexString(WRITES.incrementAndGet()) + "\"";
+        }
+    }
+}
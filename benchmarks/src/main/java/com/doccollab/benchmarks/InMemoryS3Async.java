@@ -0,0 +1,106 @@
+package com.doccollab.benchmarks;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Async view of an {@link InMemoryS3}. Calls run on {@code executor}, so concurrent
+ * requests overlap their simulated latency the way they would over the network.
+ */
+public class InMemoryS3Async implements S3AsyncClient {
+
+    private final InMemoryS3 delegate;
+    private final Executor executor;
+
+    public InMemoryS3Async(InMemoryS3 delegate, Executor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest request, AsyncRequestBody requestBody) {
+        return collect(requestBody).thenApplyAsync(
+                bytes -> delegate.putObject(request, RequestBody.fromBytes(bytes)), executor);
+    }
+
+    @Override
+    public <ReturnT> CompletableFuture<ReturnT> getObject(GetObjectRequest request,
+                                                          AsyncResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        CompletableFuture<ReturnT> result = responseTransformer.prepare();
+        CompletableFuture.supplyAsync(() -> delegate.getObject(request, ResponseTransformer.toBytes()), executor)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        responseTransformer.exceptionOccurred(error.getCause() != null ? error.getCause() : error);
+                        return;
+                    }
+                    responseTransformer.onResponse(response.response());
+                    responseTransformer.onStream(AsyncRequestBody.fromBytes(response.asByteArrayUnsafe()));
+                });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.headObject(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResponse> copyObject(CopyObjectRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.copyObject(request), executor);
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectResponse> deleteObject(DeleteObjectRequest request) {
+        return CompletableFuture.supplyAsync(() -> delegate.deleteObject(request), executor);
+    }
+
+    private static CompletableFuture<byte[]> collect(AsyncRequestBody body) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.contentLength().orElse(0L).intValue());
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                out.write(chunk, 0, chunk.length);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(out.toByteArray());
+            }
+        });
+        return result;
+    }
+}
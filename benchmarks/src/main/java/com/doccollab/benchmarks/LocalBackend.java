@@ -0,0 +1,264 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.handlers.DocumentBatchGetHandler;
+import com.doccollab.handlers.DocumentDiffHandler;
+import com.doccollab.handlers.DocumentEditHandler;
+import com.doccollab.handlers.DocumentGetHandler;
+import com.doccollab.handlers.DocumentHistoryHandler;
+import com.doccollab.handlers.DocumentPatchHandler;
+import com.doccollab.handlers.DocumentTransferHandler;
+import com.doccollab.handlers.DocumentUploadHandler;
+import com.doccollab.handlers.HistoryArchiveHandler;
+import com.doccollab.handlers.SearchHandler;
+import com.doccollab.handlers.SearchIndexHandler;
+import com.doccollab.utils.JsonCodec;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory S3 and DynamoDB with the service's tables, plus helpers to build handlers
+ * against them, seed documents and make API Gateway requests.
+ */
+public final class LocalBackend {
+
+    public static final String DOCUMENTS_TABLE = "Documents";
+    public static final String HISTORY_TABLE = "DocumentHistory";
+    public static final String BUCKET = "document-collaboration-benchmark";
+
+    // Same defaults as the deployed functions
+    private static final ServiceConfig CONFIG = new ServiceConfig(DOCUMENTS_TABLE, HISTORY_TABLE, BUCKET,
+            10, 32L * 1024 * 1024, 5L * 1024 * 1024, 24, false, false, 100, 0);
+
+    private static final String[] WORDS = {
+            "document", "version", "edit", "the", "of", "and", "history", "collaboration", "a", "to",
+            "snapshot", "delta", "review", "section", "draft", "in", "final", "update", "is", "for"
+    };
+
+    public static final Context CONTEXT = new BenchmarkContext();
+
+    private final InMemoryDynamoDb dynamoDb;
+    private final InMemoryS3 s3;
+    private final ExecutorService executor;
+    private final InMemoryDynamoDbAsync dynamoDbAsync;
+    private final InMemoryS3Async s3Async;
+    private final S3Presigner presigner;
+
+    public LocalBackend(Duration latency) {
+        this.dynamoDb = new InMemoryDynamoDb(latency);
+        this.s3 = new InMemoryS3(latency);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-backend");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dynamoDbAsync = new InMemoryDynamoDbAsync(dynamoDb, executor);
+        this.s3Async = new InMemoryS3Async(s3, executor);
+        // Presigning is local computation, so a real presigner with dummy credentials works offline
+        this.presigner = S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("benchmark", "benchmark")))
+                .build();
+
+        dynamoDb.createTable(DOCUMENTS_TABLE, "documentId", null);
+        dynamoDb.createTable(HISTORY_TABLE, "documentId", "editNumber");
+    }
+
+    public static LocalBackend create(int latencyMillis) {
+        return new LocalBackend(Duration.ofMillis(latencyMillis));
+    }
+
+    public InMemoryDynamoDb dynamoDb() { return dynamoDb; }
+
+    public InMemoryS3 s3() { return s3; }
+
+    public ServiceConfig config() { return CONFIG; }
+
+    public DocumentUploadHandler uploadHandler() {
+        return new DocumentUploadHandler(dynamoDbAsync, s3Async, CONFIG);
+    }
+
+    public DocumentEditHandler editHandler() {
+        return new DocumentEditHandler(dynamoDb, s3, CONFIG);
+    }
+
+    public DocumentGetHandler getHandler() {
+        return new DocumentGetHandler(dynamoDb, s3, presigner, CONFIG);
+    }
+
+    public DocumentBatchGetHandler batchGetHandler() {
+        return new DocumentBatchGetHandler(dynamoDb, s3, presigner, CONFIG);
+    }
+
+    public DocumentHistoryHandler historyHandler() {
+        return new DocumentHistoryHandler(dynamoDb, CONFIG);
+    }
+
+    public DocumentPatchHandler patchHandler() {
+        return new DocumentPatchHandler(dynamoDb, s3, CONFIG);
+    }
+
+    public DocumentTransferHandler transferHandler() {
+        return new DocumentTransferHandler(presigner, CONFIG);
+    }
+
+    public DocumentDiffHandler diffHandler() {
+        return new DocumentDiffHandler(dynamoDb, s3, presigner, CONFIG);
+    }
+
+    public HistoryArchiveHandler historyArchiveHandler() {
+        return new HistoryArchiveHandler(dynamoDb, s3, CONFIG);
+    }
+
+    public SearchHandler searchHandler() {
+        return new SearchHandler(s3, CONFIG);
+    }
+
+    public SearchIndexHandler searchIndexHandler() {
+        return new SearchIndexHandler(dynamoDb, s3, CONFIG);
+    }
+
+    /** Edit handler coalescing each editor's saves within {@code windowSeconds} of the version they open. */
+    public DocumentEditHandler coalescingEditHandler(long windowSeconds) {
+        return new DocumentEditHandler(dynamoDb, s3, new ServiceConfig(DOCUMENTS_TABLE, HISTORY_TABLE, BUCKET,
+                CONFIG.getSnapshotInterval(), CONFIG.getVersionCacheBytes(), CONFIG.getLargeDocumentBytes(),
+                CONFIG.getOrphanGraceHours(), CONFIG.isMetricsEnabled(), CONFIG.isSearchIndexEnabled(),
+                CONFIG.getArchiveKeepVersions(), windowSeconds));
+    }
+
+    /** Diff handler reading S3 on every request, with no in-memory cache in front. */
+    public DocumentDiffHandler uncachedDiffHandler() {
+        return new DocumentDiffHandler(dynamoDb, s3, presigner, CONFIG, null);
+    }
+
+    public void clear() {
+        dynamoDb.clear();
+        s3.clear();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        presigner.close();
+    }
+
+    /**
+     * Uploads a document of about {@code bytes} bytes and edits it until it has
+     * {@code historyLength} versions, each a small change to the previous one.
+     *
+     * @return the new document's ID
+     */
+    public String seedDocument(int bytes, int historyLength) {
+        Random random = new Random(bytes * 31L + historyLength);
+        StringBuilder content = new StringBuilder(text(bytes, random));
+
+        APIGatewayProxyResponseEvent upload = uploadHandler().handleRequest(
+                request(null, json("fileName", "benchmark.txt", "fileContent", content.toString())), CONTEXT);
+        String documentId = field(check(upload), "documentId");
+
+        DocumentEditHandler editHandler = editHandler();
+        for (int edit = 2; edit <= historyLength; edit++) {
+            int position = random.nextInt(content.length());
+            content.insert(position, WORDS[random.nextInt(WORDS.length)] + " ");
+            check(editHandler.handleRequest(request(documentId, json(
+                    "content", content.toString(),
+                    "editedBy", "user-" + (edit % 5),
+                    "changeDescription", "Edit " + edit)), CONTEXT));
+        }
+        return documentId;
+    }
+
+    /** Random words adding up to {@code bytes} ASCII bytes. */
+    public static String text(int bytes, Random random) {
+        StringBuilder text = new StringBuilder(bytes + 16);
+        while (text.length() < bytes) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        text.setLength(bytes);
+        return text.toString();
+    }
+
+    public static APIGatewayProxyRequestEvent request(String documentId, String body) {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        if (documentId != null) {
+            request.setPathParameters(Map.of("documentId", documentId));
+        }
+        request.setHeaders(new HashMap<>());
+        request.setBody(body);
+        return request;
+    }
+
+    /** JSON object from alternating field names and string values. */
+    public static String json(String... fieldsAndValues) {
+        try {
+            return JsonCodec.write(generator -> {
+                generator.writeStartObject();
+                for (int i = 0; i < fieldsAndValues.length; i += 2) {
+                    generator.writeStringField(fieldsAndValues[i], fieldsAndValues[i + 1]);
+                }
+                generator.writeEndObject();
+            }, fieldsAndValues.length * 32);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Fails the benchmark setup on anything but a 2xx response. */
+    public static APIGatewayProxyResponseEvent check(APIGatewayProxyResponseEvent response) {
+        if (response.getStatusCode() / 100 != 2) {
+            throw new IllegalStateException("Request failed with " + response.getStatusCode() + ": " + response.getBody());
+        }
+        return response;
+    }
+
+    static String field(APIGatewayProxyResponseEvent response, String name) {
+        try {
+            return JsonCodec.readFields(response.getBody(), Set.of(name)).get(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Lambda context whose logger discards output. */
+    private static final class BenchmarkContext implements Context {
+        private static final LambdaLogger LOGGER = new LambdaLogger() {
+            @Override
+            public void log(String message) {
+            }
+
+            @Override
+            public void log(byte[] message) {
+            }
+        };
+
+        @Override public String getAwsRequestId() { return "benchmark"; }
+        @Override public String getLogGroupName() { return "benchmark"; }
+        @Override public String getLogStreamName() { return "benchmark"; }
+        @Override public String getFunctionName() { return "benchmark"; }
+        @Override public String getFunctionVersion() { return "$LATEST"; }
+        @Override public String getInvokedFunctionArn() { return "benchmark"; }
+        @Override public CognitoIdentity getIdentity() { return null; }
+        @Override public ClientContext getClientContext() { return null; }
+        @Override public int getRemainingTimeInMillis() { return Integer.MAX_VALUE; }
+        @Override public int getMemoryLimitInMB() { return 512; }
+        @Override public LambdaLogger getLogger() { return LOGGER; }
+    }
+}
@@ -0,0 +1,71 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentGetHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /documents/{id} whole against one 64 KB page from the middle, for a snapshot and for
+ * a version still held as a patch on top of it. Run with {@code -prof gc}: the
+ * {@code gc.alloc.rate.norm} column is the heap each read costs, which for a snapshot
+ * follows the page size; a patched version is rebuilt whole before it is paged.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeReadBenchmark {
+
+    @Param({"65536", "1048576", "4194304"})
+    public int documentBytes;
+
+    @Param({"false", "true"})
+    public boolean pendingOperations;
+
+    private LocalBackend backend;
+    private DocumentGetHandler handler;
+    private APIGatewayProxyRequestEvent fullRequest;
+    private APIGatewayProxyRequestEvent rangeRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(0);
+        handler = backend.getHandler();
+        String documentId = backend.seedDocument(documentBytes, 1);
+        if (pendingOperations) {
+            LocalBackend.check(backend.patchHandler().handleRequest(LocalBackend.request(documentId,
+                    "{\"baseEditNumber\": 1, \"operations\": [{\"type\": \"insert\", \"position\": 0, \"text\": \"patched \"}]}"),
+                    LocalBackend.CONTEXT));
+        }
+
+        fullRequest = LocalBackend.request(documentId, null);
+
+        rangeRequest = LocalBackend.request(documentId, null);
+        Map<String, String> range = new HashMap<>();
+        range.put("offset", String.valueOf(documentBytes / 2));
+        range.put("length", "65536");
+        rangeRequest.setQueryStringParameters(range);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent full() {
+        return handler.handleRequest(fullRequest, LocalBackend.CONTEXT);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent range() {
+        return handler.handleRequest(rangeRequest, LocalBackend.CONTEXT);
+    }
+}
@@ -0,0 +1,82 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.models.Document;
+import com.doccollab.utils.JsonCodec;
+import com.doccollab.utils.ResponseUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON on the request and response paths, without any storage: a document response
+ * built through a Map and ObjectMapper versus streamed with {@link JsonCodec}, and an
+ * edit request parsed into a tree versus read field by field.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseUtilBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> EDIT_FIELDS = Set.of("content", "editedBy", "changeDescription");
+
+    @Param({"1024", "65536", "1048576"})
+    public int documentBytes;
+
+    private Document document;
+    private String content;
+    private String editBody;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        document = new Document("doc-bench001", "benchmark.txt");
+        document.setCurrentEditNumber(42);
+        document.setCreatedAt("2025-01-15T10:00:00Z");
+        document.setLastModified("2025-01-15T10:30:00Z");
+        content = LocalBackend.text(documentBytes, new Random(documentBytes));
+        editBody = LocalBackend.json("content", content, "editedBy", "benchmark", "changeDescription", "Benchmark edit");
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent mapResponse() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", true);
+        body.put("document", document);
+        body.put("content", content);
+        return ResponseUtil.createResponse(200, body);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent streamedResponse() throws IOException {
+        return ResponseUtil.createJsonResponse(200, generator -> {
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeObjectFieldStart("document");
+            JsonCodec.writeDocumentFields(generator, document);
+            generator.writeEndObject();
+            generator.writeStringField("content", content);
+            generator.writeEndObject();
+        }, content.length() + 256, Map.of());
+    }
+
+    @Benchmark
+    public JsonNode parseRequestTree() throws IOException {
+        return MAPPER.readTree(editBody);
+    }
+
+    @Benchmark
+    public Map<String, String> parseRequestStreaming() throws IOException {
+        return JsonCodec.readFields(editBody, EDIT_FIELDS);
+    }
+}
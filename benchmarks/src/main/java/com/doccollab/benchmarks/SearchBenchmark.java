@@ -0,0 +1,136 @@
+package com.doccollab.benchmarks;
+
+import com.doccollab.search.IndexSegment;
+import com.doccollab.search.SearchIndex;
+import com.doccollab.search.SearchResult;
+import com.doccollab.search.SearchTokenizer;
+import com.doccollab.search.SegmentWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-text search over a synthetic corpus whose word frequencies follow Zipf's law, as
+ * natural text does: building a segment for one indexer batch, merging the index into a
+ * single segment, and queries for a common term, a rare term and several terms at once.
+ * The corpus is split into segments the way successive indexer runs would leave it.
+ */
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+    private static final int WORDS_PER_DOCUMENT = 300;
+
+    @Param({"100000"})
+    public int documents;
+
+    @Param({"4"})
+    public int segments;
+
+    @Param({"5000"})
+    public int batchDocuments;
+
+    private String[] vocabulary;
+    private List<String> texts;
+    private SearchIndex index;
+    private String commonQuery;
+    private String rareQuery;
+    private String multiTermQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(documents);
+        vocabulary = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            vocabulary[i] = word(i);
+        }
+        double[] cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+
+        texts = new ArrayList<>(documents);
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < documents; d++) {
+            text.setLength(0);
+            for (int w = 0; w < WORDS_PER_DOCUMENT; w++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                text.append(vocabulary[rank < 0 ? -rank - 1 : rank]).append(' ');
+            }
+            texts.add(text.toString());
+        }
+
+        List<IndexSegment> built = new ArrayList<>();
+        int perSegment = (documents + segments - 1) / segments;
+        for (int from = 0; from < documents; from += perSegment) {
+            built.add(new IndexSegment(ByteBuffer.wrap(segment(from, Math.min(documents, from + perSegment)).toByteArray())));
+        }
+        index = new SearchIndex(built);
+
+        commonQuery = vocabulary[2];
+        rareQuery = vocabulary[VOCABULARY / 2];
+        multiTermQuery = vocabulary[5] + " " + vocabulary[200] + " " + vocabulary[5_000];
+    }
+
+    /** Tokenizing and encoding one indexer batch. */
+    @Benchmark
+    public byte[] indexBatch() {
+        return segment(0, batchDocuments).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] merge() {
+        return SegmentWriter.merge(index).toByteArray();
+    }
+
+    @Benchmark
+    public List<SearchResult> searchCommon() {
+        return index.search(commonQuery, 10);
+    }
+
+    @Benchmark
+    public List<SearchResult> searchRare() {
+        return index.search(rareQuery, 10);
+    }
+
+    @Benchmark
+    public List<SearchResult> searchMultiTerm() {
+        return index.search(multiTermQuery, 10);
+    }
+
+    private SegmentWriter segment(int from, int to) {
+        SegmentWriter writer = new SegmentWriter();
+        Map<String, Integer> terms = new HashMap<>();
+        for (int d = from; d < to; d++) {
+            terms.clear();
+            int length = SearchTokenizer.count(texts.get(d), terms);
+            writer.addDocument("doc-" + d, "Document " + d, 1, terms, length);
+        }
+        return writer;
+    }
+
+    /** Distinct lowercase word for each rank, shorter for common ranks. */
+    private static String word(int rank) {
+        StringBuilder word = new StringBuilder();
+        int value = rank;
+        do {
+            word.append((char) ('a' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return word.append("x").toString();
+    }
+}
@@ -0,0 +1,235 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.metrics.LatencyHistogram;
+import com.doccollab.server.DocumentServer;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Closed-loop load test comparing the embedded HTTP server with the Lambda adapter path,
+ * both served over loopback HTTP from the same in-memory S3 and DynamoDB.
+ *
+ * Each client owns a document and repeatedly reads it, editing it every tenth request.
+ * In {@code server} mode one shared set of handlers serves every request. In
+ * {@code lambda} mode requests go through the Lambda invocation model instead: each is
+ * routed to an execution environment serving one request at a time (a new one is created
+ * when all are busy), with its own handlers, and makes the event and response JSON round
+ * trips the Lambda runtime performs. API Gateway and the invoke network hop are not
+ * simulated, so the Lambda numbers are a best case.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.doccollab.benchmarks.ServerLoadTest \
+ *     [--mode server|lambda|both] [--clients 64] [--seconds 20] [--warmup 5]
+ *     [--latency 5] [--bytes 16384] [--threads 200]
+ * </pre>
+ */
+public final class ServerLoadTest {
+
+    private static final int EDIT_EVERY = 10;
+
+    private static final ObjectMapper EVENT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+
+    private final int clients;
+    private final int seconds;
+    private final int warmupSeconds;
+    private final int latencyMillis;
+    private final int documentBytes;
+    private final int serverThreads;
+
+    private ServerLoadTest(Map<String, String> options) {
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+        this.seconds = Integer.parseInt(options.getOrDefault("seconds", "20"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.latencyMillis = Integer.parseInt(options.getOrDefault("latency", "5"));
+        this.documentBytes = Integer.parseInt(options.getOrDefault("bytes", "16384"));
+        this.serverThreads = Integer.parseInt(options.getOrDefault("threads", "200"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        String mode = options.getOrDefault("mode", "both");
+        ServerLoadTest test = new ServerLoadTest(options);
+
+        System.out.printf("%d clients, %d s (after %d s warmup), %d ms backend latency, %d byte documents%n",
+                test.clients, test.seconds, test.warmupSeconds, test.latencyMillis, test.documentBytes);
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %8s%n",
+                "mode", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        if (mode.equals("lambda") || mode.equals("both")) {
+            test.run("lambda");
+        }
+        if (mode.equals("server") || mode.equals("both")) {
+            test.run("server");
+        }
+    }
+
+    private void run(String mode) throws Exception {
+        LocalBackend backend = LocalBackend.create(latencyMillis);
+        List<String> documentIds = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            documentIds.add(backend.seedDocument(documentBytes, 1));
+        }
+
+        DocumentServer server = mode.equals("server")
+                ? new DocumentServer(backend.uploadHandler(), backend.getHandler(), backend.batchGetHandler(),
+                        backend.editHandler(), backend.patchHandler(), backend.historyHandler(), backend.transferHandler(),
+                        backend.diffHandler(), backend.searchHandler())
+                : new DocumentServer(
+                        new LambdaInvoker(backend::uploadHandler), new LambdaInvoker(backend::getHandler),
+                        new LambdaInvoker(backend::batchGetHandler),
+                        new LambdaInvoker(backend::editHandler), new LambdaInvoker(backend::patchHandler),
+                        new LambdaInvoker(backend::historyHandler), new LambdaInvoker(backend::transferHandler),
+                        new LambdaInvoker(backend::diffHandler), new LambdaInvoker(backend::searchHandler));
+        int port = server.start(new InetSocketAddress("127.0.0.1", 0), serverThreads);
+        String baseUrl = "http://127.0.0.1:" + port;
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients);
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long deadline = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Future<LatencyHistogram>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String documentId = documentIds.get(i);
+            DocumentClient client = new DocumentClient(httpClient, baseUrl, documentId);
+            results.add(clientThreads.submit(() -> drive(client, measureFrom, deadline, errors, documentId.hashCode())));
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Future<LatencyHistogram> result : results) {
+            latencies.add(result.get());
+        }
+        clientThreads.shutdown();
+        server.stop();
+        backend.shutdown();
+
+        System.out.printf(Locale.ROOT, "%-8s %10d %10.0f %10.2f %10.2f %10.2f %8d%n",
+                mode, latencies.getCount(), latencies.getCount() / (double) seconds,
+                latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getMax() / 1000.0, errors.get());
+    }
+
+    /** Issues requests back to back until the deadline, recording those after the warmup in microseconds. */
+    private static LatencyHistogram drive(DocumentClient client, long measureFrom, long deadline, AtomicLong errors, long seed)
+            throws Exception {
+        LatencyHistogram latencies = new LatencyHistogram();
+        Random random = new Random(seed);
+        StringBuilder content = new StringBuilder(client.read());
+        for (long request = 1; ; request++) {
+            long begin = System.nanoTime();
+            if (begin >= deadline) {
+                return latencies;
+            }
+            boolean ok;
+            if (request % EDIT_EVERY == 0) {
+                content.insert(random.nextInt(content.length()), "edit ");
+                ok = client.edit(content.toString());
+            } else {
+                ok = client.read() != null;
+            }
+            long end = System.nanoTime();
+            if (begin >= measureFrom) {
+                latencies.record((end - begin) / 1000);
+                if (!ok) {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final class DocumentClient {
+        private final HttpClient httpClient;
+        private final URI documentUri;
+
+        private DocumentClient(HttpClient httpClient, String baseUrl, String documentId) {
+            this.httpClient = httpClient;
+            this.documentUri = URI.create(baseUrl + "/documents/" + documentId);
+        }
+
+        /** Current content, or null on failure. */
+        String read() throws Exception {
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(documentUri).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 ? content(response.body()) : null;
+        }
+
+        boolean edit(String content) throws Exception {
+            HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(documentUri)
+                            .header("Content-Type", "application/json")
+                            .PUT(HttpRequest.BodyPublishers.ofString(LocalBackend.json("content", content, "editedBy", "load-test")))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200;
+        }
+    }
+
+    /**
+     * One function's invocation path: a pool of execution environments, each running one
+     * request at a time against its own handler, reached through serialized events.
+     */
+    private static final class LambdaInvoker implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+        private final Supplier<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> environments;
+        private final Queue<RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> idle =
+                new ConcurrentLinkedQueue<>();
+
+        private LambdaInvoker(Supplier<? extends RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> environments) {
+            this.environments = environments::get;
+        }
+
+        @Override
+        public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+            RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler = idle.poll();
+            if (handler == null) {
+                handler = environments.get();
+            }
+            try {
+                // The runtime receives the event as JSON and returns the response as JSON
+                String eventJson = EVENT_MAPPER.writeValueAsString(request);
+                APIGatewayProxyRequestEvent event = EVENT_MAPPER.readValue(eventJson, APIGatewayProxyRequestEvent.class);
+                String responseJson = EVENT_MAPPER.writeValueAsString(handler.handleRequest(event, context));
+                return EVENT_MAPPER.readValue(responseJson, APIGatewayProxyResponseEvent.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                idle.add(handler);
+            }
+        }
+    }
+
+    private static String content(String body) throws Exception {
+        return EVENT_MAPPER.readTree(body).path("content").asText();
+    }
+}
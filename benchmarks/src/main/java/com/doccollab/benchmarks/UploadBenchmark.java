@@ -0,0 +1,56 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentUploadHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST /upload: parses the body, writes the content and both records concurrently.
+ * With {@code latencyMillis} above zero this shows the S3/DynamoDB fan-out overlapping.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int documentBytes;
+
+    @Param({"0", "5", "20"})
+    public int latencyMillis;
+
+    private LocalBackend backend;
+    private DocumentUploadHandler handler;
+    private APIGatewayProxyRequestEvent request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = LocalBackend.create(latencyMillis);
+        handler = backend.uploadHandler();
+        String content = LocalBackend.text(documentBytes, new Random(documentBytes));
+        request = LocalBackend.request(null, LocalBackend.json("fileName", "benchmark.txt", "fileContent", content));
+    }
+
+    // Every upload creates a document, so drop them between iterations to keep memory flat
+    @TearDown(Level.Iteration)
+    public void clear() {
+        backend.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent upload() {
+        return handler.handleRequest(request, LocalBackend.CONTEXT);
+    }
+}
@@ -0,0 +1,121 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentEditHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Expected versions against a coalesced save: only the ETag with its revision may replace
+ * it; a bare edit number, or an ETag without a revision, names the version before it.
+ * Patches must name the revision they were made against in the same way. Saves without a
+ * real editor name never coalesce.
+ */
+public class EditCoalescingTest {
+
+    private static final String INSERT = "\"operations\": [{\"type\": \"insert\", \"position\": 0, \"text\": \"x\"}]";
+
+    private LocalBackend backend;
+    private String documentId;
+    private String coalescedEtag;
+
+    @Before
+    public void setUp() {
+        backend = LocalBackend.create(0);
+        documentId = backend.seedDocument(1024, 2);
+
+        // Version 3 opens alice's window; her next save replaces it as revision 1
+        DocumentEditHandler coalescing = backend.coalescingEditHandler(300);
+        LocalBackend.check(coalescing.handleRequest(LocalBackend.request(documentId,
+                LocalBackend.json("content", "first save", "editedBy", "alice")), LocalBackend.CONTEXT));
+        APIGatewayProxyResponseEvent second = LocalBackend.check(coalescing.handleRequest(LocalBackend.request(documentId,
+                LocalBackend.json("content", "second save", "editedBy", "alice")), LocalBackend.CONTEXT));
+        assertTrue(second.getBody().contains("\"coalesced\":true"));
+        coalescedEtag = second.getHeaders().get("ETag");
+        assertEquals("\"" + documentId + "-v3.1\"", coalescedEtag);
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void bareIfMatchConflictsWithCoalescedSave() {
+        assertEquals(409, ifMatch(backend.editHandler(), "3"));
+        assertEquals(409, ifMatch(backend.coalescingEditHandler(300), "3"));
+    }
+
+    @Test
+    public void untaggedEtagConflictsWithCoalescedSave() {
+        assertEquals(409, ifMatch(backend.editHandler(), "\"" + documentId + "-v3\""));
+    }
+
+    @Test
+    public void bodyExpectedEditNumberConflictsWithCoalescedSave() {
+        APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, LocalBackend.json(
+                "content", "stale save", "editedBy", "bob", "expectedEditNumber", "3"));
+        assertEquals(409, (int) backend.editHandler().handleRequest(request, LocalBackend.CONTEXT).getStatusCode());
+    }
+
+    @Test
+    public void revisionTaggedEtagReplacesCoalescedSave() {
+        assertEquals(200, ifMatch(backend.editHandler(), coalescedEtag));
+    }
+
+    @Test
+    public void patchWithoutRevisionConflictsWithCoalescedSave() {
+        assertEquals(409, patch("{\"baseEditNumber\": 3, " + INSERT + "}", null));
+        assertEquals(409, patch("{\"baseEditNumber\": 3, " + INSERT + "}", "\"" + documentId + "-v3\""));
+    }
+
+    @Test
+    public void patchNamingCoalescedRevisionApplies() {
+        assertEquals(200, patch("{\"baseEditNumber\": 3, \"baseRevision\": 1, " + INSERT + "}", null));
+        assertEquals(200, patch("{\"baseEditNumber\": 4, " + INSERT + "}", null));
+    }
+
+    @Test
+    public void patchOnSettledCoalescedVersionChecksItsRevision() {
+        // Version 4 is a patch, so later batches against version 3 are rebased onto it
+        assertEquals(200, patch("{\"baseEditNumber\": 3, \"baseRevision\": 1, " + INSERT + "}", null));
+        assertEquals(409, patch("{\"baseEditNumber\": 3, " + INSERT + "}", null));
+        assertEquals(200, patch("{\"baseEditNumber\": 3, " + INSERT + "}", coalescedEtag));
+    }
+
+    @Test
+    public void anonymousSavesNeverCoalesce() {
+        DocumentEditHandler coalescing = backend.coalescingEditHandler(300);
+        for (String editedBy : new String[] {"Anonymous", "anonymous", " "}) {
+            APIGatewayProxyResponseEvent response = LocalBackend.check(coalescing.handleRequest(LocalBackend.request(
+                    documentId, LocalBackend.json("content", "save by " + editedBy, "editedBy", editedBy)),
+                    LocalBackend.CONTEXT));
+            assertFalse(response.getBody().contains("\"coalesced\":true"));
+        }
+        APIGatewayProxyResponseEvent unnamed = LocalBackend.check(coalescing.handleRequest(LocalBackend.request(
+                documentId, LocalBackend.json("content", "unnamed save")), LocalBackend.CONTEXT));
+        assertFalse(unnamed.getBody().contains("\"coalesced\":true"));
+        assertEquals("\"" + documentId + "-v7\"", unnamed.getHeaders().get("ETag"));
+    }
+
+    private int patch(String body, String etag) {
+        APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, body);
+        if (etag != null) {
+            request.getHeaders().put("If-Match", etag);
+        }
+        return backend.patchHandler().handleRequest(request, LocalBackend.CONTEXT).getStatusCode();
+    }
+
+    private int ifMatch(DocumentEditHandler handler, String etag) {
+        APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, LocalBackend.json(
+                "content", "save from bob", "editedBy", "bob"));
+        request.getHeaders().put("If-Match", etag);
+        return handler.handleRequest(request, LocalBackend.CONTEXT).getStatusCode();
+    }
+}
@@ -0,0 +1,162 @@
+package com.doccollab.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.handlers.DocumentEditHandler;
+import com.doccollab.utils.ETagUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writers racing on one expected version: optimistic concurrency must let exactly one
+ * commit per version and never drop or duplicate a history row.
+ */
+public class EditContentionTest {
+
+    private static final int WRITERS = 16;
+
+    private LocalBackend backend;
+    private ExecutorService executor;
+    private String documentId;
+
+    @Before
+    public void setUp() {
+        // A little latency on every call widens the window between read and commit
+        backend = LocalBackend.create(1);
+        executor = Executors.newFixedThreadPool(WRITERS);
+        documentId = backend.seedDocument(1024, 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        backend.shutdown();
+    }
+
+    @Test
+    public void oneWriterWinsEachExpectedVersion() throws Exception {
+        List<Integer> statuses = race(writer -> {
+            APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, LocalBackend.json(
+                    "content", "content from writer " + writer, "editedBy", "writer-" + writer));
+            request.getHeaders().put("If-Match", ETagUtil.format(documentId, 1));
+            return backend.editHandler().handleRequest(request, LocalBackend.CONTEXT).getStatusCode();
+        });
+
+        assertEquals(1, statuses.stream().filter(status -> status == 200).count());
+        assertEquals(WRITERS - 1, statuses.stream().filter(status -> status == 409).count());
+        assertEquals(2, currentEditNumber());
+        assertEquals(List.of(1, 2), historyEditNumbers());
+    }
+
+    @Test
+    public void bodyExpectedEditNumberIsCheckedToo() throws Exception {
+        List<Integer> statuses = race(writer -> backend.editHandler().handleRequest(LocalBackend.request(documentId,
+                LocalBackend.json("content", "content from writer " + writer, "editedBy", "writer-" + writer,
+                        "expectedEditNumber", "1")), LocalBackend.CONTEXT).getStatusCode());
+
+        assertEquals(1, statuses.stream().filter(status -> status == 200).count());
+        assertEquals(WRITERS - 1, statuses.stream().filter(status -> status == 409).count());
+        assertEquals(List.of(1, 2), historyEditNumbers());
+    }
+
+    @Test
+    public void writersRetryingOnConflictAllLand() throws Exception {
+        race(writer -> {
+            DocumentEditHandler handler = backend.editHandler();
+            String etag = ETagUtil.format(documentId, 1);
+            while (true) {
+                APIGatewayProxyRequestEvent request = LocalBackend.request(documentId, LocalBackend.json(
+                        "content", "content from writer " + writer, "editedBy", "writer-" + writer,
+                        "changeDescription", "writer " + writer));
+                request.getHeaders().put("If-Match", etag);
+                APIGatewayProxyResponseEvent response = handler.handleRequest(request, LocalBackend.CONTEXT);
+                if (response.getStatusCode() == 200) {
+                    return 200;
+                }
+                assertEquals(409, (int) response.getStatusCode());
+                etag = response.getHeaders().get("ETag");
+            }
+        });
+
+        List<Integer> expected = new ArrayList<>();
+        for (int editNumber = 1; editNumber <= WRITERS + 1; editNumber++) {
+            expected.add(editNumber);
+        }
+        assertEquals(WRITERS + 1, currentEditNumber());
+        assertEquals(expected, historyEditNumbers());
+
+        Set<String> descriptions = new HashSet<>();
+        for (Map<String, AttributeValue> row : historyRows()) {
+            descriptions.add(row.get("changeDescription").s());
+        }
+        for (int writer = 0; writer < WRITERS; writer++) {
+            assertTrue("Missing edit of writer " + writer, descriptions.contains("writer " + writer));
+        }
+    }
+
+    private interface Writer {
+        int write(int writer) throws Exception;
+    }
+
+    /** Runs every writer at once, released together, and returns their statuses. */
+    private List<Integer> race(Writer writer) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            int id = i;
+            Callable<Integer> task = () -> {
+                start.await();
+                return writer.write(id);
+            };
+            results.add(executor.submit(task));
+        }
+        start.countDown();
+
+        List<Integer> statuses = new ArrayList<>();
+        for (Future<Integer> result : results) {
+            statuses.add(result.get());
+        }
+        return statuses;
+    }
+
+    private int currentEditNumber() {
+        return Integer.parseInt(backend.dynamoDb().getItem(GetItemRequest.builder()
+                .tableName(LocalBackend.DOCUMENTS_TABLE)
+                .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                .build()).item().get("currentEditNumber").n());
+    }
+
+    private List<Map<String, AttributeValue>> historyRows() {
+        return backend.dynamoDb().query(QueryRequest.builder()
+                .tableName(LocalBackend.HISTORY_TABLE)
+                .keyConditionExpression("documentId = :docId")
+                .expressionAttributeValues(Map.of(":docId", AttributeValue.builder().s(documentId).build()))
+                .build()).items();
+    }
+
+    private List<Integer> historyEditNumbers() {
+        List<Integer> editNumbers = new ArrayList<>();
+        for (Map<String, AttributeValue> row : historyRows()) {
+            editNumbers.add(Integer.parseInt(row.get("editNumber").n()));
+        }
+        return editNumbers;
+    }
+}
@@ -0,0 +1,207 @@
+package com.doccollab.config;
+
+import com.doccollab.metrics.AwsCallMetrics;
+import com.doccollab.utils.JsonCodec;
+import com.doccollab.utils.ResponseUtil;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Container-wide AWS clients, built once during the Lambda init phase.
+ *
+ * Region, credentials and HTTP client are pinned so the SDK skips its provider
+ * discovery chains. The JSON codec and response path are primed during init; connections are primed either at
+ * init ({@code PRIME_CONNECTIONS=true}) or just before a SnapStart checkpoint, so the
+ * first invocation does not pay for class loading and TLS setup.
+ */
+public final class AwsClients implements Resource {
+
+    private static final String PRIME_KEY = "__prime__";
+
+    private static final AwsClients INSTANCE = new AwsClients();
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+
+    private AwsClients() {
+        Region region = region();
+        AwsCredentialsProvider credentialsProvider = credentialsProvider();
+
+        SdkHttpClient httpClient = UrlConnectionHttpClient.builder()
+                .connectionTimeout(Duration.ofSeconds(2))
+                .socketTimeout(Duration.ofSeconds(30))
+                .build();
+        this.dynamoDbClient = DynamoDbClient.builder()
+                .region(region)
+                .credentialsProvider(credentialsProvider)
+                .httpClient(httpClient)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+        this.s3Client = S3Client.builder()
+                .region(region)
+                .credentialsProvider(credentialsProvider)
+                .httpClient(httpClient)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+
+        primeSerializers();
+        if (ServiceConfig.booleanEnv("PRIME_CONNECTIONS", false)) {
+            primeConnections();
+        }
+        Core.getGlobalContext().register(this);
+    }
+
+    public static DynamoDbClient dynamoDb() {
+        return INSTANCE.dynamoDbClient;
+    }
+
+    public static S3Client s3() {
+        return INSTANCE.s3Client;
+    }
+
+    /** Async DynamoDB client for handlers that fan out independent writes. */
+    public static DynamoDbAsyncClient dynamoDbAsync() {
+        return AsyncClients.DYNAMO_DB;
+    }
+
+    /** Async S3 client for handlers that fan out independent writes. */
+    public static S3AsyncClient s3Async() {
+        return AsyncClients.S3;
+    }
+
+    /** Presigner for direct client transfers of large documents. */
+    public static S3Presigner s3Presigner() {
+        return PresignerHolder.PRESIGNER;
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        primeConnections();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        // Nothing to rebuild: stale keep-alive sockets from the snapshot are retried by the SDK
+    }
+
+    /**
+     * Built on first use only, so handlers that never fan out do not load Netty on cold start.
+     */
+    private static final class AsyncClients {
+        private static final SdkAsyncHttpClient HTTP_CLIENT = NettyNioAsyncHttpClient.builder()
+                .connectionTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(30))
+                .build();
+
+        static final DynamoDbAsyncClient DYNAMO_DB = DynamoDbAsyncClient.builder()
+                .region(region())
+                .credentialsProvider(credentialsProvider())
+                .httpClient(HTTP_CLIENT)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+
+        static final S3AsyncClient S3 = S3AsyncClient.builder()
+                .region(region())
+                .credentialsProvider(credentialsProvider())
+                .httpClient(HTTP_CLIENT)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+    }
+
+    private static final class PresignerHolder {
+        static final S3Presigner PRESIGNER = S3Presigner.builder()
+                .region(region())
+                .credentialsProvider(credentialsProvider())
+                .build();
+    }
+
+    private static Region region() {
+        String region = System.getenv("AWS_REGION");
+        return region == null || region.isEmpty()
+                ? DefaultAwsRegionProviderChain.builder().build().getRegion()
+                : Region.of(region);
+    }
+
+    private static AwsCredentialsProvider credentialsProvider() {
+        // Lambda always provides credentials through the environment
+        return System.getenv("AWS_ACCESS_KEY_ID") != null
+                ? EnvironmentVariableCredentialsProvider.create()
+                : DefaultCredentialsProvider.create();
+    }
+
+    private static ClientOverrideConfiguration overrideConfiguration() {
+        ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder();
+        if (ServiceConfig.fromEnv().isMetricsEnabled()) {
+            // Not registered at all when disabled, so calls pay nothing
+            builder.addExecutionInterceptor(AwsCallMetrics.instance());
+        }
+        return builder.build();
+    }
+
+    private void primeSerializers() {
+        try {
+            Map<String, Object> body = new HashMap<>();
+            body.put("success", true);
+            body.put("documentId", PRIME_KEY);
+            body.put("editNumber", 1);
+            JsonCodec.readFields(ResponseUtil.createResponse(200, body).getBody(), body.keySet());
+            ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeStringField("documentId", PRIME_KEY);
+                generator.writeEndObject();
+            }, 64, Map.of());
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+
+    private void primeConnections() {
+        ServiceConfig config = ServiceConfig.fromEnv();
+        try {
+            if (config.getDocumentsTable() != null) {
+                dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(config.getDocumentsTable())
+                        .key(Map.of("documentId", AttributeValue.builder().s(PRIME_KEY).build()))
+                        .build());
+            }
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+        try {
+            if (config.getS3Bucket() != null) {
+                s3Client.headObject(HeadObjectRequest.builder()
+                        .bucket(config.getS3Bucket())
+                        .key(PRIME_KEY)
+                        .build());
+            }
+        } catch (NoSuchKeyException e) {
+            // Expected: the request only exists to open the connection
+        } catch (Exception e) {
+            // Priming is best effort
+        }
+    }
+}
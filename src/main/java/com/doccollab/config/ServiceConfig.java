@@ -0,0 +1,104 @@
+package com.doccollab.config;
+
+/**
+ * Environment configuration shared by all handlers, read once per container.
+ */
+public class ServiceConfig {
+
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 10;
+    private static final long DEFAULT_VERSION_CACHE_BYTES = 32L * 1024 * 1024;
+    // Just under the 6 MB synchronous Lambda payload limit
+    private static final long DEFAULT_LARGE_DOCUMENT_BYTES = 5L * 1024 * 1024;
+    private static final long DEFAULT_ORPHAN_GRACE_HOURS = 24;
+    private static final int DEFAULT_ARCHIVE_KEEP_VERSIONS = 100;
+
+    private static final ServiceConfig FROM_ENV = new ServiceConfig(
+            System.getenv("DOCUMENTS_TABLE"),
+            System.getenv("DOCUMENT_HISTORY_TABLE"),
+            System.getenv("S3_BUCKET"),
+            intEnv("SNAPSHOT_INTERVAL", DEFAULT_SNAPSHOT_INTERVAL),
+            longEnv("VERSION_CACHE_BYTES", DEFAULT_VERSION_CACHE_BYTES),
+            longEnv("LARGE_DOCUMENT_BYTES", DEFAULT_LARGE_DOCUMENT_BYTES),
+            longEnv("ORPHAN_GRACE_HOURS", DEFAULT_ORPHAN_GRACE_HOURS),
+            booleanEnv("METRICS_ENABLED", false),
+            booleanEnv("SEARCH_INDEX_ENABLED", false),
+            intEnv("ARCHIVE_KEEP_VERSIONS", DEFAULT_ARCHIVE_KEEP_VERSIONS),
+            longEnv("EDIT_COALESCE_SECONDS", 0));
+
+    private final String documentsTable;
+    private final String historyTable;
+    private final String s3Bucket;
+    private final int snapshotInterval;
+    private final long versionCacheBytes;
+    private final long largeDocumentBytes;
+    private final long orphanGraceHours;
+    private final boolean metricsEnabled;
+    private final boolean searchIndexEnabled;
+    private final int archiveKeepVersions;
+    private final long editCoalesceSeconds;
+
+    public ServiceConfig(String documentsTable, String historyTable, String s3Bucket,
+                         int snapshotInterval, long versionCacheBytes, long largeDocumentBytes,
+                         long orphanGraceHours, boolean metricsEnabled, boolean searchIndexEnabled,
+                         int archiveKeepVersions, long editCoalesceSeconds) {
+        this.documentsTable = documentsTable;
+        this.historyTable = historyTable;
+        this.s3Bucket = s3Bucket;
+        this.snapshotInterval = snapshotInterval;
+        this.versionCacheBytes = versionCacheBytes;
+        this.largeDocumentBytes = largeDocumentBytes;
+        this.orphanGraceHours = orphanGraceHours;
+        this.metricsEnabled = metricsEnabled;
+        this.searchIndexEnabled = searchIndexEnabled;
+        this.archiveKeepVersions = archiveKeepVersions;
+        this.editCoalesceSeconds = editCoalesceSeconds;
+    }
+
+    public static ServiceConfig fromEnv() {
+        return FROM_ENV;
+    }
+
+    public String getDocumentsTable() { return documentsTable; }
+
+    public String getHistoryTable() { return historyTable; }
+
+    public String getS3Bucket() { return s3Bucket; }
+
+    public int getSnapshotInterval() { return snapshotInterval; }
+
+    /** Byte budget of the in-container version cache; 0 disables it. */
+    public long getVersionCacheBytes() { return versionCacheBytes; }
+
+    /** Documents at or above this size are stored as snapshots and served by URL rather than inline. */
+    public long getLargeDocumentBytes() { return largeDocumentBytes; }
+
+    /** Minimum age of an unreferenced object before the blob cleanup job deletes it. */
+    public long getOrphanGraceHours() { return orphanGraceHours; }
+
+    /** Whether handlers emit per-invocation stage metrics as embedded metric format log lines. */
+    public boolean isMetricsEnabled() { return metricsEnabled; }
+
+    /** Whether writes mark documents for the search indexer; off, search only sees what was indexed before. */
+    public boolean isSearchIndexEnabled() { return searchIndexEnabled; }
+
+    /** Most recent versions of a document kept as loose objects; older ones may be packed into archive segments. */
+    public int getArchiveKeepVersions() { return archiveKeepVersions; }
+
+    /** Window after a version is written in which its editor's further saves replace it; 0 disables coalescing. */
+    public long getEditCoalesceSeconds() { return editCoalesceSeconds; }
+
+    public static int intEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    static long longEnv(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
+
+    static boolean booleanEnv(String name, boolean defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
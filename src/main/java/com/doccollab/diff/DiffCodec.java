@@ -0,0 +1,97 @@
+package com.doccollab.diff;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Output formats for diffs: unified diff text (line granularity only) and JSON hunks.
+ *
+ * A JSON hunk is {"oldOffset":o,"oldCount":n,"newOffset":o,"newCount":n,"changes":[...]}
+ * with zero-based token offsets, and each change is {"type":"equal|delete|insert","text":"..."}.
+ */
+public final class DiffCodec {
+
+    private static final String NO_NEWLINE = "\\ No newline at end of file\n";
+
+    private DiffCodec() {}
+
+    /** Unified diff as produced by {@code diff -u}, with {@code fromLabel} and {@code toLabel} as file names. */
+    public static String writeUnified(List<DiffHunk> hunks, String fromLabel, String toLabel) {
+        if (hunks.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(estimateSize(hunks));
+        out.append("--- ").append(fromLabel).append('\n');
+        out.append("+++ ").append(toLabel).append('\n');
+        for (DiffHunk hunk : hunks) {
+            out.append("@@ -");
+            appendRange(out, hunk.getOldOffset(), hunk.getOldCount());
+            out.append(" +");
+            appendRange(out, hunk.getNewOffset(), hunk.getNewCount());
+            out.append(" @@\n");
+
+            for (DiffHunk.Change change : hunk.getChanges()) {
+                char prefix = change.getType() == DiffHunk.Type.DELETE ? '-'
+                        : change.getType() == DiffHunk.Type.INSERT ? '+' : ' ';
+                String text = change.getText();
+                int start = 0;
+                while (start < text.length()) {
+                    int end = text.indexOf('\n', start);
+                    out.append(prefix);
+                    if (end < 0) {
+                        out.append(text, start, text.length()).append('\n').append(NO_NEWLINE);
+                        break;
+                    }
+                    out.append(text, start, end + 1);
+                    start = end + 1;
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /** Writes {@code hunks} as the value of the current field. */
+    public static void writeHunks(JsonGenerator generator, List<DiffHunk> hunks) throws IOException {
+        generator.writeStartArray();
+        for (DiffHunk hunk : hunks) {
+            generator.writeStartObject();
+            generator.writeNumberField("oldOffset", hunk.getOldOffset());
+            generator.writeNumberField("oldCount", hunk.getOldCount());
+            generator.writeNumberField("newOffset", hunk.getNewOffset());
+            generator.writeNumberField("newCount", hunk.getNewCount());
+            generator.writeArrayFieldStart("changes");
+            for (DiffHunk.Change change : hunk.getChanges()) {
+                generator.writeStartObject();
+                generator.writeStringField("type", change.getType().name().toLowerCase(Locale.ROOT));
+                generator.writeStringField("text", change.getText());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    /** Approximate serialized size of {@code hunks}, for sizing output buffers. */
+    public static int estimateSize(List<DiffHunk> hunks) {
+        long size = 64;
+        for (DiffHunk hunk : hunks) {
+            size += 96;
+            for (DiffHunk.Change change : hunk.getChanges()) {
+                size += change.getText().length() + change.getTokenCount() + 32;
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    // GNU convention: an empty range is numbered by the line before it, and a count of 1 is omitted
+    private static void appendRange(StringBuilder out, int offset, int count) {
+        out.append(count == 0 ? offset : offset + 1);
+        if (count != 1) {
+            out.append(',').append(count);
+        }
+    }
+}
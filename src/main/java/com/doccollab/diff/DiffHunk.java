@@ -0,0 +1,57 @@
+package com.doccollab.diff;
+
+import java.util.List;
+
+/**
+ * A group of nearby changes with the unchanged tokens around them. Offsets and counts
+ * are in tokens (lines or words) of the old and new version.
+ */
+public final class DiffHunk {
+
+    public enum Type { EQUAL, DELETE, INSERT }
+
+    /** Consecutive tokens with the same type, concatenated. */
+    public static final class Change {
+        private final Type type;
+        private final String text;
+        private final int tokenCount;
+
+        Change(Type type, String text, int tokenCount) {
+            this.type = type;
+            this.text = text;
+            this.tokenCount = tokenCount;
+        }
+
+        public Type getType() { return type; }
+
+        public String getText() { return text; }
+
+        public int getTokenCount() { return tokenCount; }
+    }
+
+    private final int oldOffset;
+    private final int oldCount;
+    private final int newOffset;
+    private final int newCount;
+    private final List<Change> changes;
+
+    DiffHunk(int oldOffset, int oldCount, int newOffset, int newCount, List<Change> changes) {
+        this.oldOffset = oldOffset;
+        this.oldCount = oldCount;
+        this.newOffset = newOffset;
+        this.newCount = newCount;
+        this.changes = changes;
+    }
+
+    /** Zero-based index of the hunk's first token in the old version. */
+    public int getOldOffset() { return oldOffset; }
+
+    public int getOldCount() { return oldCount; }
+
+    /** Zero-based index of the hunk's first token in the new version. */
+    public int getNewOffset() { return newOffset; }
+
+    public int getNewCount() { return newCount; }
+
+    public List<Change> getChanges() { return changes; }
+}
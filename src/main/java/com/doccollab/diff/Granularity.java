@@ -0,0 +1,19 @@
+package com.doccollab.diff;
+
+/**
+ * Unit a diff compares: whole lines (including their newline), or words, whitespace
+ * runs and punctuation.
+ */
+public enum Granularity {
+    LINE, WORD;
+
+    /** Parses a query parameter value, or returns null if it is not a granularity. */
+    public static Granularity parse(String value) {
+        for (Granularity granularity : values()) {
+            if (granularity.name().equalsIgnoreCase(value)) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,244 @@
+package com.doccollab.diff;
+
+import java.util.Arrays;
+
+/**
+ * Myers' O(ND) difference algorithm in its linear-space form: each subproblem finds the
+ * middle of an optimal edit path by searching forwards and backwards at once, then
+ * recurses on the two halves. Memory is two vectors of O(N + M) ints however long the
+ * edit script is.
+ *
+ * As in GNU diff, a subproblem whose edit distance exceeds a cost limit is split at the
+ * furthest point the forward search reached instead of the exact middle, which bounds
+ * the running time on unrelated texts at the price of a possibly non-minimal result.
+ */
+final class MyersDiff {
+
+    private static final int MIN_COST_LIMIT = 256;
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+    private final int[] forward;
+    private final int[] backward;
+    private final int center;
+    private final int costLimit;
+
+    private MyersDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.deleted = new boolean[a.length];
+        this.inserted = new boolean[b.length];
+        this.forward = new int[a.length + b.length + 4];
+        this.backward = new int[a.length + b.length + 4];
+        this.center = (a.length + b.length) / 2 + 2;
+        // About the square root of the input size, as GNU diff chooses
+        int limit = 1;
+        for (long diagonals = a.length + b.length + 3L; diagonals > 0; diagonals >>= 2) {
+            limit <<= 1;
+        }
+        this.costLimit = Math.max(MIN_COST_LIMIT, limit);
+    }
+
+    /**
+     * Marks which tokens of {@code a} are deleted and which tokens of {@code b} are
+     * inserted; unmarked tokens are common to both, in order.
+     *
+     * @return {deleted, inserted}
+     */
+    static boolean[][] compare(int[] a, int[] b) {
+        // Tokens that occur on only one side can never match, so only the rest is searched
+        int idLimit = 0;
+        for (int token : a) {
+            idLimit = Math.max(idLimit, token + 1);
+        }
+        for (int token : b) {
+            idLimit = Math.max(idLimit, token + 1);
+        }
+        boolean[] inA = new boolean[idLimit];
+        boolean[] inB = new boolean[idLimit];
+        for (int token : a) {
+            inA[token] = true;
+        }
+        for (int token : b) {
+            inB[token] = true;
+        }
+        int[] aKept = keep(a, inB);
+        int[] bKept = keep(b, inA);
+
+        MyersDiff diff = new MyersDiff(tokensAt(a, aKept), tokensAt(b, bKept));
+        diff.compare(0, aKept.length, 0, bKept.length);
+        return new boolean[][] {expand(a.length, aKept, diff.deleted), expand(b.length, bKept, diff.inserted)};
+    }
+
+    /** Indices of the tokens of {@code tokens} that {@code present} marks. */
+    private static int[] keep(int[] tokens, boolean[] present) {
+        int count = 0;
+        for (int token : tokens) {
+            if (present[token]) {
+                count++;
+            }
+        }
+        int[] kept = new int[count];
+        int next = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            if (present[tokens[i]]) {
+                kept[next++] = i;
+            }
+        }
+        return kept;
+    }
+
+    private static int[] tokensAt(int[] tokens, int[] indices) {
+        int[] result = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = tokens[indices[i]];
+        }
+        return result;
+    }
+
+    /** Marks for the full sequence: filtered-out tokens are changed, kept ones take their computed mark. */
+    private static boolean[] expand(int length, int[] kept, boolean[] keptMarks) {
+        boolean[] marks = new boolean[length];
+        Arrays.fill(marks, true);
+        for (int i = 0; i < kept.length; i++) {
+            marks[kept[i]] = keptMarks[i];
+        }
+        return marks;
+    }
+
+    private void compare(int aLow, int aHigh, int bLow, int bHigh) {
+        // Common prefix and suffix are never part of the edit script
+        while (aLow < aHigh && bLow < bHigh && a[aLow] == b[bLow]) {
+            aLow++;
+            bLow++;
+        }
+        while (aLow < aHigh && bLow < bHigh && a[aHigh - 1] == b[bHigh - 1]) {
+            aHigh--;
+            bHigh--;
+        }
+
+        if (aLow == aHigh) {
+            Arrays.fill(inserted, bLow, bHigh, true);
+            return;
+        }
+        if (bLow == bHigh) {
+            Arrays.fill(deleted, aLow, aHigh, true);
+            return;
+        }
+
+        long split = split(aLow, aHigh, bLow, bHigh);
+        if (split < 0) {
+            Arrays.fill(deleted, aLow, aHigh, true);
+            Arrays.fill(inserted, bLow, bHigh, true);
+            return;
+        }
+        int x = (int) (split >>> 32);
+        int y = (int) split;
+        compare(aLow, x, bLow, y);
+        compare(x, aHigh, y, bHigh);
+    }
+
+    /**
+     * Point where an optimal (or, past the cost limit, a good) path crosses between the
+     * forward and backward searches, packed as {@code x << 32 | y}; -1 if the ranges
+     * have nothing in common.
+     */
+    private long split(int aLow, int aHigh, int bLow, int bHigh) {
+        int n = aHigh - aLow;
+        int m = bHigh - bLow;
+        int maxD = (n + m + 1) / 2;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+
+        // forward[center + k]: furthest x on diagonal k = x - y from the start;
+        // backward[center + k]: furthest distance back from the end on diagonal k
+        Arrays.fill(forward, center - maxD - 1, center + maxD + 2, -1);
+        Arrays.fill(backward, center - maxD - 1, center + maxD + 2, -1);
+        forward[center + 1] = 0;
+        backward[center + 1] = 0;
+
+        // Diagonals that ran off the edges are skipped in later rounds
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int index = center + k;
+                int x = k == -d || (k != d && forward[index - 1] < forward[index + 1])
+                        ? forward[index + 1] : forward[index - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLow + x] == b[bLow + y]) {
+                    x++;
+                    y++;
+                }
+                forward[index] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (odd) {
+                    int reverseIndex = center + delta - k;
+                    if (reverseIndex >= center - maxD - 1 && reverseIndex <= center + maxD + 1
+                            && backward[reverseIndex] != -1 && x >= n - backward[reverseIndex]) {
+                        return pack(aLow + x, bLow + y);
+                    }
+                }
+            }
+
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int index = center + k;
+                int x = k == -d || (k != d && backward[index - 1] < backward[index + 1])
+                        ? backward[index + 1] : backward[index - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHigh - x - 1] == b[bHigh - y - 1]) {
+                    x++;
+                    y++;
+                }
+                backward[index] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!odd) {
+                    int forwardIndex = center + delta - k;
+                    if (forwardIndex >= center - maxD - 1 && forwardIndex <= center + maxD + 1
+                            && forward[forwardIndex] != -1) {
+                        int forwardX = forward[forwardIndex];
+                        int forwardY = forwardX - (forwardIndex - center);
+                        if (forwardX >= n - x) {
+                            return pack(aLow + forwardX, bLow + forwardY);
+                        }
+                    }
+                }
+            }
+
+            if (d >= costLimit) {
+                return furthestForward(aLow, bLow, n, m, d, forwardStart, forwardEnd);
+            }
+        }
+        return -1;
+    }
+
+    /** The furthest-reaching point of the forward search, used once the cost limit is hit. */
+    private long furthestForward(int aLow, int bLow, int n, int m, int d, int forwardStart, int forwardEnd) {
+        int bestX = -1;
+        int bestY = -1;
+        for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+            int x = Math.min(forward[center + k], n);
+            int y = Math.min(x - k, m);
+            if (x >= 0 && y >= 0 && x + y > bestX + bestY && x + y < n + m) {
+                bestX = x;
+                bestY = y;
+            }
+        }
+        return bestX + bestY > 0 ? pack(aLow + bestX, bLow + bestY) : -1;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,143 @@
+package com.doccollab.diff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Difference between two texts at line or word granularity, computed with a
+ * linear-space Myers diff over interned tokens.
+ */
+public final class TextDiff {
+
+    private final Granularity granularity;
+    private final TokenTable tokens;
+    private final int[] from;
+    private final int[] to;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+
+    private TextDiff(Granularity granularity, TokenTable tokens, int[] from, int[] to) {
+        this.granularity = granularity;
+        this.tokens = tokens;
+        this.from = from;
+        this.to = to;
+        boolean[][] marks = MyersDiff.compare(from, to);
+        this.deleted = marks[0];
+        this.inserted = marks[1];
+    }
+
+    /** Diffs the texts read from {@code from} and {@code to}; neither is closed. */
+    public static TextDiff compute(Reader from, Reader to, Granularity granularity) throws IOException {
+        TokenTable tokens = new TokenTable(granularity);
+        int[] fromTokens = tokens.tokenize(from);
+        int[] toTokens = tokens.tokenize(to);
+        return new TextDiff(granularity, tokens, fromTokens, toTokens);
+    }
+
+    public Granularity getGranularity() { return granularity; }
+
+    public int getDeletedCount() { return count(deleted); }
+
+    public int getInsertedCount() { return count(inserted); }
+
+    /**
+     * Changes grouped into hunks with up to {@code context} unchanged tokens on each
+     * side. Hunks whose context would overlap are merged.
+     */
+    public List<DiffHunk> hunks(int context) {
+        List<DiffHunk> hunks = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (true) {
+            // Skip to the next change
+            while (i < from.length && j < to.length && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+            }
+            if (i == from.length && j == to.length) {
+                return hunks;
+            }
+
+            int leading = Math.min(context, Math.min(i, j));
+            int oldStart = i - leading;
+            int newStart = j - leading;
+            HunkBuilder hunk = new HunkBuilder();
+            for (int t = 0; t < leading; t++) {
+                hunk.add(DiffHunk.Type.EQUAL, from[oldStart + t]);
+            }
+
+            while (true) {
+                while (i < from.length && deleted[i]) {
+                    hunk.add(DiffHunk.Type.DELETE, from[i++]);
+                }
+                while (j < to.length && inserted[j]) {
+                    hunk.add(DiffHunk.Type.INSERT, to[j++]);
+                }
+
+                // Length of the unchanged run that follows
+                int run = 0;
+                while (i + run < from.length && j + run < to.length && !deleted[i + run] && !inserted[j + run]) {
+                    run++;
+                }
+                boolean atEnd = i + run == from.length && j + run == to.length;
+                if (atEnd || run > 2 * context) {
+                    int trailing = Math.min(run, context);
+                    for (int t = 0; t < trailing; t++) {
+                        hunk.add(DiffHunk.Type.EQUAL, from[i + t]);
+                    }
+                    i += trailing;
+                    j += trailing;
+                    hunks.add(hunk.build(oldStart, i - oldStart, newStart, j - newStart));
+                    break;
+                }
+                for (int t = 0; t < run; t++) {
+                    hunk.add(DiffHunk.Type.EQUAL, from[i + t]);
+                }
+                i += run;
+                j += run;
+            }
+        }
+    }
+
+    private static int count(boolean[] marks) {
+        int count = 0;
+        for (boolean mark : marks) {
+            if (mark) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Collects tokens into runs of one type. */
+    private final class HunkBuilder {
+        private final List<DiffHunk.Change> changes = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private DiffHunk.Type type;
+        private int tokenCount;
+
+        void add(DiffHunk.Type tokenType, int token) {
+            if (tokenType != type) {
+                flush();
+                type = tokenType;
+            }
+            text.append(tokens.token(token));
+            tokenCount++;
+        }
+
+        DiffHunk build(int oldOffset, int oldCount, int newOffset, int newCount) {
+            flush();
+            return new DiffHunk(oldOffset, oldCount, newOffset, newCount, changes);
+        }
+
+        private void flush() {
+            if (tokenCount > 0) {
+                changes.add(new DiffHunk.Change(type, text.toString(), tokenCount));
+                text.setLength(0);
+                tokenCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.doccollab.diff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits texts into tokens and interns them, so both sides of a diff become int
+ * arrays that compare with {@code ==} and each distinct token is held once.
+ *
+ * Input is read incrementally from a {@link Reader}, so a version can be tokenized
+ * while it is still streaming in from S3 without first building the whole string.
+ */
+final class TokenTable {
+
+    private static final int READ_BUFFER_CHARS = 8192;
+
+    private final Granularity granularity;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+
+    TokenTable(Granularity granularity) {
+        this.granularity = granularity;
+    }
+
+    String token(int id) {
+        return tokens.get(id);
+    }
+
+    /** Token IDs of everything {@code reader} yields, in order. */
+    int[] tokenize(Reader reader) throws IOException {
+        IntList result = new IntList();
+        StringBuilder current = new StringBuilder();
+        char[] buffer = new char[READ_BUFFER_CHARS];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (current.length() > 0 && startsNewToken(current.charAt(current.length() - 1), c)) {
+                    result.add(intern(current));
+                    current.setLength(0);
+                }
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            result.add(intern(current));
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Line tokens end after each newline. Word tokens are runs of letters or digits,
+     * runs of whitespace, and single other characters.
+     */
+    private boolean startsNewToken(char previous, char next) {
+        if (granularity == Granularity.LINE) {
+            return previous == '\n';
+        }
+        if (Character.isLetterOrDigit(previous)) {
+            return !Character.isLetterOrDigit(next);
+        }
+        if (Character.isWhitespace(previous)) {
+            return !Character.isWhitespace(next);
+        }
+        // A surrogate pair stays one token
+        return !(Character.isHighSurrogate(previous) && Character.isLowSurrogate(next));
+    }
+
+    private int intern(StringBuilder text) {
+        String token = text.toString();
+        Integer id = ids.get(token);
+        if (id == null) {
+            id = tokens.size();
+            ids.put(token, id);
+            tokens.add(token);
+        }
+        return id;
+    }
+
+    private static final class IntList {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.storage.ArchiveSegment;
+import com.doccollab.storage.VersionStore;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scheduled mark-and-sweep of version objects. Marks every key referenced by a document
+ * or history record, then deletes unreferenced objects under {@code blobs/},
+ * {@code documents/} and {@code archives/}: versions from lost commit races, abandoned
+ * client uploads, failed uploads, loose versions since packed into an archive segment and
+ * segments from archive runs that failed before referencing them.
+ *
+ * Marking runs before listing, and only objects older than the grace period are swept.
+ * An edit, coalesced save or archive run writes its object shortly before committing the
+ * record that references it, unless it reuses an object a committed record already
+ * references or one written within {@link VersionStore#REUSE_WINDOW}; an older copy is
+ * rewritten. So a reference the scan misses always points at a recently written object.
+ * Records are rewritten in place, so the listing can go stale: each candidate's age is
+ * read again with a HEAD just before its batch is deleted.
+ *
+ * Input: optional {@code {"dryRun": true}} to report candidates without deleting them.
+ */
+public class BlobCleanupHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    private static final List<String> SWEPT_PREFIXES = List.of(VersionStore.BLOB_PREFIX, "documents/", ArchiveSegment.PREFIX);
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+    private final String historyTable;
+    private final String s3Bucket;
+
+    public BlobCleanupHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public BlobCleanupHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.s3Client = s3Client;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.s3Bucket = config.getS3Bucket();
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> input, Context context) {
+        boolean dryRun = input != null && Boolean.parseBoolean(String.valueOf(input.get("dryRun")));
+        // Objects reused without a rewrite are up to REUSE_WINDOW old when referenced
+        Duration grace = Duration.ofHours(config.getOrphanGraceHours());
+        if (grace.compareTo(VersionStore.REUSE_WINDOW.multipliedBy(2)) < 0) {
+            grace = VersionStore.REUSE_WINDOW.multipliedBy(2);
+        }
+        Instant cutoff = Instant.now().minus(grace);
+        Metrics metrics = Metrics.start("BlobCleanup");
+
+        try {
+            // Mark
+            long stageStart = metrics.startTimer();
+            Set<String> referenced = new HashSet<>();
+            markReferences(documentsTable, List.of("currentFile", "currentBaseFile", "originalFile"), referenced);
+            markReferences(historyTable, List.of("filePath", "baseFile"), referenced);
+            metrics.recordSince("Mark", stageStart);
+
+            // Sweep
+            stageStart = metrics.startTimer();
+            int scanned = 0;
+            int deleted = 0;
+            List<ObjectIdentifier> batch = new ArrayList<>();
+            for (String prefix : SWEPT_PREFIXES) {
+                for (S3Object object : s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                        .bucket(s3Bucket)
+                        .prefix(prefix)
+                        .build()).contents()) {
+                    scanned++;
+                    if (referenced.contains(object.key()) || !object.lastModified().isBefore(cutoff)) {
+                        continue;
+                    }
+                    batch.add(ObjectIdentifier.builder().key(object.key()).build());
+                    if (batch.size() == DELETE_BATCH_SIZE) {
+                        deleted += deleteBatch(batch, cutoff, dryRun, context);
+                        batch.clear();
+                    }
+                }
+            }
+            deleted += deleteBatch(batch, cutoff, dryRun, context);
+            metrics.recordSince("Sweep", stageStart);
+            metrics.count("ReferencedKeys", referenced.size());
+            metrics.count("ScannedObjects", scanned);
+            metrics.count("DeletedObjects", deleted);
+
+            context.getLogger().log("Blob cleanup: " + referenced.size() + " referenced, " + scanned
+                    + " scanned, " + deleted + (dryRun ? " would be deleted" : " deleted"));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("referencedKeys", referenced.size());
+            result.put("scannedObjects", scanned);
+            result.put("deletedObjects", deleted);
+            result.put("dryRun", dryRun);
+            return result;
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    private void markReferences(String tableName, List<String> attributes, Set<String> referenced) {
+        for (Map<String, AttributeValue> item : dynamoDbClient.scanPaginator(ScanRequest.builder()
+                .tableName(tableName)
+                .projectionExpression(String.join(", ", attributes))
+                .build()).items()) {
+            for (String attribute : attributes) {
+                AttributeValue value = item.get(attribute);
+                if (value != null && value.s() != null) {
+                    // An archived version keeps its whole segment
+                    referenced.add(ArchiveSegment.isLocator(value.s()) ? ArchiveSegment.segmentOf(value.s()) : value.s());
+                }
+            }
+        }
+    }
+
+    private int deleteBatch(List<ObjectIdentifier> batch, Instant cutoff, boolean dryRun, Context context) {
+        // A save may have rewritten a listed object since, taking it out of the sweep
+        List<ObjectIdentifier> orphans = new ArrayList<>(batch.size());
+        for (ObjectIdentifier object : batch) {
+            if (isOlderThan(object.key(), cutoff)) {
+                orphans.add(object);
+            }
+        }
+        if (orphans.isEmpty() || dryRun) {
+            return orphans.size();
+        }
+
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(s3Bucket)
+                .delete(Delete.builder().objects(orphans).quiet(true).build())
+                .build());
+        if (response.hasErrors() && !response.errors().isEmpty()) {
+            context.getLogger().log("Error: blob cleanup failed to delete " + response.errors().size()
+                    + " objects, first: " + response.errors().get(0).key() + " " + response.errors().get(0).message());
+        }
+        return orphans.size() - (response.hasErrors() ? response.errors().size() : 0);
+    }
+
+    private boolean isOlderThan(String key, Instant cutoff) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(s3Bucket)
+                    .key(key)
+                    .build()).lastModified().isBefore(cutoff);
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.models.Document;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.storage.TransferUrls;
+import com.doccollab.storage.VersionCache;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.ETagUtil;
+import com.doccollab.utils.JsonCodec;
+import com.doccollab.utils.ResponseUtil;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * POST /documents/batch: several documents in one request, for screens that open a whole
+ * workspace at once. Metadata comes from one BatchGetItem call and the bodies are read
+ * from S3 in parallel; {@code ?mode=metadata} skips S3 entirely.
+ *
+ * Bodies are inlined up to {@code LARGE_DOCUMENT_BYTES} in total, in request order, so
+ * the response stays within Lambda's payload limit. Beyond that a snapshot comes back as
+ * a presigned {@code contentUrl} and any other version as {@code contentOmitted}, to be
+ * fetched through GET /documents/{id}.
+ */
+public class DocumentBatchGetHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    // BatchGetItem's limit on keys per call
+    public static final int MAX_DOCUMENTS = 100;
+
+    private static final int MAX_PARALLEL_READS = 8;
+    private static final int MAX_BATCH_ATTEMPTS = 6;
+    private static final long BASE_BACKOFF_MILLIS = 25;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+
+    private final VersionStore versionStore;
+    private final OperationLog operationLog;
+    private final TransferUrls transferUrls;
+    private final ExecutorService readExecutor;
+
+    public DocumentBatchGetHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), AwsClients.s3Presigner(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentBatchGetHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, S3Presigner presigner, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.versionStore = new VersionStore(s3Client, config.getS3Bucket(), config.getSnapshotInterval(), VersionCache.shared());
+        this.operationLog = new OperationLog(dynamoDbClient, config.getHistoryTable(), versionStore);
+        this.transferUrls = new TransferUrls(presigner, config.getS3Bucket());
+        // Bounds concurrent S3 reads, and with them how many bodies are in memory at once
+        this.readExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_READS, runnable -> {
+            Thread thread = new Thread(runnable, "batch-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentBatchGet");
+
+        try {
+            List<String> requested;
+            try {
+                requested = JsonCodec.readStringArray(request.getBody(), "documentIds", MAX_DOCUMENTS);
+            } catch (IOException e) {
+                return ResponseUtil.createErrorResponse(400, e.getMessage());
+            }
+            if (requested == null || requested.isEmpty()) {
+                return ResponseUtil.createErrorResponse(400, "documentIds is required");
+            }
+            if (requested.stream().anyMatch(String::isEmpty)) {
+                return ResponseUtil.createErrorResponse(400, "Document IDs must not be empty");
+            }
+
+            Map<String, String> params = request.getQueryStringParameters() != null
+                    ? request.getQueryStringParameters() : Map.of();
+            String mode = params.getOrDefault("mode", "content");
+            if (!mode.equals("content") && !mode.equals("metadata")) {
+                return ResponseUtil.createErrorResponse(400, "mode must be content or metadata");
+            }
+
+            // BatchGetItem rejects duplicate keys; repeated IDs are answered once
+            List<String> documentIds = new ArrayList<>(new LinkedHashSet<>(requested));
+
+            long stageStart = metrics.startTimer();
+            Set<String> unavailable = new HashSet<>();
+            Map<String, Map<String, AttributeValue>> items = readItems(documentIds, unavailable, metrics);
+            metrics.recordSince("ReadDocuments", stageStart);
+            metrics.count("DocumentsFound", items.size());
+
+            Map<String, Future<String>> contents = new HashMap<>();
+            Map<String, String> contentUrls = new HashMap<>();
+            Set<String> omitted = new HashSet<>();
+            long contentBytes = 0;
+            if (mode.equals("content")) {
+                stageStart = metrics.startTimer();
+                long inlineBudget = config.getLargeDocumentBytes();
+                for (String documentId : documentIds) {
+                    Map<String, AttributeValue> item = items.get(documentId);
+                    if (item == null) {
+                        continue;
+                    }
+                    String currentFile = item.get("currentFile").s();
+                    String currentBaseFile = item.containsKey("currentBaseFile") ? item.get("currentBaseFile").s() : null;
+                    boolean pendingOperations = OperationLog.hasPendingOperations(item);
+                    boolean isSnapshot = !pendingOperations && (currentBaseFile == null || currentBaseFile.equals(currentFile));
+                    long contentLength = item.containsKey("currentContentLength")
+                            ? Long.parseLong(item.get("currentContentLength").n()) : -1;
+
+                    // Rows written before lengths were recorded could be any size, so they never draw on the budget
+                    if (contentLength < 0 || contentLength >= config.getLargeDocumentBytes() || contentLength > inlineBudget) {
+                        if (isSnapshot) {
+                            contentUrls.put(documentId, transferUrls.downloadUrl(currentFile));
+                        } else {
+                            omitted.add(documentId);
+                        }
+                        continue;
+                    }
+                    inlineBudget -= contentLength;
+                    contents.put(documentId, readExecutor.submit(metrics.propagate(() -> pendingOperations
+                            ? operationLog.readCurrent(item)
+                            : versionStore.readVersion(currentFile, currentBaseFile))));
+                }
+                for (Future<String> content : contents.values()) {
+                    try {
+                        contentBytes += content.get().length();
+                    } catch (ExecutionException e) {
+                        // Reported on that document alone
+                    }
+                }
+                metrics.recordSince("ReadContent", stageStart);
+                metrics.recordSize("ContentBytes", contentBytes);
+            }
+
+            List<String> failures = new ArrayList<>();
+            APIGatewayProxyResponseEvent response = ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeArrayFieldStart("documents");
+                for (String documentId : documentIds) {
+                    generator.writeStartObject();
+                    Map<String, AttributeValue> item = items.get(documentId);
+                    if (item == null) {
+                        generator.writeStringField("documentId", documentId);
+                        generator.writeStringField("error", unavailable.contains(documentId)
+                                ? "Temporarily unavailable, retry" : "Document not found");
+                        generator.writeEndObject();
+                        continue;
+                    }
+
+                    Document document = Document.fromItem(item);
+                    JsonCodec.writeDocumentFields(generator, document);
+                    generator.writeStringField("etag", ETagUtil.format(documentId, document.getCurrentEditNumber(), document.getCurrentRevision()));
+                    if (contentUrls.containsKey(documentId)) {
+                        generator.writeStringField("contentUrl", contentUrls.get(documentId));
+                        generator.writeNumberField("contentUrlExpiresIn", TransferUrls.EXPIRY.getSeconds());
+                    } else if (omitted.contains(documentId)) {
+                        generator.writeBooleanField("contentOmitted", true);
+                    } else if (contents.containsKey(documentId)) {
+                        try {
+                            generator.writeStringField("content", contents.get(documentId).get());
+                        } catch (ExecutionException | InterruptedException e) {
+                            failures.add(documentId + ": " + e.getCause());
+                            generator.writeStringField("error", "Failed to read content");
+                        }
+                    }
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }, (int) Math.min(Integer.MAX_VALUE, contentBytes + 512L * documentIds.size()), Map.of());
+
+            failures.forEach(failure -> context.getLogger().log("Error: " + failure));
+            return response;
+
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    /**
+     * Document rows by ID. Keys DynamoDB leaves unprocessed under throttling are retried
+     * with jittered exponential backoff; those still unprocessed after the last attempt
+     * are added to {@code unavailable}.
+     */
+    private Map<String, Map<String, AttributeValue>> readItems(List<String> documentIds, Set<String> unavailable,
+                                                               Metrics metrics) throws InterruptedException {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(documentIds.size());
+        for (String documentId : documentIds) {
+            keys.add(Map.of("documentId", AttributeValue.builder().s(documentId).build()));
+        }
+
+        Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+        Map<String, KeysAndAttributes> pending = Map.of(documentsTable, KeysAndAttributes.builder().keys(keys).build());
+        for (int attempt = 0; ; attempt++) {
+            BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(pending)
+                    .build());
+            for (Map<String, AttributeValue> item : response.responses().getOrDefault(documentsTable, List.of())) {
+                items.put(item.get("documentId").s(), item);
+            }
+
+            pending = response.unprocessedKeys();
+            if (pending == null || !pending.containsKey(documentsTable) || pending.get(documentsTable).keys().isEmpty()) {
+                return items;
+            }
+            if (attempt + 1 == MAX_BATCH_ATTEMPTS) {
+                for (Map<String, AttributeValue> key : pending.get(documentsTable).keys()) {
+                    unavailable.add(key.get("documentId").s());
+                }
+                return items;
+            }
+            metrics.count("BatchRetries", 1);
+            Thread.sleep(ThreadLocalRandom.current().nextLong(Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt) + 1));
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.diff.DiffCodec;
+import com.doccollab.diff.DiffHunk;
+import com.doccollab.diff.Granularity;
+import com.doccollab.diff.TextDiff;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.storage.TransferUrls;
+import com.doccollab.storage.VersionCache;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.JsonCodec;
+import com.doccollab.utils.ResponseUtil;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Line- or word-level diff between two versions of a document, as a unified diff or
+ * as JSON hunks.
+ *
+ * Versions never change once settled, so a rendered diff is valid forever: it is kept
+ * in the version cache and under {@value #DIFF_PREFIX} in S3, and served with an
+ * immutable Cache-Control header. A diff involving a version that coalesced saves may
+ * still replace is rendered on every request and never cached.
+ */
+public class DocumentDiffHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    public static final String DIFF_PREFIX = "diffs/";
+
+    private static final String UNIFIED = "unified";
+    private static final String JSON = "json";
+    private static final String UNIFIED_CONTENT_TYPE = "text/x-diff; charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final Map<String, String> IMMUTABLE = Map.of("Cache-Control", "public, max-age=31536000, immutable");
+    private static final Map<String, String> NO_CACHE = Map.of("Cache-Control", "no-cache");
+    // A presigned link is only good until it expires, however long the diff behind it is
+    private static final Map<String, String> LINK_CACHE = Map.of("Cache-Control",
+            "private, max-age=" + TransferUrls.EXPIRY.getSeconds() / 2);
+
+    private static final int DEFAULT_CONTEXT = 3;
+    private static final int MAX_CONTEXT = 100;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+
+    private final ServiceConfig config;
+    private final String historyTable;
+    private final String bucket;
+
+    private final VersionStore versionStore;
+    private final OperationLog operationLog;
+    private final TransferUrls transferUrls;
+    private final VersionCache cache;
+
+    public DocumentDiffHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), AwsClients.s3Presigner(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentDiffHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, S3Presigner presigner, ServiceConfig config) {
+        this(dynamoDbClient, s3Client, presigner, config, VersionCache.shared());
+    }
+
+    /** @param cache in-memory cache for versions and rendered diffs; null to always read S3 */
+    public DocumentDiffHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, S3Presigner presigner, ServiceConfig config,
+                               VersionCache cache) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.s3Client = s3Client;
+        this.config = config;
+        this.historyTable = config.getHistoryTable();
+        this.bucket = config.getS3Bucket();
+        this.cache = cache;
+        this.versionStore = new VersionStore(s3Client, bucket, config.getSnapshotInterval(), cache);
+        this.operationLog = new OperationLog(dynamoDbClient, historyTable, versionStore);
+        this.transferUrls = new TransferUrls(presigner, bucket);
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentDiff");
+
+        try {
+            String documentId = request.getPathParameters().get("documentId");
+
+            if (documentId == null || documentId.isEmpty()) {
+                return ResponseUtil.createErrorResponse(400, "Document ID is required");
+            }
+
+            Map<String, String> params = request.getQueryStringParameters() != null
+                    ? request.getQueryStringParameters() : Map.of();
+            if (!params.containsKey("from") || !params.containsKey("to")) {
+                return ResponseUtil.createErrorResponse(400, "from and to edit numbers are required");
+            }
+
+            int from;
+            int to;
+            int contextLines;
+            try {
+                from = Integer.parseInt(params.get("from"));
+                to = Integer.parseInt(params.get("to"));
+                contextLines = Integer.parseInt(params.getOrDefault("context", String.valueOf(DEFAULT_CONTEXT)));
+            } catch (NumberFormatException e) {
+                return ResponseUtil.createErrorResponse(400, "from, to and context must be numbers");
+            }
+            if (from < 1 || to < 1) {
+                return ResponseUtil.createErrorResponse(400, "from and to must be positive edit numbers");
+            }
+            if (contextLines < 0 || contextLines > MAX_CONTEXT) {
+                return ResponseUtil.createErrorResponse(400, "context must be between 0 and " + MAX_CONTEXT);
+            }
+
+            Granularity granularity = Granularity.parse(params.getOrDefault("granularity", "line"));
+            if (granularity == null) {
+                return ResponseUtil.createErrorResponse(400, "granularity must be line or word");
+            }
+            String format = params.getOrDefault("format", UNIFIED).toLowerCase(Locale.ROOT);
+            if (!format.equals(UNIFIED) && !format.equals(JSON)) {
+                return ResponseUtil.createErrorResponse(400, "format must be unified or json");
+            }
+            if (format.equals(UNIFIED) && granularity != Granularity.LINE) {
+                return ResponseUtil.createErrorResponse(400, "unified format requires line granularity");
+            }
+            String contentType = format.equals(UNIFIED) ? UNIFIED_CONTENT_TYPE : JSON_CONTENT_TYPE;
+
+            // Settled versions are immutable, so a diff rendered once is reused as is
+            String options = "-" + granularity.name().toLowerCase(Locale.ROOT) + "-" + contextLines + "." + format;
+            String diffKey = DIFF_PREFIX + documentId + "/" + from + "-" + to + options;
+            long stageStart = metrics.startTimer();
+            byte[] stored = readStoredDiff(diffKey);
+            metrics.recordSince("ReadCached", stageStart);
+            if (stored != null) {
+                metrics.count("DiffCacheHits", 1);
+                return diffResponse(documentId, from, to, diffKey, stored, contentType, IMMUTABLE);
+            }
+
+            stageStart = metrics.startTimer();
+            Map<String, AttributeValue> fromRow = historyRow(documentId, from);
+            Map<String, AttributeValue> toRow = historyRow(documentId, to);
+            metrics.recordSince("ReadHistory", stageStart);
+            if (fromRow == null || toRow == null) {
+                return ResponseUtil.createErrorResponse(404, "Version " + (fromRow == null ? from : to) + " not found");
+            }
+
+            // Both versions are tokenized as they stream in; only their token IDs are kept
+            stageStart = metrics.startTimer();
+            TextDiff diff;
+            try (Reader fromReader = openVersion(documentId, fromRow);
+                 Reader toReader = openVersion(documentId, toRow)) {
+                diff = TextDiff.compute(fromReader, toReader, granularity);
+            }
+            metrics.recordSince("Diff", stageStart);
+
+            stageStart = metrics.startTimer();
+            List<DiffHunk> hunks = diff.hunks(contextLines);
+            String body;
+            if (format.equals(UNIFIED)) {
+                body = DiffCodec.writeUnified(hunks, documentId + "@" + from, documentId + "@" + to);
+            } else {
+                body = JsonCodec.write(generator -> {
+                    generator.writeStartObject();
+                    generator.writeBooleanField("success", true);
+                    generator.writeStringField("documentId", documentId);
+                    generator.writeNumberField("from", from);
+                    generator.writeNumberField("to", to);
+                    generator.writeStringField("granularity", granularity.name().toLowerCase(Locale.ROOT));
+                    generator.writeNumberField("insertions", diff.getInsertedCount());
+                    generator.writeNumberField("deletions", diff.getDeletedCount());
+                    generator.writeFieldName("hunks");
+                    DiffCodec.writeHunks(generator, hunks);
+                    generator.writeEndObject();
+                }, DiffCodec.estimateSize(hunks) + 512);
+            }
+            byte[] rendered = body.getBytes(StandardCharsets.UTF_8);
+            metrics.recordSince("Render", stageStart);
+            metrics.recordSize("DiffBytes", rendered.length);
+
+            if (!DocumentEditHandler.isSettled(fromRow, System.currentTimeMillis())
+                    || !DocumentEditHandler.isSettled(toRow, System.currentTimeMillis())) {
+                // Still open to coalesced saves; only a diff handed off by URL is stored, under its revisions
+                metrics.count("UnsettledDiffs", 1);
+                String revisionKey = DIFF_PREFIX + documentId + "/" + from + "r" + revisionOf(fromRow)
+                        + "-" + to + "r" + revisionOf(toRow) + options;
+                if (rendered.length >= config.getLargeDocumentBytes()) {
+                    storeDiff(revisionKey, rendered, contentType);
+                }
+                return diffResponse(documentId, from, to, revisionKey, rendered, contentType, NO_CACHE);
+            }
+
+            stageStart = metrics.startTimer();
+            storeDiff(diffKey, rendered, contentType);
+            metrics.recordSince("WriteCached", stageStart);
+
+            return diffResponse(documentId, from, to, diffKey, rendered, contentType, IMMUTABLE);
+
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    /** The rendered diff, or a presigned link to it when it is too large to return inline. */
+    private APIGatewayProxyResponseEvent diffResponse(String documentId, int from, int to, String diffKey,
+                                                      byte[] rendered, String contentType,
+                                                      Map<String, String> cacheHeaders) throws IOException {
+        if (rendered.length >= config.getLargeDocumentBytes()) {
+            String diffUrl = transferUrls.downloadUrl(diffKey);
+            return ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeStringField("documentId", documentId);
+                generator.writeNumberField("from", from);
+                generator.writeNumberField("to", to);
+                generator.writeStringField("diffUrl", diffUrl);
+                generator.writeNumberField("diffUrlExpiresIn", TransferUrls.EXPIRY.getSeconds());
+                generator.writeNumberField("contentLength", rendered.length);
+                generator.writeEndObject();
+            }, 1024, cacheHeaders == IMMUTABLE ? LINK_CACHE : cacheHeaders);
+        }
+        return ResponseUtil.createTextResponse(200, new String(rendered, StandardCharsets.UTF_8), contentType, cacheHeaders);
+    }
+
+    private static int revisionOf(Map<String, AttributeValue> row) {
+        return row.containsKey("revision") ? Integer.parseInt(row.get("revision").n()) : 0;
+    }
+
+    private Map<String, AttributeValue> historyRow(String documentId, int editNumber) {
+        GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(historyTable)
+                .key(Map.of(
+                        "documentId", AttributeValue.builder().s(documentId).build(),
+                        "editNumber", AttributeValue.builder().n(String.valueOf(editNumber)).build()))
+                .build());
+        return response.hasItem() ? response.item() : null;
+    }
+
+    /** Reader over the text of the version on {@code row}; S3 snapshots are streamed, not buffered. */
+    private Reader openVersion(String documentId, Map<String, AttributeValue> row) throws IOException {
+        if (row.containsKey("storageType") && OperationLog.OPS.equals(row.get("storageType").s())) {
+            return new StringReader(operationLog.readVersion(documentId, row));
+        }
+        String filePath = row.get("filePath").s();
+        String baseFile = row.containsKey("baseFile") ? row.get("baseFile").s() : null;
+        return new InputStreamReader(versionStore.openVersion(filePath, baseFile), StandardCharsets.UTF_8);
+    }
+
+    /** A diff rendered by an earlier request, from this container's cache or S3; null if there is none. */
+    private byte[] readStoredDiff(String key) {
+        byte[] cached = cache == null ? null : cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            byte[] stored = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build()).asByteArray();
+            if (cache != null) {
+                cache.put(key, stored);
+            }
+            return stored;
+        } catch (NoSuchKeyException e) {
+            return null;
+        }
+    }
+
+    private void storeDiff(String key, byte[] rendered, String contentType) {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .build(),
+                RequestBody.fromBytes(rendered));
+        if (cache != null) {
+            cache.put(key, rendered);
+        }
+    }
+}
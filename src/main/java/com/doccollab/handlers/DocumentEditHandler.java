@@ -4,31 +4,90 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.models.Document;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.search.SearchStore;
+import com.doccollab.storage.StoredVersion;
+import com.doccollab.storage.VersionCache;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.ETagUtil;
+import com.doccollab.utils.JsonCodec;
 import com.doccollab.utils.ResponseUtil;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 
+import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * PUT /documents/{documentId}: replaces the document's content with a new version.
+ *
+ * With {@code EDIT_COALESCE_SECONDS} set, a version opens a coalescing window when it is
+ * written: further saves by the same {@code editedBy} within the window replace it in place
+ * instead of appending versions, as autosave would otherwise do every few seconds. Each
+ * replacement is committed like any edit before it is acknowledged, under a new revision
+ * that ETags and commit conditions carry, so no client overwrites a revision it has not
+ * seen; the history row keeps the merged change descriptions. Anonymous saves, uploads
+ * and versions starting a snapshot group are never coalesced, so deltas are always based
+ * on a snapshot that can no longer change.
+ */
 public class DocumentEditHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbClient dynamoDbClient = DynamoDbClient.create();
-    private final S3Client s3Client = S3Client.create();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int BASE_FILE_CACHE_SIZE = 1024;
+    // Keeps a save storm's merged descriptions from growing the history row without bound
+    private static final int MAX_CHANGE_DESCRIPTION_CHARS = 1024;
+    private static final String DESCRIPTION_SEPARATOR = "; ";
+    // Clocks may disagree on when a window closed, so versions are settled only after this margin
+    private static final long SETTLE_MARGIN_MILLIS = 60_000;
+    private static final Set<String> REQUEST_FIELDS = Set.of("content", "uploadKey", "editedBy", "changeDescription", "expectedEditNumber");
 
-    private final String documentsTable = System.getenv("DOCUMENTS_TABLE");
-    private final String historyTable = System.getenv("DOCUMENT_HISTORY_TABLE");
-    private final String s3Bucket = System.getenv("S3_BUCKET");
+    private final DynamoDbClient dynamoDbClient;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+    private final String historyTable;
+
+    private final VersionStore versionStore;
+    private final SearchStore searchStore;
+
+    // Rows starting a snapshot group are never coalesced into, so snapshot lookups can be kept for the container's lifetime
+    private final Map<String, String> baseFileCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > BASE_FILE_CACHE_SIZE;
+                }
+            });
+
+    public DocumentEditHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentEditHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.versionStore = new VersionStore(s3Client, config.getS3Bucket(), config.getSnapshotInterval(), VersionCache.shared());
+        this.searchStore = new SearchStore(s3Client, config.getS3Bucket(), null);
+    }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentEdit");
 
         try {
             // Get documentId from path parameters
@@ -39,63 +98,235 @@ public class DocumentEditHandler implements RequestHandler<APIGatewayProxyReques
             }
 
             // Parse request body
-            JsonNode requestBody = objectMapper.readTree(request.getBody());
-            String newContent = requestBody.get("content").asText();
-            String editedBy = requestBody.has("editedBy") ?
-                    requestBody.get("editedBy").asText() : "anonymous";
-            String changeDescription = requestBody.has("changeDescription") ?
-                    requestBody.get("changeDescription").asText() : "Document updated";
-
-            // Get current document from DynamoDB
-            GetItemResponse getResponse = dynamoDbClient.getItem(GetItemRequest.builder()
-                    .tableName(documentsTable)
-                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
-                    .build());
-
-            if (!getResponse.hasItem()) {
-                return ResponseUtil.createErrorResponse(404, "Document not found");
+            long stageStart = metrics.startTimer();
+            Map<String, String> requestFields;
+            try {
+                requestFields = JsonCodec.readFields(request.getBody(), REQUEST_FIELDS);
+            } catch (IOException e) {
+                return ResponseUtil.createErrorResponse(400, e.getMessage());
+            }
+            metrics.recordSince("Parse", stageStart);
+            if (request.getBody() != null) {
+                metrics.recordSize("RequestBytes", request.getBody().length());
             }
+            String newContent = requestFields.get("content");
+            String uploadKey = requestFields.get("uploadKey");
+            String editedBy = requestFields.get("editedBy");
+            // Every unnamed editor shares one name, so anonymous saves must never coalesce into each other
+            boolean anonymous = editedBy == null || editedBy.isBlank() || editedBy.equalsIgnoreCase("anonymous");
+            if (anonymous) {
+                editedBy = "anonymous";
+            }
+            String changeDescription = requestFields.getOrDefault("changeDescription", "Document updated");
 
-            Map<String, AttributeValue> currentDoc = getResponse.item();
-            int currentEditNumber = Integer.parseInt(currentDoc.get("currentEditNumber").n());
-            int newEditNumber = currentEditNumber + 1;
-            String timestamp = Instant.now().toString();
-
-            // Save new version to S3
-            String newVersionKey = "documents/" + documentId + "-v" + newEditNumber + ".txt";
-            s3Client.putObject(
-                    PutObjectRequest.builder()
-                            .bucket(s3Bucket)
-                            .key(newVersionKey)
-                            .build(),
-                    RequestBody.fromString(newContent)
-            );
-
-            // Update document record in DynamoDB
-            dynamoDbClient.updateItem(UpdateItemRequest.builder()
-                    .tableName(documentsTable)
-                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
-                    .updateExpression("SET currentFile = :newFile, currentEditNumber = :newEditNum, lastModified = :timestamp")
-                    .expressionAttributeValues(Map.of(
-                            ":newFile", AttributeValue.builder().s(newVersionKey).build(),
-                            ":newEditNum", AttributeValue.builder().n(String.valueOf(newEditNumber)).build(),
-                            ":timestamp", AttributeValue.builder().s(timestamp).build()
-                    ))
-                    .build());
-
-            // Create history record
-            Map<String, AttributeValue> historyItem = new HashMap<>();
-            historyItem.put("documentId", AttributeValue.builder().s(documentId).build());
-            historyItem.put("editNumber", AttributeValue.builder().n(String.valueOf(newEditNumber)).build());
-            historyItem.put("filePath", AttributeValue.builder().s(newVersionKey).build());
-            historyItem.put("editedAt", AttributeValue.builder().s(timestamp).build());
-            historyItem.put("editedBy", AttributeValue.builder().s(editedBy).build());
-            historyItem.put("changeDescription", AttributeValue.builder().s(changeDescription).build());
-
-            dynamoDbClient.putItem(PutItemRequest.builder()
-                    .tableName(historyTable)
-                    .item(historyItem)
-                    .build());
+            if (newContent == null && uploadKey == null) {
+                return ResponseUtil.createErrorResponse(400, "content or uploadKey is required");
+            }
+            if (uploadKey != null && !VersionStore.isUploadKeyFor(documentId, uploadKey)) {
+                return ResponseUtil.createErrorResponse(400, "uploadKey does not belong to this document");
+            }
+
+            // Expected version from If-Match or the request body lets us skip the initial read
+            Integer expectedEditNumber = expectedEditNumber(documentId, request, requestFields);
+            if (expectedEditNumber == null && (requestFields.containsKey("expectedEditNumber")
+                    || ETagUtil.getHeader(request.getHeaders(), "If-Match") != null)) {
+                return ResponseUtil.createErrorResponse(400, "Invalid expected version");
+            }
+            int expectedRevision = expectedEditNumber != null ? expectedRevision(documentId, request, requestFields) : 0;
+
+            // Only the document row knows who opened the current version's window, so coalescing always reads it
+            boolean coalescing = config.getEditCoalesceSeconds() > 0 && uploadKey == null && !anonymous;
+            Instant editedAt = Instant.now();
+            String timestamp = editedAt.toString();
+
+            int currentEditNumber;
+            int currentRevision;
+            String baseFile;
+            String currentFile = null;
+            boolean coalesce = false;
+
+            if (expectedEditNumber != null && !coalescing) {
+                currentEditNumber = expectedEditNumber;
+                currentRevision = expectedRevision;
+                baseFile = null;
+            } else {
+                // Get current document from DynamoDB
+                stageStart = metrics.startTimer();
+                GetItemResponse getResponse = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(documentsTable)
+                        .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                        .build());
+                metrics.recordSince("ReadDocument", stageStart);
+
+                if (!getResponse.hasItem()) {
+                    return ResponseUtil.createErrorResponse(404, "Document not found");
+                }
+
+                Map<String, AttributeValue> currentDoc = getResponse.item();
+                currentEditNumber = Integer.parseInt(currentDoc.get("currentEditNumber").n());
+                currentRevision = Document.revisionOf(currentDoc);
+                if (expectedEditNumber != null && (expectedEditNumber != currentEditNumber
+                        || expectedRevision != currentRevision)) {
+                    metrics.count("Conflicts", 1);
+                    return conflictResponse(documentId, currentDoc);
+                }
+                baseFile = currentBaseFile(currentDoc);
+                currentFile = currentDoc.get("currentFile").s();
+
+                coalesce = coalescing && canCoalesce(currentDoc, editedBy, editedAt.toEpochMilli());
+                if (coalesce && baseFile.equals(currentFile)) {
+                    // A version stored as its own snapshot is about to be replaced, so it cannot be the base
+                    baseFile = null;
+                }
+            }
+
+            int newEditNumber = coalesce ? currentEditNumber : currentEditNumber + 1;
+            int newRevision = coalesce ? currentRevision + 1 : 0;
+            // Windows never open at a snapshot group start, so the snapshots deltas are based on never change
+            boolean openWindow = coalescing && !coalesce && !versionStore.isSnapshotEdit(newEditNumber);
+
+            StoredVersion newVersion;
+            if (uploadKey != null) {
+                // Large version already uploaded through a presigned URL: adopt a copy as a snapshot
+                try {
+                    newVersion = versionStore.adoptUpload(uploadKey);
+                } catch (NoSuchKeyException e) {
+                    return ResponseUtil.createErrorResponse(400, "Nothing was uploaded to uploadKey");
+                }
+            } else {
+                // Large documents stay snapshots so they can be served by URL and ranged reads
+                if (newContent.length() >= config.getLargeDocumentBytes()) {
+                    baseFile = null;
+                } else if (baseFile == null && !versionStore.isSnapshotEdit(newEditNumber)) {
+                    stageStart = metrics.startTimer();
+                    baseFile = lookupBaseFile(documentId, newEditNumber);
+                    metrics.recordSince("ResolveBase", stageStart);
+                }
+
+                // Save new version to S3 as a snapshot or a delta against the current snapshot
+                stageStart = metrics.startTimer();
+                newVersion = versionStore.writeVersion(newEditNumber, newContent, baseFile, currentFile);
+                metrics.recordSince("WriteVersion", stageStart);
+            }
+            metrics.recordSize("ContentBytes", newVersion.getContentLength());
+            String newVersionKey = newVersion.getFilePath();
+
+            if (config.isSearchIndexEnabled()) {
+                // Mark the document for re-indexing before committing, so no acknowledged edit is missed
+                stageStart = metrics.startTimer();
+                searchStore.markPending(documentId, newEditNumber, newRevision);
+                metrics.recordSince("MarkSearch", stageStart);
+            }
+
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":expectedEditNum", AttributeValue.builder().n(String.valueOf(currentEditNumber)).build());
+            values.put(":newFile", AttributeValue.builder().s(newVersionKey).build());
+            values.put(":baseFile", AttributeValue.builder().s(newVersion.getBaseFile()).build());
+            values.put(":contentLength", AttributeValue.builder().n(String.valueOf(newVersion.getContentLength())).build());
+            values.put(":timestamp", AttributeValue.builder().s(timestamp).build());
+            // Saves coalesced since the expected version was read must not be silently replaced
+            String condition = "currentEditNumber = :expectedEditNum";
+            if (currentRevision == 0) {
+                condition += " AND attribute_not_exists(currentRevision)";
+            } else {
+                condition += " AND currentRevision = :expectedRevision";
+                values.put(":expectedRevision", AttributeValue.builder().n(String.valueOf(currentRevision)).build());
+            }
+
+            TransactWriteItem historyWrite;
+            String updateExpression;
+            if (coalesce) {
+                // Replace the open version in place; the window may not have closed since it was read
+                condition += " AND coalesceEditedBy = :editedBy AND coalesceUntil > :now";
+                updateExpression = "SET currentFile = :newFile, currentBaseFile = :baseFile, currentContentLength = :contentLength, lastModified = :timestamp, currentRevision = :newRevision";
+                values.put(":editedBy", AttributeValue.builder().s(editedBy).build());
+                values.put(":now", AttributeValue.builder().n(String.valueOf(editedAt.toEpochMilli())).build());
+                values.put(":newRevision", AttributeValue.builder().n(String.valueOf(newRevision)).build());
+
+                stageStart = metrics.startTimer();
+                String mergedDescription = mergeDescriptions(
+                        currentChangeDescription(documentId, currentEditNumber), changeDescription);
+                metrics.recordSince("ReadHistory", stageStart);
+                historyWrite = TransactWriteItem.builder().update(Update.builder()
+                        .tableName(historyTable)
+                        .key(Map.of(
+                                "documentId", AttributeValue.builder().s(documentId).build(),
+                                "editNumber", AttributeValue.builder().n(String.valueOf(newEditNumber)).build()))
+                        .conditionExpression("attribute_exists(editNumber)")
+                        .updateExpression("SET filePath = :file, storageType = :storageType, baseFile = :baseFile, editedAt = :timestamp, changeDescription = :description, revision = :revision")
+                        .expressionAttributeValues(Map.of(
+                                ":file", AttributeValue.builder().s(newVersionKey).build(),
+                                ":storageType", AttributeValue.builder().s(newVersion.getStorageType()).build(),
+                                ":baseFile", AttributeValue.builder().s(newVersion.getBaseFile()).build(),
+                                ":timestamp", AttributeValue.builder().s(timestamp).build(),
+                                ":description", AttributeValue.builder().s(mergedDescription).build(),
+                                ":revision", AttributeValue.builder().n(String.valueOf(newRevision)).build()))
+                        .build()).build();
+            } else {
+                updateExpression = "SET currentFile = :newFile, currentBaseFile = :baseFile, currentEditNumber = :newEditNum, materializedEditNumber = :newEditNum, currentContentLength = :contentLength, lastModified = :timestamp";
+                values.put(":newEditNum", AttributeValue.builder().n(String.valueOf(newEditNumber)).build());
+
+                // Create history record
+                Map<String, AttributeValue> historyItem = new HashMap<>();
+                historyItem.put("documentId", AttributeValue.builder().s(documentId).build());
+                historyItem.put("editNumber", AttributeValue.builder().n(String.valueOf(newEditNumber)).build());
+                historyItem.put("filePath", AttributeValue.builder().s(newVersionKey).build());
+                historyItem.put("storageType", AttributeValue.builder().s(newVersion.getStorageType()).build());
+                historyItem.put("baseFile", AttributeValue.builder().s(newVersion.getBaseFile()).build());
+                historyItem.put("editedAt", AttributeValue.builder().s(timestamp).build());
+                historyItem.put("editedBy", AttributeValue.builder().s(editedBy).build());
+                historyItem.put("changeDescription", AttributeValue.builder().s(changeDescription).build());
+
+                if (openWindow) {
+                    AttributeValue coalesceUntil = AttributeValue.builder()
+                            .n(String.valueOf(editedAt.toEpochMilli() + config.getEditCoalesceSeconds() * 1000)).build();
+                    updateExpression += ", coalesceEditedBy = :editedBy, coalesceUntil = :coalesceUntil REMOVE currentRevision";
+                    values.put(":editedBy", AttributeValue.builder().s(editedBy).build());
+                    values.put(":coalesceUntil", coalesceUntil);
+                    historyItem.put("coalesceUntil", coalesceUntil);
+                } else {
+                    updateExpression += " REMOVE currentRevision, coalesceEditedBy, coalesceUntil";
+                }
+                historyWrite = TransactWriteItem.builder().put(Put.builder()
+                        .tableName(historyTable)
+                        .item(historyItem)
+                        .conditionExpression("attribute_not_exists(editNumber)")
+                        .build()).build();
+            }
+
+            // Update document record and write history in one conditional transaction
+            stageStart = metrics.startTimer();
+            try {
+                dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder()
+                        .transactItems(
+                                TransactWriteItem.builder().update(Update.builder()
+                                        .tableName(documentsTable)
+                                        .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                                        .conditionExpression(condition)
+                                        .updateExpression(updateExpression)
+                                        .expressionAttributeValues(values)
+                                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                                        .build()).build(),
+                                historyWrite)
+                        .build());
+            } catch (TransactionCanceledException e) {
+                // The written object may be shared with other versions, so it is left for blob cleanup
+                metrics.count("Conflicts", 1);
+                return conflictResponse(documentId, e);
+            } finally {
+                metrics.recordSince("Commit", stageStart);
+            }
+            if (coalesce) {
+                metrics.count("Coalesced", 1);
+            }
+            if (uploadKey != null) {
+                // Kept until now so a conflicting commit can be retried with the same upload
+                try {
+                    versionStore.discardUpload(uploadKey);
+                } catch (SdkException e) {
+                    context.getLogger().log("Error: could not delete upload " + uploadKey + ": " + e.getMessage());
+                }
+            }
 
             // Create success response
             Map<String, Object> responseBody = new HashMap<>();
@@ -105,12 +336,160 @@ public class DocumentEditHandler implements RequestHandler<APIGatewayProxyReques
             responseBody.put("editNumber", newEditNumber);
             responseBody.put("editedBy", editedBy);
             responseBody.put("editedAt", timestamp);
+            if (coalesce) {
+                responseBody.put("coalesced", true);
+            }
 
-            return ResponseUtil.createResponse(200, responseBody);
+            return ResponseUtil.createResponse(200, responseBody,
+                    Map.of("ETag", ETagUtil.format(documentId, newEditNumber, newRevision)));
 
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
             return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
         }
     }
+
+    private Integer expectedEditNumber(String documentId, APIGatewayProxyRequestEvent request, Map<String, String> requestFields) {
+        String ifMatch = ETagUtil.getHeader(request.getHeaders(), "If-Match");
+        if (ifMatch != null) {
+            return ETagUtil.parseEditNumber(documentId, ifMatch);
+        }
+        if (requestFields.containsKey("expectedEditNumber")) {
+            return ETagUtil.parseEditNumber(documentId, requestFields.get("expectedEditNumber"));
+        }
+        return null;
+    }
+
+    private Integer expectedRevision(String documentId, APIGatewayProxyRequestEvent request, Map<String, String> requestFields) {
+        String ifMatch = ETagUtil.getHeader(request.getHeaders(), "If-Match");
+        return ETagUtil.parseRevision(documentId, ifMatch != null ? ifMatch : requestFields.get("expectedEditNumber"));
+    }
+
+    /** Whether {@code editedBy} opened the current version and its window is still open. */
+    private static boolean canCoalesce(Map<String, AttributeValue> currentDoc, String editedBy, long nowMillis) {
+        return currentDoc.containsKey("coalesceEditedBy") && currentDoc.containsKey("coalesceUntil")
+                && currentDoc.get("coalesceEditedBy").s().equals(editedBy)
+                && Long.parseLong(currentDoc.get("coalesceUntil").n()) > nowMillis
+                && !OperationLog.hasPendingOperations(currentDoc);
+    }
+
+    /** Whether the version on a history row can no longer be replaced by a coalesced save. */
+    static boolean isSettled(Map<String, AttributeValue> historyRow, long nowMillis) {
+        return !historyRow.containsKey("coalesceUntil")
+                || Long.parseLong(historyRow.get("coalesceUntil").n()) + SETTLE_MARGIN_MILLIS < nowMillis;
+    }
+
+    private String currentChangeDescription(String documentId, int editNumber) {
+        GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(historyTable)
+                .key(Map.of(
+                        "documentId", AttributeValue.builder().s(documentId).build(),
+                        "editNumber", AttributeValue.builder().n(String.valueOf(editNumber)).build()))
+                .projectionExpression("changeDescription")
+                .build());
+        return response.hasItem() && response.item().containsKey("changeDescription")
+                ? response.item().get("changeDescription").s() : null;
+    }
+
+    /** Descriptions of the saves coalesced into one version, each kept once in the order first made. */
+    static String mergeDescriptions(String merged, String description) {
+        if (merged == null || merged.isEmpty()) {
+            return description;
+        }
+        for (String part : merged.split(DESCRIPTION_SEPARATOR)) {
+            if (part.equals(description)) {
+                return merged;
+            }
+        }
+        if (merged.length() + DESCRIPTION_SEPARATOR.length() + description.length() > MAX_CHANGE_DESCRIPTION_CHARS) {
+            return merged;
+        }
+        return merged + DESCRIPTION_SEPARATOR + description;
+    }
+
+    private String currentBaseFile(Map<String, AttributeValue> currentDoc) {
+        if (currentDoc.containsKey("currentBaseFile")) {
+            return currentDoc.get("currentBaseFile").s();
+        }
+        // Documents created before delta storage only ever have full snapshots
+        return currentDoc.get("currentFile").s();
+    }
+
+    /**
+     * Resolves the snapshot for a new version without reading the documents table, via the
+     * history row that starts its snapshot group. Returns null to fall back to a snapshot.
+     */
+    private String lookupBaseFile(String documentId, int newEditNumber) {
+        int groupStart = versionStore.snapshotGroupStart(newEditNumber);
+        String cacheKey = documentId + "#" + groupStart;
+        String cached = baseFileCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(historyTable)
+                .key(Map.of(
+                        "documentId", AttributeValue.builder().s(documentId).build(),
+                        "editNumber", AttributeValue.builder().n(String.valueOf(groupStart)).build()))
+                .projectionExpression("filePath, baseFile")
+                .build());
+
+        if (!response.hasItem()) {
+            return null;
+        }
+
+        Map<String, AttributeValue> item = response.item();
+        String baseFile = item.containsKey("baseFile") ? item.get("baseFile").s() : item.get("filePath").s();
+        baseFileCache.put(cacheKey, baseFile);
+        return baseFile;
+    }
+
+    /**
+     * Maps a cancelled commit to a response: a failed condition is a 409 (or a 404 when the
+     * document is gone), while throttling and transaction conflicts are a retryable 503.
+     */
+    private APIGatewayProxyResponseEvent conflictResponse(String documentId, TransactionCanceledException e) {
+        List<CancellationReason> reasons = e.hasCancellationReasons() ? e.cancellationReasons() : List.of();
+        CancellationReason documentReason = reasons.isEmpty() ? null : reasons.get(0);
+
+        if (documentReason != null && "ConditionalCheckFailed".equals(documentReason.code())) {
+            if (documentReason.item() == null || documentReason.item().isEmpty()) {
+                return ResponseUtil.createErrorResponse(404, "Document not found");
+            }
+            return conflictResponse(documentId, documentReason.item());
+        }
+        boolean retryable = false;
+        for (CancellationReason reason : reasons) {
+            if ("ConditionalCheckFailed".equals(reason.code())) {
+                // The history entry already exists: another edit took this number first
+                return conflictResponse(documentId, (Map<String, AttributeValue>) null);
+            }
+            retryable |= "ThrottlingError".equals(reason.code()) || "TransactionConflict".equals(reason.code())
+                    || "ProvisionedThroughputExceeded".equals(reason.code());
+        }
+        if (retryable) {
+            return ResponseUtil.createErrorResponse(503, "Document is busy, please retry");
+        }
+        throw e;
+    }
+
+    /** 409 naming the version the document is at, when {@code currentDoc} is known. */
+    private APIGatewayProxyResponseEvent conflictResponse(String documentId, Map<String, AttributeValue> currentDoc) {
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put("success", false);
+        responseBody.put("error", "Document was modified by another edit");
+        responseBody.put("documentId", documentId);
+
+        if (currentDoc != null && currentDoc.containsKey("currentEditNumber")) {
+            int currentEditNumber = Integer.parseInt(currentDoc.get("currentEditNumber").n());
+            responseBody.put("currentEditNumber", currentEditNumber);
+            return ResponseUtil.createResponse(409, responseBody,
+                    Map.of("ETag", ETagUtil.format(documentId, currentEditNumber, Document.revisionOf(currentDoc))));
+        }
+
+        return ResponseUtil.createResponse(409, responseBody);
+    }
 }
\ No newline at end of file
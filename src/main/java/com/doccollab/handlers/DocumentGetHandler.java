@@ -4,26 +4,58 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.models.Document;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.storage.ContentRange;
+import com.doccollab.storage.TransferUrls;
+import com.doccollab.storage.VersionCache;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.ETagUtil;
+import com.doccollab.utils.JsonCodec;
 import com.doccollab.utils.ResponseUtil;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class DocumentGetHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbClient dynamoDbClient = DynamoDbClient.create();
-    private final S3Client s3Client = S3Client.create();
+    // Bounds for byte-range pages; the minimum always fits a whole UTF-8 character
+    private static final int MIN_RANGE_LENGTH = 16;
+    private static final int MAX_RANGE_LENGTH = 1024 * 1024;
 
-    private final String documentsTable = System.getenv("DOCUMENTS_TABLE");
-    private final String s3Bucket = System.getenv("S3_BUCKET");
+    private final DynamoDbClient dynamoDbClient;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+
+    private final VersionStore versionStore;
+    private final OperationLog operationLog;
+    private final TransferUrls transferUrls;
+
+    public DocumentGetHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), AwsClients.s3Presigner(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentGetHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, S3Presigner presigner, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.versionStore = new VersionStore(s3Client, config.getS3Bucket(), config.getSnapshotInterval(), VersionCache.shared());
+        this.operationLog = new OperationLog(dynamoDbClient, config.getHistoryTable(), versionStore);
+        this.transferUrls = new TransferUrls(presigner, config.getS3Bucket());
+    }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentGet");
 
         try {
             // Get documentId from path parameters
@@ -34,43 +66,114 @@ public class DocumentGetHandler implements RequestHandler<APIGatewayProxyRequest
             }
 
             // Get document metadata from DynamoDB
+            long stageStart = metrics.startTimer();
             GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
                     .tableName(documentsTable)
                     .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
                     .build());
+            metrics.recordSince("ReadDocument", stageStart);
 
             if (!response.hasItem()) {
                 return ResponseUtil.createErrorResponse(404, "Document not found");
             }
 
             Map<String, AttributeValue> item = response.item();
+            Document document = Document.fromItem(item);
 
-            // Get current file path from DynamoDB
-            String currentFile = item.get("currentFile").s();
-
-            // Get file content from S3
-            ResponseInputStream<?> s3Object = s3Client.getObject(GetObjectRequest.builder()
-                    .bucket(s3Bucket)
-                    .key(currentFile)
-                    .build());
+            // Unchanged since the client's copy: answer without touching S3
+            String etag = ETagUtil.format(documentId, document.getCurrentEditNumber(), document.getCurrentRevision());
+            if (ETagUtil.matchesAny(ETagUtil.getHeader(request.getHeaders(), "If-None-Match"), etag)) {
+                metrics.count("NotModified", 1);
+                return ResponseUtil.createNotModifiedResponse(etag);
+            }
 
-            String content = new String(s3Object.readAllBytes());
+            // Get current file path from DynamoDB
+            String currentFile = document.getCurrentFile();
+            String currentBaseFile = item.containsKey("currentBaseFile") ? item.get("currentBaseFile").s() : null;
+
+            // Versions stored only as an operation log must be rebuilt before they can be paged or linked
+            boolean pendingOperations = OperationLog.hasPendingOperations(item);
+            boolean isSnapshot = !pendingOperations && (currentBaseFile == null || currentBaseFile.equals(currentFile));
+            long contentLength = item.containsKey("currentContentLength")
+                    ? Long.parseLong(item.get("currentContentLength").n()) : -1;
+            Map<String, String> params = request.getQueryStringParameters() != null
+                    ? request.getQueryStringParameters() : Map.of();
+
+            // Large documents are handed off as a presigned URL so the body never enters Lambda memory
+            boolean urlRequested = "url".equals(params.get("mode"));
+            if (isSnapshot && (urlRequested || contentLength >= config.getLargeDocumentBytes())) {
+                String contentUrl = transferUrls.downloadUrl(currentFile);
+                return ResponseUtil.createJsonResponse(200, generator -> {
+                    generator.writeStartObject();
+                    generator.writeBooleanField("success", true);
+                    JsonCodec.writeDocumentFields(generator, document);
+                    generator.writeStringField("contentUrl", contentUrl);
+                    generator.writeNumberField("contentUrlExpiresIn", TransferUrls.EXPIRY.getSeconds());
+                    if (contentLength >= 0) {
+                        generator.writeNumberField("contentLength", contentLength);
+                    }
+                    generator.writeEndObject();
+                }, 1024, Map.of("ETag", etag));
+            }
 
-            // Build response
-            Map<String, Object> responseBody = new HashMap<>();
-            responseBody.put("success", true);
-            responseBody.put("documentId", documentId);
-            responseBody.put("title", item.get("title").s());
-            responseBody.put("content", content);
-            responseBody.put("currentEditNumber", Integer.parseInt(item.get("currentEditNumber").n()));
-            responseBody.put("createdAt", item.get("createdAt").s());
-            responseBody.put("lastModified", item.get("lastModified").s());
+            // Byte-range page of the document
+            if (params.containsKey("offset") || params.containsKey("length")) {
+                long offset;
+                int length;
+                try {
+                    offset = Long.parseLong(params.getOrDefault("offset", "0"));
+                    length = Integer.parseInt(params.getOrDefault("length", String.valueOf(MAX_RANGE_LENGTH)));
+                } catch (NumberFormatException e) {
+                    return ResponseUtil.createErrorResponse(400, "offset and length must be numbers");
+                }
+                if (offset < 0 || length < MIN_RANGE_LENGTH || length > MAX_RANGE_LENGTH) {
+                    return ResponseUtil.createErrorResponse(400,
+                            "length must be between " + MIN_RANGE_LENGTH + " and " + MAX_RANGE_LENGTH);
+                }
+
+                // A version still held as operations is rebuilt whole, then paged like a stored one
+                stageStart = metrics.startTimer();
+                ContentRange range = pendingOperations
+                        ? ContentRange.slice(operationLog.readCurrent(item).getBytes(StandardCharsets.UTF_8), offset, length)
+                        : versionStore.readVersionRange(currentFile, currentBaseFile, offset, length);
+                metrics.recordSince("ReadContent", stageStart);
+                String page = range.getContent();
+                metrics.recordSize("ContentBytes", page.length());
+                return ResponseUtil.createJsonResponse(200, generator -> {
+                    generator.writeStartObject();
+                    generator.writeBooleanField("success", true);
+                    JsonCodec.writeDocumentFields(generator, document);
+                    generator.writeStringField("content", page);
+                    generator.writeNumberField("offset", range.getOffset());
+                    generator.writeNumberField("length", range.getLength());
+                    generator.writeNumberField("nextOffset", range.getNextOffset());
+                    generator.writeNumberField("totalLength", range.getTotalLength());
+                    generator.writeEndObject();
+                }, page.length() + 512, Map.of("ETag", etag));
+            }
 
-            return ResponseUtil.createResponse(200, responseBody);
+            // Get file content from S3; a delta version needs only its snapshot, never a chain
+            stageStart = metrics.startTimer();
+            String content = pendingOperations
+                    ? operationLog.readCurrent(item)
+                    : versionStore.readVersion(currentFile, currentBaseFile);
+            metrics.recordSince("ReadContent", stageStart);
+            metrics.recordSize("ContentBytes", content.length());
+
+            // Stream the response straight from the model instead of building a Map
+            return ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                JsonCodec.writeDocumentFields(generator, document);
+                generator.writeStringField("content", content);
+                generator.writeEndObject();
+            }, content.length() + 512, Map.of("ETag", etag));
 
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
             return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
         }
     }
 }
\ No newline at end of file
@@ -4,23 +4,53 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
 import com.doccollab.utils.ResponseUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class DocumentHistoryHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbClient dynamoDbClient = DynamoDbClient.create();
+    private static final int MAX_LIMIT = 1000;
+    // Without a limit one page is returned, keeping the response well under the Lambda payload cap;
+    // export=true walks every page instead
+    private static final int DEFAULT_LIMIT = MAX_LIMIT;
+    private static final String CURSOR_PREFIX = "h1:";
 
-    private final String historyTable = System.getenv("DOCUMENT_HISTORY_TABLE");
+    // History attributes that may be returned; only editNumber is numeric
+    private static final List<String> HISTORY_FIELDS = List.of(
+            "editNumber", "editedAt", "editedBy", "changeDescription", "filePath", "storageType", "baseFile");
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String documentsTable;
+    private final String historyTable;
+
+    public DocumentHistoryHandler() {
+        this(AwsClients.dynamoDb(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentHistoryHandler(DynamoDbClient dynamoDbClient, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+    }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentHistory");
 
         try {
             // Get documentId from path parameters
@@ -30,42 +60,174 @@ public class DocumentHistoryHandler implements RequestHandler<APIGatewayProxyReq
                 return ResponseUtil.createErrorResponse(400, "Document ID is required");
             }
 
-            // Query all history records for this document
-            QueryResponse queryResponse = dynamoDbClient.query(QueryRequest.builder()
+            Map<String, String> params = request.getQueryStringParameters() != null
+                    ? request.getQueryStringParameters() : Map.of();
+
+            // Parse paging, ordering and projection parameters
+            boolean export = Boolean.parseBoolean(params.get("export"));
+            if (export && params.containsKey("limit")) {
+                return ResponseUtil.createErrorResponse(400, "limit cannot be combined with export");
+            }
+
+            int limit = DEFAULT_LIMIT;
+            if (params.containsKey("limit")) {
+                try {
+                    limit = Integer.parseInt(params.get("limit"));
+                } catch (NumberFormatException e) {
+                    limit = 0;
+                }
+                if (limit < 1 || limit > MAX_LIMIT) {
+                    return ResponseUtil.createErrorResponse(400, "limit must be between 1 and " + MAX_LIMIT);
+                }
+            }
+
+            String order = params.getOrDefault("order", "asc");
+            if (!order.equals("asc") && !order.equals("desc")) {
+                return ResponseUtil.createErrorResponse(400, "order must be asc or desc");
+            }
+
+            List<String> fields = HISTORY_FIELDS;
+            if (params.containsKey("fields")) {
+                fields = new ArrayList<>();
+                for (String field : params.get("fields").split(",")) {
+                    String name = field.trim();
+                    if (!HISTORY_FIELDS.contains(name)) {
+                        return ResponseUtil.createErrorResponse(400, "Unknown history field: " + name);
+                    }
+                    if (!fields.contains(name)) {
+                        fields.add(name);
+                    }
+                }
+            }
+
+            Map<String, AttributeValue> startKey = null;
+            if (params.containsKey("cursor")) {
+                startKey = decodeCursor(documentId, params.get("cursor"));
+                if (startKey == null) {
+                    return ResponseUtil.createErrorResponse(400, "Invalid cursor");
+                }
+            }
+
+            // Edit numbers are contiguous, so the document row holds the total for any page
+            long stageStart = metrics.startTimer();
+            GetItemResponse documentResponse = dynamoDbClient.getItem(GetItemRequest.builder()
+                    .tableName(documentsTable)
+                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                    .projectionExpression("currentEditNumber")
+                    .build());
+            metrics.recordSince("ReadDocument", stageStart);
+            if (!documentResponse.hasItem()) {
+                return ResponseUtil.createErrorResponse(404, "Document not found");
+            }
+            int totalEdits = Integer.parseInt(documentResponse.item().get("currentEditNumber").n());
+
+            // Query history records for this document, reading only the requested attributes
+            Map<String, String> attributeNames = new HashMap<>();
+            List<String> projection = new ArrayList<>();
+            for (int i = 0; i < fields.size(); i++) {
+                attributeNames.put("#f" + i, fields.get(i));
+                projection.add("#f" + i);
+            }
+
+            QueryRequest queryRequest = QueryRequest.builder()
                     .tableName(historyTable)
                     .keyConditionExpression("documentId = :docId")
                     .expressionAttributeValues(Map.of(
                             ":docId", AttributeValue.builder().s(documentId).build()
                     ))
-                    .scanIndexForward(true) // Sort by editNumber ascending
-                    .build());
-
-            // Convert DynamoDB items to response format
-            List<Map<String, Object>> historyList = new ArrayList<>();
+                    .projectionExpression(String.join(", ", projection))
+                    .expressionAttributeNames(attributeNames)
+                    .scanIndexForward(order.equals("asc")) // Sort by editNumber
+                    .limit(export ? null : limit)
+                    .exclusiveStartKey(startKey)
+                    .build();
 
-            for (Map<String, AttributeValue> item : queryResponse.items()) {
-                Map<String, Object> historyItem = new HashMap<>();
-                historyItem.put("editNumber", Integer.parseInt(item.get("editNumber").n()));
-                historyItem.put("editedAt", item.get("editedAt").s());
-                historyItem.put("editedBy", item.get("editedBy").s());
-                historyItem.put("changeDescription", item.get("changeDescription").s());
-                historyItem.put("filePath", item.get("filePath").s());
+            List<String> selectedFields = fields;
 
-                historyList.add(historyItem);
+            if (export) {
+                // One history row per line, written as each page arrives rather than collected first
+                metrics.count("Exports", 1);
+                return ResponseUtil.createStreamingResponse(200, generator -> {
+                    try {
+                        for (Map<String, AttributeValue> item : dynamoDbClient.queryPaginator(queryRequest).items()) {
+                            writeHistoryItem(generator, item, selectedFields);
+                        }
+                    } catch (SdkException e) {
+                        // The status is already sent; a closing error line marks the export incomplete
+                        generator.writeStartObject();
+                        generator.writeBooleanField("success", false);
+                        generator.writeStringField("error", e.getMessage());
+                        generator.writeEndObject();
+                    }
+                }, Map.of());
             }
 
-            // Create response
-            Map<String, Object> responseBody = new HashMap<>();
-            responseBody.put("success", true);
-            responseBody.put("documentId", documentId);
-            responseBody.put("totalEdits", historyList.size());
-            responseBody.put("history", historyList);
+            stageStart = metrics.startTimer();
+            QueryResponse queryResponse = dynamoDbClient.query(queryRequest);
+            metrics.recordSince("Query", stageStart);
+            metrics.count("HistoryItems", queryResponse.items().size());
 
-            return ResponseUtil.createResponse(200, responseBody);
+            return ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeStringField("documentId", documentId);
+                generator.writeNumberField("totalEdits", totalEdits);
+                generator.writeNumberField("count", queryResponse.items().size());
+                generator.writeArrayFieldStart("history");
+                for (Map<String, AttributeValue> item : queryResponse.items()) {
+                    writeHistoryItem(generator, item, selectedFields);
+                }
+                generator.writeEndArray();
+                if (queryResponse.hasLastEvaluatedKey() && !queryResponse.lastEvaluatedKey().isEmpty()) {
+                    generator.writeStringField("nextCursor", encodeCursor(queryResponse.lastEvaluatedKey()));
+                }
+                generator.writeEndObject();
+            }, 256 * queryResponse.items().size(), Map.of());
 
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
             return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    private static void writeHistoryItem(JsonGenerator generator, Map<String, AttributeValue> item,
+                                         List<String> fields) throws IOException {
+        generator.writeStartObject();
+        for (String field : fields) {
+            AttributeValue value = item.get(field);
+            if (value == null) {
+                // Rows written before a field existed simply omit it
+                continue;
+            }
+            if (field.equals("editNumber")) {
+                generator.writeNumberField(field, Integer.parseInt(value.n()));
+            } else {
+                generator.writeStringField(field, value.s());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /** Opaque continuation token; only the sort key is needed since the partition is in the path. */
+    private static String encodeCursor(Map<String, AttributeValue> lastEvaluatedKey) {
+        String raw = CURSOR_PREFIX + lastEvaluatedKey.get("editNumber").n();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, AttributeValue> decodeCursor(String documentId, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(CURSOR_PREFIX)) {
+                return null;
+            }
+            int editNumber = Integer.parseInt(raw.substring(CURSOR_PREFIX.length()));
+            return Map.of(
+                    "documentId", AttributeValue.builder().s(documentId).build(),
+                    "editNumber", AttributeValue.builder().n(String.valueOf(editNumber)).build());
+        } catch (IllegalArgumentException e) {
+            return null;
         }
     }
 }
\ No newline at end of file
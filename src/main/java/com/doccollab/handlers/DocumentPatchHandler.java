@@ -0,0 +1,352 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.models.Document;
+import com.doccollab.search.SearchStore;
+import com.doccollab.ot.OperationCodec;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.ot.OperationTransformer;
+import com.doccollab.ot.PatchRequest;
+import com.doccollab.ot.PieceTable;
+import com.doccollab.ot.TextOperation;
+import com.doccollab.storage.StoredVersion;
+import com.doccollab.storage.VersionCache;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.ETagUtil;
+import com.doccollab.utils.ResponseUtil;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PATCH /documents/{documentId}: applies a batch of positional insert/delete
+ * operations made against {@code baseEditNumber}.
+ *
+ * Batches based on an older version are transformed against every batch committed
+ * since, then applied to the current text. Most versions are stored only as their
+ * operation batch on the history row; a full snapshot or delta is written at
+ * snapshot-group boundaries and whenever the log since the last one would grow
+ * past the snapshot interval, which bounds how much a read has to replay.
+ *
+ * The base also names a revision, from {@code baseRevision} or an {@code If-Match} ETag
+ * and 0 when neither is sent. A batch made against a revision that coalesced saves have
+ * since replaced gets a 409, so it is never applied to text the client has not seen.
+ */
+public class DocumentPatchHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final int MAX_OPERATIONS = 1000;
+    // Keeps history rows well under DynamoDB's 400 KB item limit
+    private static final int MAX_LOGGED_OPERATIONS_CHARS = 32 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final DynamoDbClient dynamoDbClient;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+    private final String historyTable;
+
+    private final VersionStore versionStore;
+    private final OperationLog operationLog;
+    private final SearchStore searchStore;
+
+    public DocumentPatchHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentPatchHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.versionStore = new VersionStore(s3Client, config.getS3Bucket(), config.getSnapshotInterval(), VersionCache.shared());
+        this.operationLog = new OperationLog(dynamoDbClient, historyTable, versionStore);
+        this.searchStore = new SearchStore(s3Client, config.getS3Bucket(), null);
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentPatch");
+
+        try {
+            // Get documentId from path parameters
+            String documentId = request.getPathParameters().get("documentId");
+
+            if (documentId == null || documentId.isEmpty()) {
+                return ResponseUtil.createErrorResponse(400, "Document ID is required");
+            }
+
+            // Parse request body
+            PatchRequest patch;
+            long stageStart = metrics.startTimer();
+            try {
+                patch = OperationCodec.parsePatch(request.getBody(), MAX_OPERATIONS);
+            } catch (IOException e) {
+                return ResponseUtil.createErrorResponse(400, e.getMessage());
+            }
+            metrics.recordSince("Parse", stageStart);
+            if (request.getBody() != null) {
+                metrics.recordSize("RequestBytes", request.getBody().length());
+            }
+
+            // An If-Match ETag names the base version together with its revision
+            int baseRevision = patch.getBaseRevision();
+            String ifMatch = ETagUtil.getHeader(request.getHeaders(), "If-Match");
+            if (ifMatch != null) {
+                Integer ifMatchEditNumber = ETagUtil.parseEditNumber(documentId, ifMatch);
+                if (ifMatchEditNumber == null || ifMatchEditNumber != patch.getBaseEditNumber()) {
+                    return ResponseUtil.createErrorResponse(400, "If-Match must name baseEditNumber");
+                }
+                baseRevision = ETagUtil.parseRevision(documentId, ifMatch);
+            }
+
+            // Another patch may commit between our read and write; rebase onto it and retry
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                if (attempt > 1) {
+                    metrics.count("Retries", 1);
+                }
+                stageStart = metrics.startTimer();
+                GetItemResponse getResponse = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(documentsTable)
+                        .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                        .build());
+                metrics.recordSince("ReadDocument", stageStart);
+
+                if (!getResponse.hasItem()) {
+                    return ResponseUtil.createErrorResponse(404, "Document not found");
+                }
+
+                APIGatewayProxyResponseEvent response = applyPatch(documentId, patch, baseRevision, getResponse.item(), metrics);
+                if (response != null) {
+                    return response;
+                }
+            }
+
+            metrics.count("Conflicts", 1);
+            return ResponseUtil.createErrorResponse(409, "Document is being edited concurrently, please retry");
+
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    /** Returns the response, or null if a concurrent commit won and the patch should be retried. */
+    private APIGatewayProxyResponseEvent applyPatch(String documentId, PatchRequest patch, int baseRevision,
+                                                    Map<String, AttributeValue> currentDoc, Metrics metrics) throws IOException {
+        int currentEditNumber = Integer.parseInt(currentDoc.get("currentEditNumber").n());
+        int currentRevision = Document.revisionOf(currentDoc);
+        int materializedEditNumber = OperationLog.materializedEditNumber(currentDoc);
+        int baseEditNumber = patch.getBaseEditNumber();
+
+        if (baseEditNumber < 1 || baseEditNumber > currentEditNumber) {
+            return ResponseUtil.createErrorResponse(400, "baseEditNumber must be between 1 and " + currentEditNumber);
+        }
+
+        if (baseEditNumber == currentEditNumber && baseRevision != currentRevision) {
+            return rebaseConflict(documentId, currentEditNumber, currentRevision);
+        }
+
+        // One query covers the base version's row, the batches to transform against and the ones to replay
+        long stageStart = metrics.startTimer();
+        List<Map<String, AttributeValue>> rows = operationLog.readRows(
+                documentId, Math.min(baseEditNumber - 1, materializedEditNumber), currentEditNumber);
+        metrics.recordSince("ReadLog", stageStart);
+
+        List<TextOperation> operations = patch.getOperations();
+        List<Map<String, AttributeValue>> pending = new ArrayList<>();
+        for (Map<String, AttributeValue> row : rows) {
+            int editNumber = Integer.parseInt(row.get("editNumber").n());
+            if (editNumber == baseEditNumber && baseRevision != OperationLog.revisionOf(row)) {
+                // The base was replaced by a later coalesced save before the next version closed it
+                return rebaseConflict(documentId, currentEditNumber, currentRevision);
+            }
+            if (editNumber > baseEditNumber) {
+                List<TextOperation> committed = OperationLog.operationsOf(row);
+                if (committed == null) {
+                    // A full-content edit has no operations to transform against
+                    return rebaseConflict(documentId, currentEditNumber, currentRevision);
+                }
+                operations = OperationTransformer.transform(operations, committed);
+            }
+            if (editNumber > materializedEditNumber) {
+                pending.add(row);
+            }
+        }
+
+        // Current text is the last materialized version plus the operation log since
+        String currentFile = currentDoc.get("currentFile").s();
+        String currentBaseFile = currentDoc.containsKey("currentBaseFile")
+                ? currentDoc.get("currentBaseFile").s() : currentFile;
+        stageStart = metrics.startTimer();
+        String currentContent = OperationLog.replay(versionStore.readVersion(currentFile, currentBaseFile), pending);
+        metrics.recordSince("ReadContent", stageStart);
+
+        stageStart = metrics.startTimer();
+        PieceTable text = new PieceTable(currentContent);
+        try {
+            for (TextOperation operation : operations) {
+                text.apply(operation);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return ResponseUtil.createErrorResponse(400, e.getMessage());
+        }
+        String newContent = text.toString();
+        metrics.recordSince("Apply", stageStart);
+        metrics.recordSize("ContentBytes", newContent.length());
+
+        int newEditNumber = currentEditNumber + 1;
+        String timestamp = Instant.now().toString();
+        String loggedOperations = OperationCodec.encode(operations);
+        boolean largeDocument = newContent.length() >= config.getLargeDocumentBytes();
+
+        boolean materialize = versionStore.isSnapshotEdit(newEditNumber)
+                || newEditNumber - materializedEditNumber >= versionStore.getSnapshotInterval()
+                || loggedOperations.length() > MAX_LOGGED_OPERATIONS_CHARS
+                || largeDocument;
+
+        stageStart = metrics.startTimer();
+        StoredVersion newVersion = materialize
+                ? versionStore.writeVersion(newEditNumber, newContent, largeDocument ? null : currentBaseFile, currentFile)
+                : null;
+        if (materialize) {
+            metrics.recordSince("WriteVersion", stageStart);
+        }
+
+        // Create history record
+        Map<String, AttributeValue> historyItem = new HashMap<>();
+        historyItem.put("documentId", AttributeValue.builder().s(documentId).build());
+        historyItem.put("editNumber", AttributeValue.builder().n(String.valueOf(newEditNumber)).build());
+        historyItem.put("editedAt", AttributeValue.builder().s(timestamp).build());
+        historyItem.put("editedBy", AttributeValue.builder().s(patch.getEditedBy()).build());
+        historyItem.put("changeDescription", AttributeValue.builder().s(patch.getChangeDescription()).build());
+        if (newVersion != null) {
+            historyItem.put("filePath", AttributeValue.builder().s(newVersion.getFilePath()).build());
+            historyItem.put("storageType", AttributeValue.builder().s(newVersion.getStorageType()).build());
+            historyItem.put("baseFile", AttributeValue.builder().s(newVersion.getBaseFile()).build());
+            if (loggedOperations.length() <= MAX_LOGGED_OPERATIONS_CHARS) {
+                historyItem.put("operations", AttributeValue.builder().s(loggedOperations).build());
+            }
+        } else {
+            // Operation-log version: rebuilt from the materialized version it follows
+            historyItem.put("filePath", AttributeValue.builder().s(currentFile).build());
+            historyItem.put("storageType", AttributeValue.builder().s(OperationLog.OPS).build());
+            historyItem.put("baseFile", AttributeValue.builder().s(currentBaseFile).build());
+            historyItem.put("baseEditNumber", AttributeValue.builder().n(String.valueOf(materializedEditNumber)).build());
+            historyItem.put("operations", AttributeValue.builder().s(loggedOperations).build());
+        }
+
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":expectedEditNum", AttributeValue.builder().n(String.valueOf(currentEditNumber)).build());
+        values.put(":newEditNum", AttributeValue.builder().n(String.valueOf(newEditNumber)).build());
+        values.put(":contentLength", AttributeValue.builder().n(String.valueOf(utf8Length(newContent))).build());
+        values.put(":timestamp", AttributeValue.builder().s(timestamp).build());
+        String updateExpression = "SET currentEditNumber = :newEditNum, currentContentLength = :contentLength, lastModified = :timestamp";
+        // A coalesced save committed after our read would otherwise be silently replaced
+        String condition = "currentEditNumber = :expectedEditNum AND " + (currentRevision == 0
+                ? "attribute_not_exists(currentRevision)" : "currentRevision = :expectedRevision");
+        if (currentRevision > 0) {
+            values.put(":expectedRevision", AttributeValue.builder().n(String.valueOf(currentRevision)).build());
+        }
+        if (newVersion != null) {
+            updateExpression += ", currentFile = :newFile, currentBaseFile = :baseFile, materializedEditNumber = :newEditNum";
+            values.put(":newFile", AttributeValue.builder().s(newVersion.getFilePath()).build());
+            values.put(":baseFile", AttributeValue.builder().s(newVersion.getBaseFile()).build());
+        } else if (!currentDoc.containsKey("materializedEditNumber")) {
+            updateExpression += ", materializedEditNumber = :materializedEditNum";
+            values.put(":materializedEditNum", AttributeValue.builder().n(String.valueOf(materializedEditNumber)).build());
+        }
+        // Patched versions are never coalesced into
+        updateExpression += " REMOVE currentRevision, coalesceEditedBy, coalesceUntil";
+
+        if (config.isSearchIndexEnabled()) {
+            // Mark the document for re-indexing before committing, so no acknowledged edit is missed
+            stageStart = metrics.startTimer();
+            searchStore.markPending(documentId, newEditNumber);
+            metrics.recordSince("MarkSearch", stageStart);
+        }
+
+        // Update document record and append history in one conditional transaction
+        stageStart = metrics.startTimer();
+        try {
+            dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder()
+                    .transactItems(
+                            TransactWriteItem.builder().update(Update.builder()
+                                    .tableName(documentsTable)
+                                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                                    .conditionExpression(condition)
+                                    .updateExpression(updateExpression)
+                                    .expressionAttributeValues(values)
+                                    .build()).build(),
+                            TransactWriteItem.builder().put(Put.builder()
+                                    .tableName(historyTable)
+                                    .item(historyItem)
+                                    .conditionExpression("attribute_not_exists(editNumber)")
+                                    .build()).build())
+                    .build());
+        } catch (TransactionCanceledException e) {
+            // Any object written is left for blob cleanup, since the retry will likely reuse it
+            return null;
+        } finally {
+            metrics.recordSince("Commit", stageStart);
+        }
+
+        List<TextOperation> appliedOperations = operations;
+        return ResponseUtil.createJsonResponse(200, generator -> {
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeStringField("documentId", documentId);
+            generator.writeStringField("message", "Document updated successfully");
+            generator.writeNumberField("editNumber", newEditNumber);
+            generator.writeStringField("editedBy", patch.getEditedBy());
+            generator.writeStringField("editedAt", timestamp);
+            // Operations as applied, after rebasing onto concurrent edits
+            generator.writeFieldName("operations");
+            OperationCodec.writeOperations(generator, appliedOperations);
+            generator.writeEndObject();
+        }, loggedOperations.length() + 256, Map.of("ETag", ETagUtil.format(documentId, newEditNumber)));
+    }
+
+    private APIGatewayProxyResponseEvent rebaseConflict(String documentId, int currentEditNumber, int currentRevision) {
+        Map<String, Object> responseBody = new HashMap<>();
+        responseBody.put("success", false);
+        responseBody.put("error", "Document was replaced since baseEditNumber; fetch it and retry");
+        responseBody.put("documentId", documentId);
+        responseBody.put("currentEditNumber", currentEditNumber);
+        return ResponseUtil.createResponse(409, responseBody,
+                Map.of("ETag", ETagUtil.format(documentId, currentEditNumber, currentRevision)));
+    }
+
+    private static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
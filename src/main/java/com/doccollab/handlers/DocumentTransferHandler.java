@@ -0,0 +1,96 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.storage.TransferUrls;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.JsonCodec;
+import com.doccollab.utils.ResponseUtil;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hands out presigned upload URLs for documents too large to send inline.
+ *
+ * POST /upload/url starts a new document; POST /documents/{documentId}/upload-url
+ * stages a new version of an existing one. The client PUTs the body to the URL and
+ * then commits it by sending the returned uploadKey to POST /upload or
+ * PUT /documents/{documentId} in place of the content.
+ */
+public class DocumentTransferHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final Set<String> REQUEST_FIELDS = Set.of("contentLength");
+    // Largest object a single presigned PUT may create
+    private static final long MAX_CONTENT_LENGTH = 5L * 1024 * 1024 * 1024;
+
+    private final TransferUrls transferUrls;
+
+    public DocumentTransferHandler() {
+        this(AwsClients.s3Presigner(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentTransferHandler(S3Presigner presigner, ServiceConfig config) {
+        this.transferUrls = new TransferUrls(presigner, config.getS3Bucket());
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentTransfer");
+
+        try {
+            Map<String, String> requestFields;
+            try {
+                requestFields = JsonCodec.readFields(request.getBody(), REQUEST_FIELDS);
+            } catch (IOException e) {
+                return ResponseUtil.createErrorResponse(400, e.getMessage());
+            }
+
+            long contentLength;
+            try {
+                contentLength = Long.parseLong(requestFields.getOrDefault("contentLength", "0"));
+            } catch (NumberFormatException e) {
+                contentLength = 0;
+            }
+            if (contentLength < 1 || contentLength > MAX_CONTENT_LENGTH) {
+                return ResponseUtil.createErrorResponse(400, "contentLength must be between 1 and " + MAX_CONTENT_LENGTH);
+            }
+
+            // Existing document for a new version, otherwise reserve an ID for a new upload
+            String documentId = request.getPathParameters() != null
+                    ? request.getPathParameters().get("documentId") : null;
+            if (documentId == null || documentId.isEmpty()) {
+                documentId = DocumentUploadHandler.newDocumentId();
+            }
+
+            String uploadKey = VersionStore.newUploadKey(documentId);
+            long stageStart = metrics.startTimer();
+            String uploadUrl = transferUrls.uploadUrl(uploadKey, contentLength);
+            metrics.recordSince("Presign", stageStart);
+
+            Map<String, Object> responseBody = new HashMap<>();
+            responseBody.put("success", true);
+            responseBody.put("documentId", documentId);
+            responseBody.put("uploadKey", uploadKey);
+            responseBody.put("uploadUrl", uploadUrl);
+            responseBody.put("expiresIn", TransferUrls.EXPIRY.getSeconds());
+
+            return ResponseUtil.createResponse(200, responseBody);
+
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+}
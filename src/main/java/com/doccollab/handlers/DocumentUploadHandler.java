@@ -4,91 +4,219 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.search.SearchStore;
+import com.doccollab.storage.VersionStore;
+import com.doccollab.utils.JsonCodec;
 import com.doccollab.utils.ResponseUtil;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
-import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class DocumentUploadHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
-    private final DynamoDbClient dynamoDbClient = DynamoDbClient.create();
-    private final S3Client s3Client = S3Client.create();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Set<String> REQUEST_FIELDS = Set.of("fileName", "fileContent", "documentId", "uploadKey");
 
-    private final String documentsTable = System.getenv("DOCUMENTS_TABLE");
-    private final String historyTable = System.getenv("DOCUMENT_HISTORY_TABLE");
-    private final String s3Bucket = System.getenv("S3_BUCKET");
+    private final DynamoDbAsyncClient dynamoDbAsyncClient;
+    private final S3AsyncClient s3AsyncClient;
+
+    private final String documentsTable;
+    private final String historyTable;
+    private final String s3Bucket;
+    private final boolean searchIndexEnabled;
+
+    public DocumentUploadHandler() {
+        this(AwsClients.dynamoDbAsync(), AwsClients.s3Async(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public DocumentUploadHandler(DynamoDbAsyncClient dynamoDbAsyncClient, S3AsyncClient s3AsyncClient, ServiceConfig config) {
+        this.dynamoDbAsyncClient = dynamoDbAsyncClient;
+        this.s3AsyncClient = s3AsyncClient;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.s3Bucket = config.getS3Bucket();
+        this.searchIndexEnabled = config.isSearchIndexEnabled();
+    }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("DocumentUpload");
 
         try {
             // Parse request body
-            JsonNode requestBody = objectMapper.readTree(request.getBody());
-            String fileName = requestBody.get("fileName").asText();
-            String fileContent = requestBody.get("fileContent").asText();
+            long stageStart = metrics.startTimer();
+            Map<String, String> requestFields;
+            try {
+                requestFields = JsonCodec.readFields(request.getBody(), REQUEST_FIELDS);
+            } catch (IOException e) {
+                return ResponseUtil.createErrorResponse(400, e.getMessage());
+            }
+            metrics.recordSince("Parse", stageStart);
+            if (request.getBody() != null) {
+                metrics.recordSize("RequestBytes", request.getBody().length());
+            }
+            String fileName = requestFields.get("fileName");
+            String fileContent = requestFields.get("fileContent");
+            String uploadKey = requestFields.get("uploadKey");
 
-            // Generate unique document ID
-            String documentId = "doc-" + UUID.randomUUID().toString().substring(0, 8);
-            String timestamp = Instant.now().toString();
+            if (fileName == null || (fileContent == null && uploadKey == null)) {
+                return ResponseUtil.createErrorResponse(400, "fileName and fileContent or uploadKey are required");
+            }
 
-            // Save original file to S3 uploads folder
-            String uploadKey = "uploads/" + fileName;
-            s3Client.putObject(
-                    PutObjectRequest.builder()
+            String documentId;
+            String documentKey;
+            long contentLength;
+            byte[] contentBytes = null;
+            String uploadETag = null;
+
+            if (uploadKey != null) {
+                // Large document already uploaded through a presigned URL: hash it as it streams past,
+                // never holding it whole, so a copy can be committed under its content-addressed key
+                documentId = requestFields.get("documentId");
+                if (documentId == null || !VersionStore.isUploadKeyFor(documentId, uploadKey)) {
+                    return ResponseUtil.createErrorResponse(400, "uploadKey does not belong to documentId");
+                }
+                stageStart = metrics.startTimer();
+                MessageDigest digest = VersionStore.newBlobDigest();
+                GetObjectResponse upload;
+                try {
+                    ResponsePublisher<GetObjectResponse> body = s3AsyncClient.getObject(GetObjectRequest.builder()
                             .bucket(s3Bucket)
                             .key(uploadKey)
-                            .build(),
-                    RequestBody.fromString(fileContent)
-            );
-
-            // Save first version to S3 documents folder
-            String documentKey = "documents/" + documentId + "-v1.txt";
-            s3Client.putObject(
-                    PutObjectRequest.builder()
-                            .bucket(s3Bucket)
-                            .key(documentKey)
-                            .build(),
-                    RequestBody.fromString(fileContent)
-            );
+                            .build(), AsyncResponseTransformer.toPublisher()).join();
+                    body.subscribe(digest::update).join();
+                    upload = body.response();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof NoSuchKeyException) {
+                        return ResponseUtil.createErrorResponse(400, "Nothing was uploaded to uploadKey");
+                    }
+                    throw e;
+                }
+                metrics.recordSince("HashUpload", stageStart);
+                documentKey = VersionStore.blobKey(digest);
+                contentLength = upload.contentLength();
+                uploadETag = upload.eTag();
+            } else {
+                documentId = newDocumentId();
+                // The first version doubles as the original upload, so the body is written once
+                contentBytes = fileContent.getBytes(StandardCharsets.UTF_8);
+                documentKey = VersionStore.blobKey(contentBytes);
+                contentLength = contentBytes.length;
+            }
+            metrics.recordSize("ContentBytes", contentLength);
+
+            String timestamp = Instant.now().toString();
 
             // Create document record in DynamoDB
             Map<String, AttributeValue> documentItem = new HashMap<>();
             documentItem.put("documentId", AttributeValue.builder().s(documentId).build());
             documentItem.put("title", AttributeValue.builder().s(fileName).build());
-            documentItem.put("originalFile", AttributeValue.builder().s(uploadKey).build());
+            documentItem.put("originalFile", AttributeValue.builder().s(documentKey).build());
             documentItem.put("currentFile", AttributeValue.builder().s(documentKey).build());
+            documentItem.put("currentBaseFile", AttributeValue.builder().s(documentKey).build());
             documentItem.put("currentEditNumber", AttributeValue.builder().n("1").build());
+            documentItem.put("materializedEditNumber", AttributeValue.builder().n("1").build());
+            documentItem.put("currentContentLength", AttributeValue.builder().n(String.valueOf(contentLength)).build());
             documentItem.put("createdAt", AttributeValue.builder().s(timestamp).build());
             documentItem.put("lastModified", AttributeValue.builder().s(timestamp).build());
 
-            dynamoDbClient.putItem(PutItemRequest.builder()
-                    .tableName(documentsTable)
-                    .item(documentItem)
-                    .build());
-
             // Create first history record
             Map<String, AttributeValue> historyItem = new HashMap<>();
             historyItem.put("documentId", AttributeValue.builder().s(documentId).build());
             historyItem.put("editNumber", AttributeValue.builder().n("1").build());
             historyItem.put("filePath", AttributeValue.builder().s(documentKey).build());
+            historyItem.put("storageType", AttributeValue.builder().s(VersionStore.SNAPSHOT).build());
+            historyItem.put("baseFile", AttributeValue.builder().s(documentKey).build());
             historyItem.put("editedAt", AttributeValue.builder().s(timestamp).build());
             historyItem.put("editedBy", AttributeValue.builder().s("uploader").build());
             historyItem.put("changeDescription", AttributeValue.builder().s("Initial upload").build());
 
-            dynamoDbClient.putItem(PutItemRequest.builder()
-                    .tableName(historyTable)
-                    .item(historyItem)
-                    .build());
+            // Write the body to S3 and both records to DynamoDB concurrently, timing each side
+            long writeStart = metrics.startTimer();
+            // An adopted upload is copied out of reach of its presigned URL, only if it is still what was hashed
+            CompletableFuture<?> contentWrite = contentBytes == null
+                    ? s3AsyncClient.copyObject(
+                            CopyObjectRequest.builder()
+                                    .sourceBucket(s3Bucket)
+                                    .sourceKey(uploadKey)
+                                    .copySourceIfMatch(uploadETag)
+                                    .destinationBucket(s3Bucket)
+                                    .destinationKey(documentKey)
+                                    .build()
+                    ).whenComplete((response, error) -> metrics.recordSince("WriteContent", writeStart))
+                    : s3AsyncClient.putObject(
+                            PutObjectRequest.builder()
+                                    .bucket(s3Bucket)
+                                    .key(documentKey)
+                                    .build(),
+                            AsyncRequestBody.fromBytes(contentBytes)
+                    ).whenComplete((response, error) -> metrics.recordSince("WriteContent", writeStart));
+
+            // Marks the new document for the search indexer; failing it fails the upload
+            CompletableFuture<PutObjectResponse> searchMark = !searchIndexEnabled
+                    ? CompletableFuture.completedFuture(null)
+                    : s3AsyncClient.putObject(
+                            PutObjectRequest.builder()
+                                    .bucket(s3Bucket)
+                                    .key(SearchStore.pendingKey(documentId, 1))
+                                    .build(),
+                            AsyncRequestBody.fromBytes(new byte[0])
+                    ).whenComplete((response, error) -> metrics.recordSince("MarkSearch", writeStart));
+
+            CompletableFuture<TransactWriteItemsResponse> metadataWrite = dynamoDbAsyncClient.transactWriteItems(
+                    TransactWriteItemsRequest.builder()
+                            .transactItems(
+                                    TransactWriteItem.builder().put(Put.builder()
+                                            .tableName(documentsTable)
+                                            .item(documentItem)
+                                            .conditionExpression("attribute_not_exists(documentId)")
+                                            .build()).build(),
+                                    TransactWriteItem.builder().put(Put.builder()
+                                            .tableName(historyTable)
+                                            .item(historyItem)
+                                            .build()).build())
+                            .build())
+                    .whenComplete((response, error) -> metrics.recordSince("Commit", writeStart));
+
+            try {
+                CompletableFuture.allOf(contentWrite, metadataWrite, searchMark).join();
+            } catch (CompletionException e) {
+                // allOf waits for all of them, so each side's outcome is known here
+                metrics.count("Rollbacks", 1);
+                rollback(documentId, metadataWrite, context);
+                if (isExistingDocument(e.getCause())) {
+                    // Only an adopted upload names its own documentId, so only it can collide
+                    return ResponseUtil.createErrorResponse(409, "Document already exists");
+                }
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            if (uploadKey != null) {
+                discardUpload(uploadKey, context);
+            }
 
             // Create success response
             Map<String, Object> responseBody = new HashMap<>();
@@ -102,6 +230,62 @@ public class DocumentUploadHandler implements RequestHandler<APIGatewayProxyRequ
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
             return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    static String newDocumentId() {
+        return "doc-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /** Deletes an adopted upload; left behind, it is swept by {@code BlobCleanupHandler}. */
+    private void discardUpload(String uploadKey, Context context) {
+        try {
+            s3AsyncClient.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(s3Bucket)
+                    .key(uploadKey)
+                    .build()).join();
+        } catch (CompletionException e) {
+            context.getLogger().log("Error: could not delete upload " + uploadKey + ": " + e.getCause().getMessage());
+        }
+    }
+
+    /** Whether the commit was cancelled because a document with this ID is already recorded. */
+    private static boolean isExistingDocument(Throwable error) {
+        if (!(error instanceof TransactionCanceledException)) {
+            return false;
+        }
+        TransactionCanceledException cancelled = (TransactionCanceledException) error;
+        return cancelled.hasCancellationReasons() && !cancelled.cancellationReasons().isEmpty()
+                && "ConditionalCheckFailed".equals(cancelled.cancellationReasons().get(0).code());
+    }
+
+    /**
+     * Removes the records if they were written without their content, so no dangling document remains.
+     * The content object may be shared with another document and is left for blob cleanup.
+     */
+    private void rollback(String documentId, CompletableFuture<?> metadataWrite, Context context) {
+        if (metadataWrite.isCompletedExceptionally()) {
+            return;
+        }
+
+        try {
+            dynamoDbAsyncClient.transactWriteItems(TransactWriteItemsRequest.builder()
+                    .transactItems(
+                            TransactWriteItem.builder().delete(Delete.builder()
+                                    .tableName(documentsTable)
+                                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                                    .build()).build(),
+                            TransactWriteItem.builder().delete(Delete.builder()
+                                    .tableName(historyTable)
+                                    .key(Map.of(
+                                            "documentId", AttributeValue.builder().s(documentId).build(),
+                                            "editNumber", AttributeValue.builder().n("1").build()))
+                                    .build()).build())
+                    .build()).join();
+        } catch (CompletionException e) {
+            context.getLogger().log("Error: upload rollback failed for " + documentId + ": " + e.getCause().getMessage());
         }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,293 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.storage.ArchiveSegment;
+import com.doccollab.storage.VersionStore;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scheduled job packing the cold history of long-lived documents into
+ * {@link ArchiveSegment}s, so thousands of old versions cost one object instead of
+ * thousands of small ones.
+ *
+ * Versions older than the newest {@code ARCHIVE_KEEP_VERSIONS} that still point at loose
+ * objects are packed, together with the snapshots their deltas are based on, into
+ * segments of a few MB, and their history rows are rewritten to locators into them. The
+ * current snapshot group and the document's current file are never touched, so reading
+ * and editing the current version never goes through a segment; the document row only
+ * records how far its history has been archived, so later runs read just the versions
+ * since. Loose objects left unreferenced, and segments a failed run uploaded but never
+ * referenced, are removed by {@code BlobCleanupHandler}.
+ *
+ * Input: optional {@code {"documentId": "doc-..."}} to archive one document, and
+ * {@code maxDocuments} (default 1000) to bound the documents archived in one run.
+ */
+public class HistoryArchiveHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    // Fewer cold versions than this are not worth a segment yet
+    static final int MIN_SEGMENT_VERSIONS = 50;
+    // Bounds the compressed segment held in memory; a long history is packed into several
+    static final long MAX_SEGMENT_BYTES = 8L * 1024 * 1024;
+    private static final int DEFAULT_MAX_DOCUMENTS = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+    private final String historyTable;
+    private final String s3Bucket;
+
+    private final VersionStore versionStore;
+
+    public HistoryArchiveHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public HistoryArchiveHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.s3Client = s3Client;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.s3Bucket = config.getS3Bucket();
+        // Cold versions are read once; caching them would only evict hot ones
+        this.versionStore = new VersionStore(s3Client, s3Bucket, config.getSnapshotInterval(), null);
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> input, Context context) {
+        String onlyDocument = input != null && input.get("documentId") != null ? String.valueOf(input.get("documentId")) : null;
+        int maxDocuments = input != null && input.get("maxDocuments") != null
+                ? Integer.parseInt(String.valueOf(input.get("maxDocuments"))) : DEFAULT_MAX_DOCUMENTS;
+        Metrics metrics = Metrics.start("HistoryArchive");
+
+        try {
+            List<Map<String, AttributeValue>> candidates = new ArrayList<>();
+            if (onlyDocument != null) {
+                GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(documentsTable)
+                        .key(Map.of("documentId", AttributeValue.builder().s(onlyDocument).build()))
+                        .projectionExpression("documentId, currentEditNumber, archivedEditNumber")
+                        .build());
+                if (response.hasItem()) {
+                    candidates.add(response.item());
+                }
+            } else {
+                for (Map<String, AttributeValue> item : dynamoDbClient.scanPaginator(ScanRequest.builder()
+                        .tableName(documentsTable)
+                        .projectionExpression("documentId, currentEditNumber, archivedEditNumber")
+                        .build()).items()) {
+                    if (archiveThrough(Integer.parseInt(item.get("currentEditNumber").n())) - archivedEditNumber(item)
+                            >= MIN_SEGMENT_VERSIONS) {
+                        candidates.add(item);
+                    }
+                }
+            }
+
+            int documents = 0;
+            int versions = 0;
+            long segmentBytes = 0;
+            long rawBytes = 0;
+            for (Map<String, AttributeValue> item : candidates) {
+                if (documents == maxDocuments) {
+                    break;
+                }
+                String documentId = item.get("documentId").s();
+                ArchiveResult result = archiveDocument(documentId, Integer.parseInt(item.get("currentEditNumber").n()),
+                        archivedEditNumber(item), metrics);
+                if (result.versions > 0) {
+                    documents++;
+                    versions += result.versions;
+                    segmentBytes += result.segmentBytes;
+                    rawBytes += result.rawBytes;
+                    context.getLogger().log("Archived " + result.versions + " versions of " + documentId + " into "
+                            + result.segments + " segments (" + result.rawBytes + " -> " + result.segmentBytes + " bytes)");
+                }
+            }
+            metrics.count("ArchivedDocuments", documents);
+            metrics.count("ArchivedVersions", versions);
+            metrics.recordSize("SegmentBytes", segmentBytes);
+
+            context.getLogger().log("History archive: " + candidates.size() + " candidates, " + documents
+                    + " documents, " + versions + " versions archived");
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("candidateDocuments", candidates.size());
+            result.put("archivedDocuments", documents);
+            result.put("archivedVersions", versions);
+            result.put("segmentBytes", segmentBytes);
+            result.put("rawBytes", rawBytes);
+            return result;
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    /** Newest edit number that may be archived: outside the kept versions and the current snapshot group. */
+    private int archiveThrough(int currentEditNumber) {
+        return Math.min(currentEditNumber - config.getArchiveKeepVersions(),
+                versionStore.snapshotGroupStart(currentEditNumber) - 1);
+    }
+
+    private static int archivedEditNumber(Map<String, AttributeValue> documentItem) {
+        return documentItem.containsKey("archivedEditNumber") ? Integer.parseInt(documentItem.get("archivedEditNumber").n()) : 0;
+    }
+
+    private static final class ArchiveResult {
+        int versions;
+        int segments;
+        long segmentBytes;
+        long rawBytes;
+    }
+
+    private ArchiveResult archiveDocument(String documentId, int currentEditNumber, int archivedEditNumber, Metrics metrics) {
+        ArchiveResult result = new ArchiveResult();
+        int through = archiveThrough(currentEditNumber);
+        if (through - archivedEditNumber < MIN_SEGMENT_VERSIONS) {
+            return result;
+        }
+
+        // Rows still on loose objects; versions adopted from direct uploads are large and stay loose
+        long stageStart = metrics.startTimer();
+        List<Map<String, AttributeValue>> rows = new ArrayList<>();
+        for (Map<String, AttributeValue> row : dynamoDbClient.queryPaginator(QueryRequest.builder()
+                .tableName(historyTable)
+                .keyConditionExpression("documentId = :docId AND editNumber BETWEEN :from AND :through")
+                .expressionAttributeValues(Map.of(
+                        ":docId", AttributeValue.builder().s(documentId).build(),
+                        ":from", AttributeValue.builder().n(String.valueOf(archivedEditNumber + 1)).build(),
+                        ":through", AttributeValue.builder().n(String.valueOf(through)).build()))
+                .projectionExpression("editNumber, filePath, baseFile")
+                .scanIndexForward(true)
+                .build()).items()) {
+            String filePath = row.containsKey("filePath") ? row.get("filePath").s() : null;
+            String baseFile = row.containsKey("baseFile") ? row.get("baseFile").s() : null;
+            if (filePath != null && !ArchiveSegment.isLocator(filePath)
+                    && !VersionStore.isUploadKeyFor(documentId, filePath)
+                    && (baseFile == null || !VersionStore.isUploadKeyFor(documentId, baseFile))) {
+                rows.add(row);
+            }
+        }
+        metrics.recordSince("ReadHistory", stageStart);
+        if (rows.size() < MIN_SEGMENT_VERSIONS) {
+            // Too few loose versions left in range to pack; skip past them so later runs don't re-read them
+            saveArchivedEditNumber(documentId, through);
+            return result;
+        }
+
+        // A tail too short for its own segment waits for more cold versions
+        int next = 0;
+        while (rows.size() - next >= MIN_SEGMENT_VERSIONS) {
+            next = writeSegment(documentId, rows, next, result, metrics);
+        }
+        return result;
+    }
+
+    /**
+     * Packs rows from {@code from} on into one segment until it reaches {@link #MAX_SEGMENT_BYTES},
+     * points them at it and records the last one as archived.
+     *
+     * @return index of the first row left out
+     */
+    private int writeSegment(String documentId, List<Map<String, AttributeValue>> rows, int from,
+                             ArchiveResult result, Metrics metrics) {
+        // Pack each row's object and its snapshot; shared objects are stored once
+        long stageStart = metrics.startTimer();
+        ArchiveSegment.Builder segment = new ArchiveSegment.Builder(
+                ArchiveSegment.segmentKey(documentId, Integer.parseInt(rows.get(from).get("editNumber").n())));
+        List<Map<String, AttributeValue>> packed = new ArrayList<>();
+        for (Map<String, AttributeValue> row : rows.subList(from, rows.size())) {
+            for (String attribute : List.of("filePath", "baseFile")) {
+                String key = row.containsKey(attribute) ? row.get(attribute).s() : null;
+                if (key != null && !segment.contains(key)) {
+                    segment.add(key, versionStore.readObject(key));
+                }
+            }
+            packed.add(row);
+            if (segment.getSize() >= MAX_SEGMENT_BYTES) {
+                break;
+            }
+        }
+        long entryBytes = segment.getRawBytes();
+        byte[] bytes = segment.toByteArray();
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(s3Bucket)
+                        .key(segment.getSegmentKey())
+                        .build(),
+                RequestBody.fromBytes(bytes));
+        metrics.recordSince("WriteSegment", stageStart);
+
+        // Point the rows into the segment; a row that changed meanwhile keeps its own objects
+        stageStart = metrics.startTimer();
+        for (Map<String, AttributeValue> row : packed) {
+            String filePath = row.get("filePath").s();
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":oldFile", AttributeValue.builder().s(filePath).build());
+            values.put(":file", AttributeValue.builder().s(segment.locator(filePath)).build());
+            String updateExpression = "SET filePath = :file";
+            if (row.containsKey("baseFile")) {
+                values.put(":baseFile", AttributeValue.builder().s(segment.locator(row.get("baseFile").s())).build());
+                updateExpression += ", baseFile = :baseFile";
+            }
+            try {
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                        .tableName(historyTable)
+                        .key(Map.of(
+                                "documentId", AttributeValue.builder().s(documentId).build(),
+                                "editNumber", row.get("editNumber")))
+                        .updateExpression(updateExpression)
+                        .conditionExpression("filePath = :oldFile")
+                        .expressionAttributeValues(values)
+                        .build());
+                result.versions++;
+            } catch (ConditionalCheckFailedException e) {
+                metrics.count("ArchiveConflicts", 1);
+            }
+        }
+
+        // Recorded per segment, so a run cut short resumes after the last one written
+        saveArchivedEditNumber(documentId, Integer.parseInt(packed.get(packed.size() - 1).get("editNumber").n()));
+        metrics.recordSince("RewriteHistory", stageStart);
+
+        result.segments++;
+        result.segmentBytes += bytes.length;
+        result.rawBytes += entryBytes;
+        return from + packed.size();
+    }
+
+    private void saveArchivedEditNumber(String documentId, int editNumber) {
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(documentsTable)
+                    .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                    .updateExpression("SET archivedEditNumber = :archived")
+                    .conditionExpression("attribute_exists(documentId)")
+                    .expressionAttributeValues(Map.of(":archived",
+                            AttributeValue.builder().n(String.valueOf(editNumber)).build()))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Document deleted meanwhile
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.search.SearchIndex;
+import com.doccollab.search.SearchResult;
+import com.doccollab.search.SearchStore;
+import com.doccollab.search.SegmentManifest;
+import com.doccollab.utils.ResponseUtil;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GET /search?q=: ranked full-text search over the segments the search indexer has
+ * published. Results reflect the last indexer run, not edits made since.
+ *
+ * The opened index is kept for the container's lifetime and the manifest is re-read at
+ * most every {@link #REFRESH_INTERVAL_MILLIS}; segments are immutable, so a refresh only
+ * downloads segments it has not mapped yet.
+ */
+public class SearchHandler implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    static final long REFRESH_INTERVAL_MILLIS = 30_000;
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_QUERY_LENGTH = 1024;
+
+    private final SearchStore searchStore;
+
+    private volatile SearchIndex index;
+    private volatile long generation = -1;
+    private volatile long refreshedAt;
+
+    public SearchHandler() {
+        this(AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public SearchHandler(S3Client s3Client, ServiceConfig config) {
+        this.searchStore = new SearchStore(s3Client, config.getS3Bucket(), SearchStore.DEFAULT_SEGMENT_DIRECTORY);
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        Metrics metrics = Metrics.start("Search");
+
+        try {
+            Map<String, String> params = request.getQueryStringParameters() != null
+                    ? request.getQueryStringParameters() : Map.of();
+            String query = params.get("q");
+            if (query == null || query.isBlank()) {
+                return ResponseUtil.createErrorResponse(400, "q is required");
+            }
+            if (query.length() > MAX_QUERY_LENGTH) {
+                return ResponseUtil.createErrorResponse(400, "q must be at most " + MAX_QUERY_LENGTH + " characters");
+            }
+
+            int limit;
+            try {
+                limit = Integer.parseInt(params.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT)));
+            } catch (NumberFormatException e) {
+                return ResponseUtil.createErrorResponse(400, "limit must be a number");
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                return ResponseUtil.createErrorResponse(400, "limit must be between 1 and " + MAX_LIMIT);
+            }
+
+            long stageStart = metrics.startTimer();
+            SearchIndex searchIndex = currentIndex();
+            metrics.recordSince("LoadIndex", stageStart);
+
+            stageStart = metrics.startTimer();
+            List<SearchResult> results = searchIndex.search(query, limit);
+            metrics.recordSince("Query", stageStart);
+            metrics.count("SearchResults", results.size());
+
+            return ResponseUtil.createJsonResponse(200, generator -> {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeStringField("query", query);
+                generator.writeNumberField("indexedDocuments", searchIndex.getDocumentCount());
+                generator.writeArrayFieldStart("results");
+                for (SearchResult result : results) {
+                    generator.writeStartObject();
+                    generator.writeStringField("documentId", result.getDocumentId());
+                    generator.writeStringField("title", result.getTitle());
+                    generator.writeNumberField("editNumber", result.getEditNumber());
+                    generator.writeNumberField("score", result.getScore());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }, 256 + results.size() * 160, Map.of());
+
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            return ResponseUtil.createErrorResponse(500, e.getMessage());
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    /** The index as of the latest manifest, re-checked at most once per refresh interval. */
+    private SearchIndex currentIndex() {
+        long now = System.currentTimeMillis();
+        SearchIndex current = index;
+        if (current != null && now - refreshedAt < REFRESH_INTERVAL_MILLIS) {
+            return current;
+        }
+        synchronized (this) {
+            if (index != null && now - refreshedAt < REFRESH_INTERVAL_MILLIS) {
+                return index;
+            }
+            SegmentManifest manifest = searchStore.readManifest();
+            if (index == null || manifest.getGeneration() != generation) {
+                index = searchStore.openIndex(manifest);
+                generation = manifest.getGeneration();
+            }
+            refreshedAt = now;
+            return index;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.doccollab.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.doccollab.config.AwsClients;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.metrics.Metrics;
+import com.doccollab.models.Document;
+import com.doccollab.ot.OperationLog;
+import com.doccollab.search.SearchIndex;
+import com.doccollab.search.SearchStore;
+import com.doccollab.search.SearchTokenizer;
+import com.doccollab.search.SegmentManifest;
+import com.doccollab.search.SegmentWriter;
+import com.doccollab.storage.VersionStore;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Scheduled incremental indexer. Reads the pending markers that edits leave under
+ * {@code search/pending/}, re-indexes only those documents (title, current content and
+ * change descriptions) into one new segment, merges segments, publishes the manifest and
+ * then deletes the markers it handled.
+ *
+ * Merging follows a binary-counter policy: the newest two segments are merged while the
+ * older holds no more documents than the newer, so each document is rewritten O(log N)
+ * times. Superseded entries are dropped when their segment is merged.
+ *
+ * A marker is written before its edit commits. One newer than the document's current
+ * edit is left for the next run unless it is older than {@link #PENDING_SETTLE}, in which
+ * case its commit failed. Runs must not overlap (reserved concurrency 1), since each
+ * rewrites the manifest.
+ *
+ * Input: optional {@code {"maxDocuments": 5000}} to bound one run.
+ */
+public class SearchIndexHandler implements RequestHandler<Map<String, Object>, Map<String, Object>> {
+
+    static final Duration PENDING_SETTLE = Duration.ofMinutes(5);
+    private static final int DEFAULT_MAX_DOCUMENTS = 5000;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final S3Client s3Client;
+
+    private final ServiceConfig config;
+    private final String documentsTable;
+    private final String historyTable;
+    private final String s3Bucket;
+
+    private final VersionStore versionStore;
+    private final OperationLog operationLog;
+    private final SearchStore searchStore;
+
+    public SearchIndexHandler() {
+        this(AwsClients.dynamoDb(), AwsClients.s3(), ServiceConfig.fromEnv());
+    }
+
+    /** Handler backed by the given clients and configuration instead of the container-wide ones. */
+    public SearchIndexHandler(DynamoDbClient dynamoDbClient, S3Client s3Client, ServiceConfig config) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.s3Client = s3Client;
+        this.config = config;
+        this.documentsTable = config.getDocumentsTable();
+        this.historyTable = config.getHistoryTable();
+        this.s3Bucket = config.getS3Bucket();
+        // Content is streamed once per run, so there is nothing to gain from the version cache
+        this.versionStore = new VersionStore(s3Client, s3Bucket, config.getSnapshotInterval(), null);
+        this.operationLog = new OperationLog(dynamoDbClient, historyTable, versionStore);
+        this.searchStore = new SearchStore(s3Client, s3Bucket, SearchStore.DEFAULT_SEGMENT_DIRECTORY);
+    }
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, Object> input, Context context) {
+        int maxDocuments = input != null && input.get("maxDocuments") != null
+                ? Integer.parseInt(String.valueOf(input.get("maxDocuments"))) : DEFAULT_MAX_DOCUMENTS;
+        Instant settled = Instant.now().minus(PENDING_SETTLE);
+        Metrics metrics = Metrics.start("SearchIndex");
+
+        try {
+            // Pending markers, grouped by document in a stable order
+            long stageStart = metrics.startTimer();
+            Map<String, List<S3Object>> pending = new TreeMap<>();
+            for (S3Object marker : s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                    .bucket(s3Bucket)
+                    .prefix(SearchStore.PENDING_PREFIX)
+                    .build()).contents()) {
+                Map.Entry<String, Integer> parsed = SearchStore.parsePendingKey(marker.key());
+                if (parsed != null) {
+                    pending.computeIfAbsent(parsed.getKey(), k -> new ArrayList<>()).add(marker);
+                }
+            }
+            SegmentManifest manifest = searchStore.readManifest();
+            SearchIndex index = searchStore.openIndex(manifest);
+            metrics.recordSince("ReadPending", stageStart);
+
+            // Index the changed documents into one new segment
+            stageStart = metrics.startTimer();
+            SegmentWriter writer = new SegmentWriter();
+            List<String> handledMarkers = new ArrayList<>();
+            int deferred = 0;
+            int unchanged = 0;
+            for (Map.Entry<String, List<S3Object>> entry : pending.entrySet()) {
+                if (writer.getDocumentCount() >= maxDocuments) {
+                    break;
+                }
+                String documentId = entry.getKey();
+                int markedEditNumber = 0;
+                int markedRevision = 0;
+                boolean recent = false;
+                for (S3Object marker : entry.getValue()) {
+                    int editNumber = SearchStore.parsePendingKey(marker.key()).getValue();
+                    int revision = SearchStore.parsePendingRevision(marker.key());
+                    if (editNumber > markedEditNumber || editNumber == markedEditNumber && revision > markedRevision) {
+                        markedEditNumber = editNumber;
+                        markedRevision = revision;
+                    }
+                    recent |= marker.lastModified().isAfter(settled);
+                }
+
+                GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                        .tableName(documentsTable)
+                        .key(Map.of("documentId", AttributeValue.builder().s(documentId).build()))
+                        .build());
+                if (!response.hasItem()) {
+                    // Upload rolled back, or not committed yet
+                    if (recent) {
+                        deferred++;
+                    } else {
+                        entry.getValue().forEach(marker -> handledMarkers.add(marker.key()));
+                    }
+                    continue;
+                }
+                Map<String, AttributeValue> item = response.item();
+                int currentEditNumber = Integer.parseInt(item.get("currentEditNumber").n());
+                int currentRevision = Document.revisionOf(item);
+                if ((currentEditNumber < markedEditNumber
+                        || currentEditNumber == markedEditNumber && currentRevision < markedRevision) && recent) {
+                    // The marked edit may still be committing
+                    deferred++;
+                    continue;
+                }
+
+                entry.getValue().forEach(marker -> handledMarkers.add(marker.key()));
+                // The index does not record revisions, so a coalesced version is re-indexed whenever it is marked
+                if (index.indexedEditNumber(documentId) >= currentEditNumber && currentRevision == 0) {
+                    unchanged++;
+                    continue;
+                }
+                indexDocument(writer, documentId, item, currentEditNumber);
+            }
+            metrics.recordSince("Index", stageStart);
+            metrics.count("IndexedDocuments", writer.getDocumentCount());
+            metrics.count("DeferredDocuments", deferred);
+
+            // Publish the new segment, merge, then drop the handled markers
+            stageStart = metrics.startTimer();
+            long generation = manifest.getGeneration();
+            List<SegmentManifest.Entry> segments = new ArrayList<>(manifest.getSegments());
+            int merges = 0;
+            if (writer.getDocumentCount() > 0) {
+                segments.add(searchStore.writeSegment(++generation, writer));
+                while (segments.size() > 1 && (segments.size() > MAX_SEGMENTS
+                        || segments.get(segments.size() - 2).getDocumentCount() <= segments.get(segments.size() - 1).getDocumentCount())) {
+                    SegmentManifest.Entry older = segments.remove(segments.size() - 2);
+                    SegmentManifest.Entry newer = segments.remove(segments.size() - 1);
+                    SegmentWriter merged = SegmentWriter.merge(new SearchIndex(List.of(
+                            searchStore.openSegment(older.getKey()), searchStore.openSegment(newer.getKey()))));
+                    segments.add(searchStore.writeSegment(++generation, merged));
+                    merges++;
+                }
+                manifest = new SegmentManifest(generation, segments);
+                searchStore.writeManifest(manifest);
+            }
+            deleteKeys(handledMarkers, context);
+            metrics.recordSince("Publish", stageStart);
+            metrics.count("Merges", merges);
+
+            // Segments replaced by merges are kept for the grace period: searchers may still be loading them
+            int sweptSegments = sweepSegments(manifest, context);
+            index = searchStore.openIndex(manifest);
+
+            context.getLogger().log("Search index: " + writer.getDocumentCount() + " indexed, " + unchanged
+                    + " unchanged, " + deferred + " deferred, " + merges + " merges, "
+                    + index.getDocumentCount() + " documents in " + segments.size() + " segments");
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("indexedDocuments", writer.getDocumentCount());
+            result.put("unchangedDocuments", unchanged);
+            result.put("deferredDocuments", deferred);
+            result.put("merges", merges);
+            result.put("segments", manifest.getSegments().size());
+            result.put("documents", index.getDocumentCount());
+            result.put("sweptSegments", sweptSegments);
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Search indexing failed: " + e.getMessage(), e);
+        } finally {
+            metrics.flush();
+        }
+    }
+
+    private void indexDocument(SegmentWriter writer, String documentId, Map<String, AttributeValue> item,
+                               int currentEditNumber) throws IOException {
+        String title = item.containsKey("title") ? item.get("title").s() : "";
+        Map<String, Integer> terms = new HashMap<>();
+        int length = SearchTokenizer.count(title, terms);
+
+        // Large documents are tokenized as they stream in rather than read whole
+        try (Reader content = openContent(item)) {
+            length += SearchTokenizer.count(content, terms);
+        }
+
+        for (Map<String, AttributeValue> row : dynamoDbClient.queryPaginator(QueryRequest.builder()
+                .tableName(historyTable)
+                .keyConditionExpression("documentId = :docId")
+                .expressionAttributeValues(Map.of(":docId", AttributeValue.builder().s(documentId).build()))
+                .projectionExpression("changeDescription")
+                .build()).items()) {
+            if (row.containsKey("changeDescription")) {
+                length += SearchTokenizer.count(row.get("changeDescription").s(), terms);
+            }
+        }
+        writer.addDocument(documentId, title, currentEditNumber, terms, length);
+    }
+
+    private Reader openContent(Map<String, AttributeValue> item) throws IOException {
+        if (OperationLog.hasPendingOperations(item)) {
+            return new StringReader(operationLog.readCurrent(item));
+        }
+        String currentFile = item.get("currentFile").s();
+        String currentBaseFile = item.containsKey("currentBaseFile") ? item.get("currentBaseFile").s() : null;
+        return new InputStreamReader(versionStore.openVersion(currentFile, currentBaseFile), StandardCharsets.UTF_8);
+    }
+
+    private int sweepSegments(SegmentManifest manifest, Context context) {
+        Set<String> live = new HashSet<>();
+        manifest.getSegments().forEach(entry -> live.add(entry.getKey()));
+        Instant cutoff = Instant.now().minus(Duration.ofHours(config.getOrphanGraceHours()));
+        List<String> retired = new ArrayList<>();
+        for (S3Object object : s3Client.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                .bucket(s3Bucket)
+                .prefix(SearchStore.SEGMENT_PREFIX)
+                .build()).contents()) {
+            if (!live.contains(object.key()) && object.lastModified().isBefore(cutoff)) {
+                retired.add(object.key());
+            }
+        }
+        deleteKeys(retired, context);
+        return retired.size();
+    }
+
+    private void deleteKeys(List<String> keys, Context context) {
+        for (int start = 0; start < keys.size(); start += DELETE_BATCH_SIZE) {
+            List<ObjectIdentifier> batch = new ArrayList<>();
+            for (String key : keys.subList(start, Math.min(keys.size(), start + DELETE_BATCH_SIZE))) {
+                batch.add(ObjectIdentifier.builder().key(key).build());
+            }
+            DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(s3Bucket)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build());
+            if (response.hasErrors() && !response.errors().isEmpty()) {
+                context.getLogger().log("Error: search indexer failed to delete " + response.errors().size()
+                        + " objects, first: " + response.errors().get(0).key());
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.doccollab.metrics;
+
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.SdkHttpHeaders;
+
+/**
+ * SDK interceptor that records every AWS call into the invocation that made it: its
+ * latency as {@code <service>.<operation>} (for example {@code DynamoDb.GetItem}),
+ * request and response sizes, retries and failures.
+ *
+ * The invocation is captured when the call starts, so async calls completing on SDK
+ * threads are still attributed to the handler that issued them.
+ */
+public final class AwsCallMetrics implements ExecutionInterceptor {
+
+    private static final AwsCallMetrics INSTANCE = new AwsCallMetrics();
+
+    private static final ExecutionAttribute<Metrics> METRICS = new ExecutionAttribute<>("CollabDocsMetrics");
+    private static final ExecutionAttribute<Long> START = new ExecutionAttribute<>("CollabDocsCallStart");
+    private static final ExecutionAttribute<Integer> ATTEMPTS = new ExecutionAttribute<>("CollabDocsCallAttempts");
+
+    private AwsCallMetrics() {}
+
+    public static AwsCallMetrics instance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        Metrics metrics = Metrics.current();
+        if (metrics.isEnabled()) {
+            executionAttributes.putAttribute(METRICS, metrics);
+            executionAttributes.putAttribute(START, metrics.startTimer());
+            executionAttributes.putAttribute(ATTEMPTS, 0);
+        }
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        Metrics metrics = executionAttributes.getAttribute(METRICS);
+        if (metrics == null) {
+            return;
+        }
+        executionAttributes.putAttribute(ATTEMPTS, executionAttributes.getAttribute(ATTEMPTS) + 1);
+        long bytes = contentLength(context.httpRequest());
+        if (bytes >= 0) {
+            metrics.recordSize(callName(executionAttributes) + ".RequestBytes", bytes);
+        }
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        Metrics metrics = executionAttributes.getAttribute(METRICS);
+        if (metrics == null) {
+            return;
+        }
+        long bytes = contentLength(context.httpResponse());
+        if (bytes >= 0) {
+            metrics.recordSize(callName(executionAttributes) + ".ResponseBytes", bytes);
+        }
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        finish(executionAttributes, false);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        finish(executionAttributes, true);
+    }
+
+    private static void finish(ExecutionAttributes executionAttributes, boolean failed) {
+        Metrics metrics = executionAttributes.getAttribute(METRICS);
+        if (metrics == null) {
+            return;
+        }
+        metrics.recordSince(callName(executionAttributes), executionAttributes.getAttribute(START));
+        int attempts = executionAttributes.getAttribute(ATTEMPTS);
+        if (attempts > 1) {
+            metrics.count("AwsRetries", attempts - 1);
+        }
+        if (failed) {
+            metrics.count("AwsErrors", 1);
+        }
+    }
+
+    private static String callName(ExecutionAttributes executionAttributes) {
+        return executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME)
+                + "." + executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    }
+
+    private static long contentLength(SdkHttpHeaders message) {
+        return message.firstMatchingHeader("Content-Length").map(Long::parseLong).orElse(-1L);
+    }
+}
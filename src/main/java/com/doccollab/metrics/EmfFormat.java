@@ -0,0 +1,109 @@
+package com.doccollab.metrics;
+
+import com.doccollab.utils.JsonCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Serializes an invocation's metrics as a CloudWatch embedded metric format (EMF) line.
+ *
+ * Each timing and size is emitted as an array of values so CloudWatch can compute
+ * percentiles across invocations. An invocation with more than {@value #MAX_VALUES}
+ * samples for one metric is reduced to its histogram buckets, each repeated in
+ * proportion to its count.
+ */
+public final class EmfFormat {
+
+    // EMF limit on values per metric
+    private static final int MAX_VALUES = 100;
+
+    private static final String NAMESPACE = System.getenv("METRICS_NAMESPACE") != null
+            ? System.getenv("METRICS_NAMESPACE") : "CollabDocs";
+
+    private EmfFormat() {}
+
+    public static String format(Metrics metrics) {
+        Map<String, LatencyHistogram> timings = metrics.getTimings();
+        Map<String, LatencyHistogram> sizes = metrics.getSizes();
+        Map<String, Long> counts = metrics.getCounts();
+
+        try {
+            return JsonCodec.write(generator -> {
+                generator.writeStartObject();
+
+                generator.writeObjectFieldStart("_aws");
+                generator.writeNumberField("Timestamp", System.currentTimeMillis());
+                generator.writeArrayFieldStart("CloudWatchMetrics");
+                generator.writeStartObject();
+                generator.writeStringField("Namespace", NAMESPACE);
+                generator.writeArrayFieldStart("Dimensions");
+                generator.writeStartArray();
+                generator.writeString("Operation");
+                generator.writeEndArray();
+                generator.writeEndArray();
+                generator.writeArrayFieldStart("Metrics");
+                writeDefinitions(generator, timings, Metrics.UNIT_MILLISECONDS);
+                writeDefinitions(generator, sizes, Metrics.UNIT_BYTES);
+                writeDefinitions(generator, counts, Metrics.UNIT_COUNT);
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+
+                generator.writeStringField("Operation", metrics.getOperation());
+                for (Map.Entry<String, LatencyHistogram> timing : timings.entrySet()) {
+                    generator.writeFieldName(timing.getKey());
+                    writeValues(generator, timing.getValue(), true);
+                }
+                for (Map.Entry<String, LatencyHistogram> size : sizes.entrySet()) {
+                    generator.writeFieldName(size.getKey());
+                    writeValues(generator, size.getValue(), false);
+                }
+                for (Map.Entry<String, Long> count : counts.entrySet()) {
+                    generator.writeNumberField(count.getKey(), count.getValue());
+                }
+
+                generator.writeEndObject();
+            }, 256 + 64 * (timings.size() + sizes.size() + counts.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeDefinitions(JsonGenerator generator, Map<String, ?> metrics, String unit) throws IOException {
+        for (String name : metrics.keySet()) {
+            generator.writeStartObject();
+            generator.writeStringField("Name", name);
+            generator.writeStringField("Unit", unit);
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeValues(JsonGenerator generator, LatencyHistogram histogram, boolean micros) throws IOException {
+        long total = histogram.getCount();
+        generator.writeStartArray();
+        IOException[] failure = new IOException[1];
+        histogram.forEachBucket((value, count) -> {
+            long repeats = total <= MAX_VALUES ? count : Math.max(1, count * MAX_VALUES / total);
+            try {
+                for (long i = 0; i < repeats; i++) {
+                    if (micros) {
+                        // Milliseconds with microsecond precision
+                        generator.writeNumber(value / 1000.0);
+                    } else {
+                        generator.writeNumber(value);
+                    }
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,13 @@
+package com.doccollab.metrics;
+
+/**
+ * Writes each invocation as one CloudWatch embedded metric format line on stdout,
+ * which Lambda forwards to CloudWatch Logs where the metrics are extracted.
+ */
+public class EmfLogSink implements MetricsSink {
+
+    @Override
+    public void emit(Metrics metrics) {
+        System.out.println(EmfFormat.format(metrics));
+    }
+}
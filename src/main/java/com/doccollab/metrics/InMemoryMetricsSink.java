@@ -0,0 +1,34 @@
+package com.doccollab.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps emitted invocations in memory so tests and benchmarks can inspect them.
+ */
+public class InMemoryMetricsSink implements MetricsSink {
+
+    private final List<Metrics> emitted = new ArrayList<>();
+
+    @Override
+    public synchronized void emit(Metrics metrics) {
+        emitted.add(metrics);
+    }
+
+    public synchronized List<Metrics> getEmitted() {
+        return new ArrayList<>(emitted);
+    }
+
+    /** The emitted invocations as the EMF lines {@link EmfLogSink} would write. */
+    public synchronized List<String> getLines() {
+        List<String> lines = new ArrayList<>(emitted.size());
+        for (Metrics metrics : emitted) {
+            lines.add(EmfFormat.format(metrics));
+        }
+        return lines;
+    }
+
+    public synchronized void clear() {
+        emitted.clear();
+    }
+}
@@ -0,0 +1,130 @@
+package com.doccollab.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram in the style of HdrHistogram: each power of two is
+ * split into {@value #SUB_BUCKETS} linear sub-buckets, so any recorded value is kept to
+ * within about 6% with a constant-time, allocation-free {@link #record}.
+ *
+ * Values are non-negative longs (microseconds or bytes); negative values count as zero.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS are exact; above that, one row of sub-buckets per power of two
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * (SUB_BUCKETS / 2);
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** Adds every value recorded in {@code other}. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() { return totalCount; }
+
+    public long getSum() { return sum; }
+
+    public long getMin() { return totalCount == 0 ? 0 : min; }
+
+    public long getMax() { return max; }
+
+    /**
+     * Value at or below which {@code percentile} percent of recorded values fall, to
+     * the histogram's precision. Returns 0 when empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /** Calls {@code visitor} for each non-empty bucket, in ascending value order. */
+    public void forEachBucket(BucketVisitor visitor) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts[i] > 0) {
+                visitor.visit(Math.min(Math.max(midpoint(i), getMin()), max), counts[i]);
+            }
+        }
+    }
+
+    public interface BucketVisitor {
+        /**
+         * @param value representative value of the bucket, clamped to the recorded range
+         */
+        void visit(long value, long count);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS / 2;
+        return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * (SUB_BUCKETS / 2) + subBucket;
+    }
+
+    private static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int row = (index - SUB_BUCKETS) / (SUB_BUCKETS / 2);
+        int subBucket = (index - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        int shift = row + 1;
+        return (long) subBucket << shift;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int row = (index - SUB_BUCKETS) / (SUB_BUCKETS / 2);
+        return lowestValue(index) + (1L << (row + 1)) - 1;
+    }
+
+    private static long midpoint(int index) {
+        long low = lowestValue(index);
+        return low + (highestValue(index) - low) / 2;
+    }
+}
@@ -0,0 +1,171 @@
+package com.doccollab.metrics;
+
+import com.doccollab.config.ServiceConfig;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Metrics for one handler invocation: stage and AWS call timings, payload sizes and
+ * counters, flushed to a {@link MetricsSink} once when the invocation ends.
+ *
+ * A handler calls {@link #start} on entry and {@link #flush} in a finally block; code
+ * it calls into reaches the same instance through {@link #current}. When metrics are
+ * disabled every method is a no-op on a shared instance, taking no lock, and timers never
+ * read the clock.
+ */
+public final class Metrics {
+
+    public static final String UNIT_MILLISECONDS = "Milliseconds";
+    public static final String UNIT_BYTES = "Bytes";
+    public static final String UNIT_COUNT = "Count";
+
+    private static final Metrics DISABLED = new Metrics(null, null);
+    private static final ThreadLocal<Metrics> CURRENT = new ThreadLocal<>();
+
+    private static volatile MetricsSink sink = ServiceConfig.fromEnv().isMetricsEnabled() ? new EmfLogSink() : null;
+
+    private final String operation;
+    private final MetricsSink target;
+    private final long startNanos;
+    // Insertion-ordered so emitted lines list stages in the order they ran
+    private final Map<String, LatencyHistogram> timings = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> sizes = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    private Metrics(String operation, MetricsSink target) {
+        this.operation = operation;
+        this.target = target;
+        this.startNanos = target == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Replaces the sink for all later invocations; null disables metrics. Used by the
+     * server mode, benchmarks and tests to capture or redirect output.
+     */
+    public static void setSink(MetricsSink newSink) {
+        sink = newSink;
+    }
+
+    /** Begins an invocation of {@code operation} on the calling thread. */
+    public static Metrics start(String operation) {
+        MetricsSink target = sink;
+        if (target == null) {
+            return DISABLED;
+        }
+        Metrics metrics = new Metrics(operation, target);
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /** The calling thread's invocation, or a disabled instance outside of one. */
+    public static Metrics current() {
+        if (sink == null) {
+            return DISABLED;
+        }
+        Metrics metrics = CURRENT.get();
+        return metrics != null ? metrics : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return target != null;
+    }
+
+    /**
+     * Wraps {@code task} so that, run on another thread, it records into this invocation
+     * through {@link #current} like code on the handler's own thread.
+     */
+    public <T> Callable<T> propagate(Callable<T> task) {
+        if (target == null) {
+            return task;
+        }
+        return () -> {
+            Metrics previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    /** Start time for {@link #recordSince}; 0 when disabled so the clock is not read. */
+    public long startTimer() {
+        return target == null ? 0 : System.nanoTime();
+    }
+
+    /** Records the time since {@code startNanos} under stage {@code name}. */
+    public void recordSince(String name, long startNanos) {
+        if (target != null) {
+            recordTime(name, System.nanoTime() - startNanos);
+        }
+    }
+
+    public void recordTime(String name, long nanos) {
+        if (target == null) {
+            return;
+        }
+        synchronized (this) {
+            timings.computeIfAbsent(name, k -> new LatencyHistogram()).record(nanos / 1000);
+        }
+    }
+
+    public void recordSize(String name, long bytes) {
+        if (target == null) {
+            return;
+        }
+        synchronized (this) {
+            sizes.computeIfAbsent(name, k -> new LatencyHistogram()).record(bytes);
+        }
+    }
+
+    public void count(String name, long delta) {
+        if (target == null) {
+            return;
+        }
+        synchronized (this) {
+            counts.merge(name, delta, Long::sum);
+        }
+    }
+
+    /**
+     * Records the total duration, emits everything to the sink and ends the invocation.
+     * Sink failures are swallowed: metrics must never fail a request.
+     */
+    public void flush() {
+        if (target == null) {
+            return;
+        }
+        recordSince("Total", startNanos);
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        try {
+            target.emit(this);
+        } catch (RuntimeException e) {
+            // Dropped
+        }
+    }
+
+    public String getOperation() { return operation; }
+
+    /** Stage timings in microseconds. */
+    public synchronized Map<String, LatencyHistogram> getTimings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+    }
+
+    public synchronized Map<String, LatencyHistogram> getSizes() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(sizes));
+    }
+
+    public synchronized Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+    }
+}
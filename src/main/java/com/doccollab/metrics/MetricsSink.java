@@ -0,0 +1,9 @@
+package com.doccollab.metrics;
+
+/**
+ * Destination for the metrics of finished invocations.
+ */
+public interface MetricsSink {
+
+    void emit(Metrics metrics);
+}
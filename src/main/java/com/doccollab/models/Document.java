@@ -1,6 +1,9 @@
 package com.doccollab.models;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Map;
 
 public class Document {
     @JsonProperty("documentId")
@@ -18,6 +21,10 @@ public class Document {
     @JsonProperty("currentEditNumber")
     private int currentEditNumber;
 
+    // Saves coalesced into the current version since it was first written
+    @JsonProperty("currentRevision")
+    private int currentRevision;
+
     @JsonProperty("createdAt")
     private String createdAt;
 
@@ -33,6 +40,24 @@ public class Document {
         this.currentEditNumber = 1;
     }
 
+    public static Document fromItem(Map<String, AttributeValue> item) {
+        Document document = new Document();
+        document.setDocumentId(item.get("documentId").s());
+        document.setTitle(item.get("title").s());
+        document.setOriginalFile(item.containsKey("originalFile") ? item.get("originalFile").s() : null);
+        document.setCurrentFile(item.get("currentFile").s());
+        document.setCurrentEditNumber(Integer.parseInt(item.get("currentEditNumber").n()));
+        document.setCurrentRevision(revisionOf(item));
+        document.setCreatedAt(item.get("createdAt").s());
+        document.setLastModified(item.get("lastModified").s());
+        return document;
+    }
+
+    /** Revision of the current version on a document row; rows never coalesced into have none. */
+    public static int revisionOf(Map<String, AttributeValue> item) {
+        return item.containsKey("currentRevision") ? Integer.parseInt(item.get("currentRevision").n()) : 0;
+    }
+
     // Getters and Setters
     public String getDocumentId() { return documentId; }
     public void setDocumentId(String documentId) { this.documentId = documentId; }
@@ -49,6 +74,9 @@ public class Document {
     public int getCurrentEditNumber() { return currentEditNumber; }
     public void setCurrentEditNumber(int currentEditNumber) { this.currentEditNumber = currentEditNumber; }
 
+    public int getCurrentRevision() { return currentRevision; }
+    public void setCurrentRevision(int currentRevision) { this.currentRevision = currentRevision; }
+
     public String getCreatedAt() { return createdAt; }
     public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
 
@@ -0,0 +1,160 @@
+package com.doccollab.ot;
+
+import com.doccollab.utils.JsonCodec;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON for operation batches, used both for PATCH bodies and for the
+ * compact operation log stored on history rows.
+ *
+ * An operation is {"type":"insert","position":p,"text":"..."} or
+ * {"type":"delete","position":p,"length":n}.
+ */
+public final class OperationCodec {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private OperationCodec() {}
+
+    public static PatchRequest parsePatch(String json, int maxOperations) throws IOException {
+        if (json == null) {
+            throw new IOException("Request body is required");
+        }
+
+        Integer baseEditNumber = null;
+        int baseRevision = 0;
+        List<TextOperation> operations = null;
+        String editedBy = "anonymous";
+        String changeDescription = "Document updated";
+
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Request body must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "baseEditNumber":
+                        baseEditNumber = parser.getValueAsInt();
+                        break;
+                    case "baseRevision":
+                        baseRevision = parser.getValueAsInt();
+                        break;
+                    case "operations":
+                        operations = readOperations(parser, maxOperations);
+                        break;
+                    case "editedBy":
+                        editedBy = parser.getValueAsString(editedBy);
+                        break;
+                    case "changeDescription":
+                        changeDescription = parser.getValueAsString(changeDescription);
+                        break;
+                    default:
+                        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                        }
+                }
+            }
+        }
+
+        if (baseEditNumber == null || operations == null) {
+            throw new IOException("baseEditNumber and operations are required");
+        }
+        if (baseRevision < 0) {
+            throw new IOException("baseRevision must not be negative");
+        }
+        return new PatchRequest(baseEditNumber, baseRevision, operations, editedBy, changeDescription);
+    }
+
+    public static List<TextOperation> decode(String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            return readOperations(parser, Integer.MAX_VALUE);
+        }
+    }
+
+    public static String encode(List<TextOperation> operations) throws IOException {
+        return JsonCodec.write(generator -> writeOperations(generator, operations), 32 * operations.size());
+    }
+
+    public static void writeOperations(JsonGenerator generator, List<TextOperation> operations) throws IOException {
+        generator.writeStartArray();
+        for (TextOperation operation : operations) {
+            generator.writeStartObject();
+            generator.writeStringField("type", operation.isInsert() ? "insert" : "delete");
+            generator.writeNumberField("position", operation.getPosition());
+            if (operation.isInsert()) {
+                generator.writeStringField("text", operation.getText());
+            } else {
+                generator.writeNumberField("length", operation.getLength());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    /** Reads an operations array; the parser must be positioned on its START_ARRAY. */
+    private static List<TextOperation> readOperations(JsonParser parser, int maxOperations) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("operations must be an array");
+        }
+
+        List<TextOperation> operations = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (operations.size() == maxOperations) {
+                throw new IOException("At most " + maxOperations + " operations per request");
+            }
+
+            String type = null;
+            String text = null;
+            int position = -1;
+            int length = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "type":
+                        type = parser.getText();
+                        break;
+                    case "position":
+                        position = parser.getValueAsInt(-1);
+                        break;
+                    case "text":
+                        text = parser.getText();
+                        break;
+                    case "length":
+                        length = parser.getValueAsInt(-1);
+                        break;
+                    default:
+                        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                        }
+                }
+            }
+
+            if (position < 0) {
+                throw new IOException("Operation position must be a non-negative integer");
+            }
+            if ("insert".equals(type) && text != null) {
+                operations.add(TextOperation.insert(position, text));
+            } else if ("delete".equals(type) && length >= 0) {
+                operations.add(TextOperation.delete(position, length));
+            } else {
+                throw new IOException("Operation must be an insert with text or a delete with length");
+            }
+        }
+
+        if (parser.currentToken() != JsonToken.END_ARRAY) {
+            throw new IOException("operations must contain only objects");
+        }
+        return operations;
+    }
+}
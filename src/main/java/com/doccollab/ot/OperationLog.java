@@ -0,0 +1,128 @@
+package com.doccollab.ot;
+
+import com.doccollab.storage.VersionStore;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operation-log versions: history rows of storage type {@value #OPS} whose
+ * {@code operations} attribute holds the batch that produced them, with no S3
+ * object of their own.
+ *
+ * The documents table tracks the last version that was written to S3 as
+ * {@code materializedEditNumber}; the current text is that version plus the
+ * operation batches of every later history row.
+ */
+public class OperationLog {
+
+    public static final String OPS = "ops";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String historyTable;
+    private final VersionStore versionStore;
+
+    public OperationLog(DynamoDbClient dynamoDbClient, String historyTable, VersionStore versionStore) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.historyTable = historyTable;
+        this.versionStore = versionStore;
+    }
+
+    /** Last version with an S3 object; documents predating the operation log are always fully materialized. */
+    public static int materializedEditNumber(Map<String, AttributeValue> documentItem) {
+        AttributeValue value = documentItem.containsKey("materializedEditNumber")
+                ? documentItem.get("materializedEditNumber") : documentItem.get("currentEditNumber");
+        return Integer.parseInt(value.n());
+    }
+
+    public static boolean hasPendingOperations(Map<String, AttributeValue> documentItem) {
+        return materializedEditNumber(documentItem) < Integer.parseInt(documentItem.get("currentEditNumber").n());
+    }
+
+    /**
+     * Operations stored on a history row, or null if the version was a full-content edit.
+     * Patches that were materialized keep their batch too, so later patches can still be
+     * transformed against them.
+     */
+    public static List<TextOperation> operationsOf(Map<String, AttributeValue> row) throws IOException {
+        if (!row.containsKey("operations")) {
+            return null;
+        }
+        return OperationCodec.decode(row.get("operations").s());
+    }
+
+    /** Revision a history row's version settled at; only coalesced saves raise it above 0. */
+    public static int revisionOf(Map<String, AttributeValue> row) {
+        return row.containsKey("revision") ? Integer.parseInt(row.get("revision").n()) : 0;
+    }
+
+    /** History rows with editNumber in (fromExclusive, toInclusive], ascending. */
+    public List<Map<String, AttributeValue>> readRows(String documentId, int fromExclusive, int toInclusive) {
+        List<Map<String, AttributeValue>> rows = new ArrayList<>();
+        if (toInclusive <= fromExclusive) {
+            return rows;
+        }
+
+        QueryRequest query = QueryRequest.builder()
+                .tableName(historyTable)
+                .keyConditionExpression("documentId = :docId AND editNumber BETWEEN :from AND :to")
+                .expressionAttributeValues(Map.of(
+                        ":docId", AttributeValue.builder().s(documentId).build(),
+                        ":from", AttributeValue.builder().n(String.valueOf(fromExclusive + 1)).build(),
+                        ":to", AttributeValue.builder().n(String.valueOf(toInclusive)).build()))
+                .projectionExpression("editNumber, storageType, operations, revision")
+                .scanIndexForward(true)
+                .build();
+        for (Map<String, AttributeValue> row : dynamoDbClient.queryPaginator(query).items()) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /** Rebuilds the current text of the document described by {@code documentItem}. */
+    public String readCurrent(Map<String, AttributeValue> documentItem) throws IOException {
+        String currentFile = documentItem.get("currentFile").s();
+        String currentBaseFile = documentItem.containsKey("currentBaseFile") ? documentItem.get("currentBaseFile").s() : null;
+        String materialized = versionStore.readVersion(currentFile, currentBaseFile);
+
+        if (!hasPendingOperations(documentItem)) {
+            return materialized;
+        }
+
+        String documentId = documentItem.get("documentId").s();
+        int currentEditNumber = Integer.parseInt(documentItem.get("currentEditNumber").n());
+        return replay(materialized, readRows(documentId, materializedEditNumber(documentItem), currentEditNumber));
+    }
+
+    /**
+     * Rebuilds the operation-log version described by history row {@code row}: the
+     * materialized version it follows plus every batch up to and including its own.
+     */
+    public String readVersion(String documentId, Map<String, AttributeValue> row) throws IOException {
+        String filePath = row.get("filePath").s();
+        String baseFile = row.containsKey("baseFile") ? row.get("baseFile").s() : null;
+        int editNumber = Integer.parseInt(row.get("editNumber").n());
+        int baseEditNumber = Integer.parseInt(row.get("baseEditNumber").n());
+        return replay(versionStore.readVersion(filePath, baseFile), readRows(documentId, baseEditNumber, editNumber));
+    }
+
+    /** Applies the operation batches of {@code rows}, in order, to {@code base}. */
+    public static String replay(String base, List<Map<String, AttributeValue>> rows) throws IOException {
+        PieceTable text = new PieceTable(base);
+        for (Map<String, AttributeValue> row : rows) {
+            List<TextOperation> operations = operationsOf(row);
+            if (operations == null) {
+                throw new IllegalStateException("History row " + row.get("editNumber").n() + " is not an operation-log entry");
+            }
+            for (TextOperation operation : operations) {
+                text.apply(operation);
+            }
+        }
+        return text.toString();
+    }
+}
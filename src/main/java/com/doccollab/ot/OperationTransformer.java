@@ -0,0 +1,114 @@
+package com.doccollab.ot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operational transformation for batches of {@link TextOperation}s.
+ *
+ * Operations within a batch apply in order, each against the text produced by the
+ * previous one. When a client batch was made against an older version, it is
+ * transformed against every batch committed since, so it applies to the current
+ * text with the client's intent preserved. On a tie between inserts at the same
+ * position the already-committed insert stays first.
+ */
+public final class OperationTransformer {
+
+    private OperationTransformer() {}
+
+    /**
+     * Transforms {@code incoming} so it applies after {@code committed}; both must have
+     * been made against the same text.
+     */
+    public static List<TextOperation> transform(List<TextOperation> incoming, List<TextOperation> committed) {
+        return transformPair(incoming, committed).left();
+    }
+
+    /** Two batches made against the same text, each rewritten to apply after the other. */
+    private record Transformed(List<TextOperation> left, List<TextOperation> right) {}
+
+    /** Returns {incoming', committed'}: each rewritten to apply after the other. */
+    private static Transformed transformPair(List<TextOperation> a, List<TextOperation> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return new Transformed(a, b);
+        }
+        if (a.size() == 1 && b.size() == 1) {
+            return transformSingle(a.get(0), b.get(0));
+        }
+
+        if (a.size() > 1) {
+            Transformed head = transformPair(a.subList(0, 1), b);
+            Transformed tail = transformPair(a.subList(1, a.size()), head.right());
+            return new Transformed(concat(head.left(), tail.left()), tail.right());
+        }
+
+        Transformed head = transformPair(a, b.subList(0, 1));
+        Transformed tail = transformPair(head.left(), b.subList(1, b.size()));
+        return new Transformed(tail.left(), concat(head.right(), tail.right()));
+    }
+
+    private static Transformed transformSingle(TextOperation x, TextOperation y) {
+        if (x.isInsert() && y.isInsert()) {
+            // Committed insert wins ties, so the incoming one moves right
+            if (x.getPosition() < y.getPosition()) {
+                return new Transformed(List.of(x), List.of(TextOperation.insert(y.getPosition() + x.getLength(), y.getText())));
+            }
+            return new Transformed(List.of(TextOperation.insert(x.getPosition() + y.getLength(), x.getText())), List.of(y));
+        }
+
+        if (x.isInsert()) {
+            return insertVersusDelete(x, y);
+        }
+        if (y.isInsert()) {
+            Transformed swapped = insertVersusDelete(y, x);
+            return new Transformed(swapped.right(), swapped.left());
+        }
+        return new Transformed(deleteAfterDelete(x, y), deleteAfterDelete(y, x));
+    }
+
+    /** Returns {insert', delete'} for an insert and a delete made against the same text. */
+    private static Transformed insertVersusDelete(TextOperation insert, TextOperation delete) {
+        int at = insert.getPosition();
+        int start = delete.getPosition();
+        int end = start + delete.getLength();
+
+        if (at <= start) {
+            return new Transformed(List.of(insert),
+                    List.of(TextOperation.delete(start + insert.getLength(), delete.getLength())));
+        }
+        if (at >= end) {
+            return new Transformed(List.of(TextOperation.insert(at - delete.getLength(), insert.getText())),
+                    List.of(delete));
+        }
+
+        // Insert inside the deleted range: keep the inserted text, delete around it
+        int before = at - start;
+        return new Transformed(List.of(TextOperation.insert(start, insert.getText())),
+                List.of(TextOperation.delete(start, before),
+                        TextOperation.delete(start + insert.getLength(), delete.getLength() - before)));
+    }
+
+    /** Rewrites delete {@code x} to apply after delete {@code y}. */
+    private static List<TextOperation> deleteAfterDelete(TextOperation x, TextOperation y) {
+        int xStart = x.getPosition();
+        int xEnd = xStart + x.getLength();
+        int yStart = y.getPosition();
+        int yEnd = yStart + y.getLength();
+
+        int overlap = Math.max(0, Math.min(xEnd, yEnd) - Math.max(xStart, yStart));
+        int removedBefore = Math.max(0, Math.min(xStart, yEnd) - yStart);
+        int remaining = x.getLength() - overlap;
+
+        if (remaining == 0) {
+            return List.of();
+        }
+        return List.of(TextOperation.delete(xStart - removedBefore, remaining));
+    }
+
+    private static List<TextOperation> concat(List<TextOperation> first, List<TextOperation> second) {
+        List<TextOperation> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+}
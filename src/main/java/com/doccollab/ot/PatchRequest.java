@@ -0,0 +1,35 @@
+package com.doccollab.ot;
+
+import java.util.List;
+
+/**
+ * Body of PATCH /documents/{documentId}: a batch of operations made against
+ * version {@code baseEditNumber}, revision {@code baseRevision} (0 unless coalesced saves
+ * had replaced that version).
+ */
+public class PatchRequest {
+    private final int baseEditNumber;
+    private final int baseRevision;
+    private final List<TextOperation> operations;
+    private final String editedBy;
+    private final String changeDescription;
+
+    public PatchRequest(int baseEditNumber, int baseRevision, List<TextOperation> operations, String editedBy,
+                        String changeDescription) {
+        this.baseEditNumber = baseEditNumber;
+        this.baseRevision = baseRevision;
+        this.operations = operations;
+        this.editedBy = editedBy;
+        this.changeDescription = changeDescription;
+    }
+
+    public int getBaseEditNumber() { return baseEditNumber; }
+
+    public int getBaseRevision() { return baseRevision; }
+
+    public List<TextOperation> getOperations() { return operations; }
+
+    public String getEditedBy() { return editedBy; }
+
+    public String getChangeDescription() { return changeDescription; }
+}
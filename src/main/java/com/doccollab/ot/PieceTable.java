@@ -0,0 +1,115 @@
+package com.doccollab.ot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Piece table over an immutable original text. Inserts append to a single add
+ * buffer and deletes only split or trim pieces, so a batch of edits costs time
+ * proportional to the edits and the piece count, not the document length; the
+ * text is copied once, in {@link #toString()}.
+ */
+public class PieceTable {
+
+    private static final class Piece {
+        final boolean added;
+        final int start;
+        final int length;
+
+        Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private final String original;
+    private final StringBuilder addBuffer = new StringBuilder();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+
+    public PieceTable(String original) {
+        this.original = original;
+        this.length = original.length();
+        if (!original.isEmpty()) {
+            pieces.add(new Piece(false, 0, original.length()));
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void apply(TextOperation operation) {
+        if (operation.isInsert()) {
+            insert(operation.getPosition(), operation.getText());
+        } else {
+            delete(operation.getPosition(), operation.getLength());
+        }
+    }
+
+    public void insert(int position, String text) {
+        checkRange(position, 0);
+        if (text.isEmpty()) {
+            return;
+        }
+
+        Piece inserted = new Piece(true, addBuffer.length(), text.length());
+        addBuffer.append(text);
+
+        int index = splitAt(position);
+        pieces.add(index, inserted);
+        length += text.length();
+    }
+
+    public void delete(int position, int count) {
+        checkRange(position, count);
+        if (count == 0) {
+            return;
+        }
+
+        int first = splitAt(position);
+        int last = splitAt(position + count);
+        pieces.subList(first, last).clear();
+        length -= count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(length);
+        for (Piece piece : pieces) {
+            if (piece.added) {
+                out.append(addBuffer, piece.start, piece.start + piece.length);
+            } else {
+                out.append(original, piece.start, piece.start + piece.length);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Ensures a piece boundary at {@code position} and returns the index of the piece starting there. */
+    private int splitAt(int position) {
+        int offset = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece piece = pieces.get(i);
+            if (position == offset) {
+                return i;
+            }
+            if (position < offset + piece.length) {
+                int head = position - offset;
+                pieces.set(i, new Piece(piece.added, piece.start, head));
+                pieces.add(i + 1, new Piece(piece.added, piece.start + head, piece.length - head));
+                return i + 1;
+            }
+            offset += piece.length;
+        }
+        return pieces.size();
+    }
+
+    private void checkRange(int position, int count) {
+        if (position < 0 || count < 0 || position + count > length) {
+            throw new IndexOutOfBoundsException("Operation range " + position + "+" + count
+                    + " outside document of length " + length);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.doccollab.ot;
+
+/**
+ * A single positional edit: insert {@code text} at {@code position}, or delete
+ * {@code length} characters starting at {@code position}. Positions count UTF-16
+ * code units, matching JavaScript and Java string indices.
+ */
+public final class TextOperation {
+
+    public enum Type { INSERT, DELETE }
+
+    private final Type type;
+    private final int position;
+    private final String text;
+    private final int length;
+
+    private TextOperation(Type type, int position, String text, int length) {
+        this.type = type;
+        this.position = position;
+        this.text = text;
+        this.length = length;
+    }
+
+    public static TextOperation insert(int position, String text) {
+        return new TextOperation(Type.INSERT, position, text, text.length());
+    }
+
+    public static TextOperation delete(int position, int length) {
+        return new TextOperation(Type.DELETE, position, null, length);
+    }
+
+    public Type getType() { return type; }
+
+    public boolean isInsert() { return type == Type.INSERT; }
+
+    public int getPosition() { return position; }
+
+    /** Inserted text; null for deletes. */
+    public String getText() { return text; }
+
+    /** Characters inserted or deleted. */
+    public int getLength() { return length; }
+
+    @Override
+    public String toString() {
+        return isInsert() ? "insert(" + position + ", \"" + text + "\")" : "delete(" + position + ", " + length + ")";
+    }
+}
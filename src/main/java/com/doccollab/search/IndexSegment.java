@@ -0,0 +1,143 @@
+package com.doccollab.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of one immutable index segment, over a heap or memory-mapped buffer.
+ * Nothing is decoded up front: terms are found by binary search of the term index and
+ * posting lists are decoded on demand, so opening a mapped segment costs no more than
+ * reading its header.
+ *
+ * Layout (big-endian; offsets are from the start of the segment):
+ * <pre>
+ * header      int magic, int version, int documentCount, int termCount,
+ *             int documentIndexOffset, int termIndexOffset, long totalLength
+ * documents   documentCount x int record offset, then per document:
+ *             int editNumber, int length, short+UTF-8 documentId, short+UTF-8 title
+ * terms       termCount x int record offset, sorted by unsigned UTF-8 bytes, then per term:
+ *             short+UTF-8 term, int documentFrequency, int postingsOffset
+ * postings    per term: documentFrequency x (vint ordinal gap, vint frequency)
+ * </pre>
+ */
+public final class IndexSegment {
+
+    static final int MAGIC = 0x43445358; // "CDSX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    private final ByteBuffer buffer;
+    private final int documentCount;
+    private final int termCount;
+    private final int documentIndexOffset;
+    private final int termIndexOffset;
+    private final long totalLength;
+
+    public IndexSegment(ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an index segment");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported index segment version " + buffer.getInt(4));
+        }
+        this.documentCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.documentIndexOffset = buffer.getInt(16);
+        this.termIndexOffset = buffer.getInt(20);
+        this.totalLength = buffer.getLong(24);
+    }
+
+    public int getDocumentCount() { return documentCount; }
+
+    public int getTermCount() { return termCount; }
+
+    /** Sum of the lengths of every document in the segment, live or not. */
+    public long getTotalLength() { return totalLength; }
+
+    public int getSizeBytes() { return buffer.capacity(); }
+
+    public int editNumber(int ordinal) {
+        return buffer.getInt(documentRecord(ordinal));
+    }
+
+    /** Number of terms in the document, the length used in ranking. */
+    public int length(int ordinal) {
+        return buffer.getInt(documentRecord(ordinal) + 4);
+    }
+
+    public String documentId(int ordinal) {
+        return readString(documentRecord(ordinal) + 8);
+    }
+
+    public String title(int ordinal) {
+        int idStart = documentRecord(ordinal) + 8;
+        return readString(idStart + 2 + (buffer.getShort(idStart) & 0xFFFF));
+    }
+
+    /** Ordinal of {@code term} in the term index, or -1 if no document contains it. */
+    public int findTerm(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTerm(termRecord(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String term(int termOrdinal) {
+        return readString(termRecord(termOrdinal));
+    }
+
+    public int documentFrequency(int termOrdinal) {
+        int record = termRecord(termOrdinal);
+        return buffer.getInt(record + 2 + (buffer.getShort(record) & 0xFFFF));
+    }
+
+    /**
+     * Decodes the posting list of a term into the first {@link #documentFrequency} slots of
+     * {@code ordinals} (ascending document ordinals) and {@code frequencies}.
+     */
+    public void postings(int termOrdinal, int[] ordinals, int[] frequencies) {
+        int record = termRecord(termOrdinal);
+        int fields = record + 2 + (buffer.getShort(record) & 0xFFFF);
+        PostingsCodec.decode(buffer, buffer.getInt(fields + 4), buffer.getInt(fields), ordinals, frequencies);
+    }
+
+    private int documentRecord(int ordinal) {
+        return buffer.getInt(documentIndexOffset + ordinal * 4);
+    }
+
+    private int termRecord(int termOrdinal) {
+        return buffer.getInt(termIndexOffset + termOrdinal * 4);
+    }
+
+    private String readString(int offset) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Unsigned byte order of the term stored at {@code record} against {@code key}. */
+    private int compareTerm(int record, byte[] key) {
+        int length = buffer.getShort(record) & 0xFFFF;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(buffer.get(record + 2 + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+}
@@ -0,0 +1,82 @@
+package com.doccollab.search;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Variable-byte encoding of posting lists. Each posting is the gap from the previous
+ * document ordinal followed by the term frequency, seven bits per byte with the high bit
+ * marking continuation, so the common small gaps and frequencies take one byte each.
+ */
+final class PostingsCodec {
+
+    private PostingsCodec() {}
+
+    /** Growable encoded posting list for one term; ordinals must be added in ascending order. */
+    static final class Builder {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int lastOrdinal = -1;
+        private int documentFrequency;
+
+        void add(int ordinal, int frequency) {
+            if (ordinal <= lastOrdinal) {
+                throw new IllegalArgumentException("Postings must be added in ascending order");
+            }
+            writeVInt(ordinal - lastOrdinal - 1);
+            writeVInt(frequency);
+            lastOrdinal = ordinal;
+            documentFrequency++;
+        }
+
+        int getDocumentFrequency() { return documentFrequency; }
+
+        int getSize() { return size; }
+
+        void writeTo(ByteBuffer out) {
+            out.put(bytes, 0, size);
+        }
+
+        private void writeVInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+
+    /**
+     * Decodes {@code count} postings starting at {@code offset} into {@code ordinals} and
+     * {@code frequencies}. Reads with absolute indexes, so one mapped buffer can be shared
+     * by concurrent queries.
+     */
+    static void decode(ByteBuffer buffer, int offset, int count, int[] ordinals, int[] frequencies) {
+        int position = offset;
+        int ordinal = -1;
+        for (int i = 0; i < count; i++) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(position++);
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            int frequency = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(position++);
+                frequency |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            ordinal += gap + 1;
+            ordinals[i] = ordinal;
+            frequencies[i] = frequency;
+        }
+    }
+}
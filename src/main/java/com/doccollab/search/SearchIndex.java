@@ -0,0 +1,183 @@
+package com.doccollab.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable set of segments, oldest first, searched as one index.
+ *
+ * A document re-indexed after an edit appears in a newer segment; only its newest entry
+ * is live, and older ones are skipped at query time until a merge drops them. Ranking is
+ * BM25 over the live documents.
+ */
+public final class SearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final List<IndexSegment> segments;
+    private final int[] bases;
+    private final BitSet[] live;
+    // documentId -> global ordinal of its live entry
+    private final Map<String, Integer> liveOrdinals;
+    private final double averageLength;
+
+    public SearchIndex(List<IndexSegment> segments) {
+        this.segments = List.copyOf(segments);
+        this.bases = new int[segments.size()];
+        this.live = new BitSet[segments.size()];
+        int total = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            bases[s] = total;
+            total += segments.get(s).getDocumentCount();
+        }
+
+        this.liveOrdinals = new HashMap<>();
+        long liveLength = 0;
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            IndexSegment segment = segments.get(s);
+            BitSet segmentLive = new BitSet(segment.getDocumentCount());
+            for (int ordinal = segment.getDocumentCount() - 1; ordinal >= 0; ordinal--) {
+                if (liveOrdinals.putIfAbsent(segment.documentId(ordinal), bases[s] + ordinal) == null) {
+                    segmentLive.set(ordinal);
+                    liveLength += segment.length(ordinal);
+                }
+            }
+            live[s] = segmentLive;
+        }
+        this.averageLength = liveOrdinals.isEmpty() ? 0 : (double) liveLength / liveOrdinals.size();
+    }
+
+    public static SearchIndex empty() {
+        return new SearchIndex(List.of());
+    }
+
+    public List<IndexSegment> getSegments() { return segments; }
+
+    /** Documents with a live entry. */
+    public int getDocumentCount() { return liveOrdinals.size(); }
+
+    boolean isLive(int segment, int ordinal) {
+        return live[segment].get(ordinal);
+    }
+
+    /** Edit number indexed for {@code documentId}, or 0 if it is not indexed. */
+    public int indexedEditNumber(String documentId) {
+        Integer global = liveOrdinals.get(documentId);
+        if (global == null) {
+            return 0;
+        }
+        int s = segmentOf(global);
+        return segments.get(s).editNumber(global - bases[s]);
+    }
+
+    /**
+     * Top {@code limit} documents for {@code query}, best first. Any query term may match;
+     * documents matching more, rarer terms, more often, rank higher.
+     */
+    public List<SearchResult> search(String query, int limit) {
+        Map<String, Integer> queryTerms = new LinkedHashMap<>();
+        SearchTokenizer.count(query, queryTerms);
+        if (queryTerms.isEmpty() || liveOrdinals.isEmpty()) {
+            return List.of();
+        }
+
+        int documentCount = liveOrdinals.size();
+        int totalOrdinals = bases[bases.length - 1] + segments.get(segments.size() - 1).getDocumentCount();
+        float[] scores = new float[totalOrdinals];
+        BitSet matched = new BitSet(totalOrdinals);
+
+        int[] ordinals = new int[0];
+        int[] frequencies = new int[0];
+        for (String term : queryTerms.keySet()) {
+            // Decode the term's postings in every segment first: its live document frequency sets the weight
+            List<int[]> termPostings = new ArrayList<>();
+            int documentFrequency = 0;
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                int termOrdinal = segment.findTerm(term);
+                if (termOrdinal < 0) {
+                    continue;
+                }
+                int count = segment.documentFrequency(termOrdinal);
+                if (ordinals.length < count) {
+                    ordinals = new int[count];
+                    frequencies = new int[count];
+                }
+                segment.postings(termOrdinal, ordinals, frequencies);
+                int[] livePostings = new int[count * 2];
+                int kept = 0;
+                for (int i = 0; i < count; i++) {
+                    if (live[s].get(ordinals[i])) {
+                        livePostings[kept++] = bases[s] + ordinals[i];
+                        livePostings[kept++] = frequencies[i];
+                    }
+                }
+                documentFrequency += kept / 2;
+                termPostings.add(kept == livePostings.length ? livePostings : Arrays.copyOf(livePostings, kept));
+            }
+            if (documentFrequency == 0) {
+                continue;
+            }
+
+            double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            for (int[] postings : termPostings) {
+                for (int i = 0; i < postings.length; i += 2) {
+                    int global = postings[i];
+                    int frequency = postings[i + 1];
+                    double norm = K1 * (1 - B + B * length(global) / averageLength);
+                    scores[global] += (float) (idf * frequency * (K1 + 1) / (frequency + norm));
+                    matched.set(global);
+                }
+            }
+        }
+
+        // Min-heap of the best matches so far
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1,
+                (a, b) -> a.equals(b) ? 0 : scores[a] != scores[b] ? Float.compare(scores[a], scores[b]) : Integer.compare(a, b));
+        for (int global = matched.nextSetBit(0); global >= 0; global = matched.nextSetBit(global + 1)) {
+            best.add(global);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<SearchResult> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int global = best.poll();
+            int s = segmentOf(global);
+            IndexSegment segment = segments.get(s);
+            int ordinal = global - bases[s];
+            results.add(new SearchResult(segment.documentId(ordinal), segment.title(ordinal),
+                    segment.editNumber(ordinal), scores[global]));
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private int length(int global) {
+        int s = segmentOf(global);
+        return segments.get(s).length(global - bases[s]);
+    }
+
+    private int segmentOf(int global) {
+        int low = 0;
+        int high = bases.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (bases[mid] <= global) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
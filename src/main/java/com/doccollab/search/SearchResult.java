@@ -0,0 +1,26 @@
+package com.doccollab.search;
+
+/** One ranked match: the indexed version of a document and its relevance score. */
+public final class SearchResult {
+
+    private final String documentId;
+    private final String title;
+    private final int editNumber;
+    private final double score;
+
+    public SearchResult(String documentId, String title, int editNumber, double score) {
+        this.documentId = documentId;
+        this.title = title;
+        this.editNumber = editNumber;
+        this.score = score;
+    }
+
+    public String getDocumentId() { return documentId; }
+
+    public String getTitle() { return title; }
+
+    /** Version that was indexed; later edits may not be searchable yet. */
+    public int getEditNumber() { return editNumber; }
+
+    public double getScore() { return score; }
+}
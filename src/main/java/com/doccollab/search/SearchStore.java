@@ -0,0 +1,211 @@
+package com.doccollab.search;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * S3 layout of the search index, all under {@value #PREFIX}:
+ * <ul>
+ *   <li>{@code pending/{documentId}/{editNumber}}: empty marker written by each edit
+ *       before it commits, telling the indexer which documents changed; a coalesced save
+ *       adds its revision, {@code {editNumber}.{revision}}, so it never overwrites a marker
+ *       the indexer may be about to delete</li>
+ *   <li>{@code segments/{generation}-{random}.seg}: immutable {@link IndexSegment}s</li>
+ *   <li>{@code manifest}: the live {@link SegmentManifest}, rewritten by the indexer</li>
+ * </ul>
+ *
+ * Segments never change once written, so opened ones are kept for the container's
+ * lifetime. With a local directory they are downloaded once and memory-mapped, which
+ * keeps them out of the heap; otherwise they are held as heap buffers.
+ */
+public class SearchStore {
+
+    public static final String PREFIX = "search/";
+    public static final String PENDING_PREFIX = PREFIX + "pending/";
+    public static final String SEGMENT_PREFIX = PREFIX + "segments/";
+    public static final String MANIFEST_KEY = PREFIX + "manifest";
+
+    /** Local directory segments are mapped from: Lambda's /tmp, or the server's temp dir. */
+    public static final Path DEFAULT_SEGMENT_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "collabdocs-search");
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final Path segmentDirectory;
+    private final Map<String, IndexSegment> openSegments = new ConcurrentHashMap<>();
+
+    /** @param segmentDirectory where segments are downloaded and mapped; null keeps them on the heap */
+    public SearchStore(S3Client s3Client, String bucket, Path segmentDirectory) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.segmentDirectory = segmentDirectory;
+    }
+
+    public static String pendingKey(String documentId, int editNumber) {
+        return pendingKey(documentId, editNumber, 0);
+    }
+
+    public static String pendingKey(String documentId, int editNumber, int revision) {
+        return PENDING_PREFIX + documentId + "/" + editNumber + (revision > 0 ? "." + revision : "");
+    }
+
+    /** Splits a pending marker key into its document ID and edit number; null if malformed. */
+    public static Map.Entry<String, Integer> parsePendingKey(String key) {
+        int separator = key.lastIndexOf('/');
+        if (!key.startsWith(PENDING_PREFIX) || separator <= PENDING_PREFIX.length()) {
+            return null;
+        }
+        String version = key.substring(separator + 1);
+        int revisionSeparator = version.indexOf('.');
+        try {
+            if (revisionSeparator >= 0) {
+                Integer.parseInt(version.substring(revisionSeparator + 1));
+                version = version.substring(0, revisionSeparator);
+            }
+            return Map.entry(key.substring(PENDING_PREFIX.length(), separator), Integer.parseInt(version));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Revision of a well-formed pending marker key; 0 for a marker written by a new version. */
+    public static int parsePendingRevision(String key) {
+        String version = key.substring(key.lastIndexOf('/') + 1);
+        int revisionSeparator = version.indexOf('.');
+        return revisionSeparator < 0 ? 0 : Integer.parseInt(version.substring(revisionSeparator + 1));
+    }
+
+    /** Unique per write, so a local copy can never be mistaken for another deployment's segment. */
+    public static String segmentKey(long generation) {
+        return String.format("%s%020d-%s.seg", SEGMENT_PREFIX, generation, UUID.randomUUID());
+    }
+
+    /** Records that {@code documentId} changed at {@code editNumber} and needs re-indexing. */
+    public void markPending(String documentId, int editNumber) {
+        markPending(documentId, editNumber, 0);
+    }
+
+    /** Records that a coalesced save replaced {@code editNumber} with {@code revision}. */
+    public void markPending(String documentId, int editNumber, int revision) {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(pendingKey(documentId, editNumber, revision))
+                        .build(),
+                RequestBody.fromBytes(EMPTY));
+    }
+
+    /** The current manifest, or an empty one before the first indexer run. */
+    public SegmentManifest readManifest() {
+        try {
+            return SegmentManifest.parse(s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(MANIFEST_KEY)
+                    .build()).asString(StandardCharsets.UTF_8));
+        } catch (NoSuchKeyException e) {
+            return SegmentManifest.empty();
+        }
+    }
+
+    public void writeManifest(SegmentManifest manifest) {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(MANIFEST_KEY)
+                        .build(),
+                RequestBody.fromString(manifest.format(), StandardCharsets.UTF_8));
+    }
+
+    /** Uploads a new segment and returns its manifest entry. */
+    public SegmentManifest.Entry writeSegment(long generation, SegmentWriter writer) {
+        String key = segmentKey(generation);
+        byte[] bytes = writer.toByteArray();
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .build(),
+                RequestBody.fromBytes(bytes));
+        openSegments.put(key, new IndexSegment(ByteBuffer.wrap(bytes)));
+        return new SegmentManifest.Entry(key, writer.getDocumentCount());
+    }
+
+    /**
+     * Opens every segment of {@code manifest} as one index. Segments no longer listed are
+     * released, and their local copies deleted.
+     */
+    public SearchIndex openIndex(SegmentManifest manifest) {
+        List<IndexSegment> segments = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        for (SegmentManifest.Entry entry : manifest.getSegments()) {
+            segments.add(openSegment(entry.getKey()));
+            listed.add(entry.getKey());
+        }
+        for (String key : openSegments.keySet()) {
+            if (!listed.contains(key) && openSegments.remove(key) != null && segmentDirectory != null) {
+                try {
+                    // A mapping outlives its file, so queries still using the old index are unaffected
+                    Files.deleteIfExists(localPath(key));
+                } catch (IOException e) {
+                    // Left behind in the temporary directory
+                }
+            }
+        }
+        return new SearchIndex(segments);
+    }
+
+    public IndexSegment openSegment(String key) {
+        return openSegments.computeIfAbsent(key, this::loadSegment);
+    }
+
+    private IndexSegment loadSegment(String key) {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build();
+        if (segmentDirectory == null) {
+            return new IndexSegment(ByteBuffer.wrap(s3Client.getObjectAsBytes(request).asByteArray()));
+        }
+
+        try {
+            Path path = localPath(key);
+            if (!Files.exists(path)) {
+                Files.createDirectories(segmentDirectory);
+                Path partial = Files.createTempFile(segmentDirectory, "segment", ".partial");
+                try (InputStream in = s3Client.getObject(request)) {
+                    Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new IndexSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open index segment " + key, e);
+        }
+    }
+
+    private Path localPath(String key) {
+        return segmentDirectory.resolve(key.substring(key.lastIndexOf('/') + 1));
+    }
+}
@@ -0,0 +1,71 @@
+package com.doccollab.search;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Splits text into search terms: lower-cased runs of letters and digits. Documents and
+ * queries go through the same tokenizer, so a query term matches exactly the indexed
+ * terms it spells.
+ */
+public final class SearchTokenizer {
+
+    /** Longer runs (encoded data, hashes) are skipped rather than indexed. */
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private static final int READ_BUFFER_CHARS = 8192;
+
+    private SearchTokenizer() {}
+
+    /**
+     * Adds the frequency of each term {@code reader} yields to {@code counts}.
+     *
+     * @return number of terms read, the document length used in ranking
+     */
+    public static int count(Reader reader, Map<String, Integer> counts) throws IOException {
+        int terms = 0;
+        StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+        boolean overlong = false;
+        char[] buffer = new char[READ_BUFFER_CHARS];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (Character.isLetterOrDigit(c)) {
+                    if (term.length() < MAX_TERM_LENGTH) {
+                        term.append(Character.toLowerCase(c));
+                    } else {
+                        overlong = true;
+                    }
+                } else if (term.length() > 0) {
+                    terms += add(term, overlong, counts);
+                    term.setLength(0);
+                    overlong = false;
+                }
+            }
+        }
+        if (term.length() > 0) {
+            terms += add(term, overlong, counts);
+        }
+        return terms;
+    }
+
+    /** {@link #count(Reader, Map)} for text already in memory. */
+    public static int count(String text, Map<String, Integer> counts) {
+        try {
+            return count(new StringReader(text), counts);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int add(StringBuilder term, boolean overlong, Map<String, Integer> counts) {
+        if (overlong) {
+            return 0;
+        }
+        counts.merge(term.toString(), 1, Integer::sum);
+        return 1;
+    }
+}
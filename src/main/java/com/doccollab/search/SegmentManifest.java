@@ -0,0 +1,73 @@
+package com.doccollab.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The live segment list, oldest first, and the generation that named the newest
+ * segment. Stored as plain text, one line per segment:
+ * <pre>
+ * generation 42
+ * search/segments/00000000000000000040-2f0c…e1.seg 81234
+ * search/segments/00000000000000000042-9b7d…05.seg 117
+ * </pre>
+ */
+public final class SegmentManifest {
+
+    private final long generation;
+    private final List<Entry> segments;
+
+    /** A segment object and the number of documents it holds. */
+    public static final class Entry {
+        private final String key;
+        private final int documentCount;
+
+        public Entry(String key, int documentCount) {
+            this.key = key;
+            this.documentCount = documentCount;
+        }
+
+        public String getKey() { return key; }
+
+        public int getDocumentCount() { return documentCount; }
+    }
+
+    public SegmentManifest(long generation, List<Entry> segments) {
+        this.generation = generation;
+        this.segments = List.copyOf(segments);
+    }
+
+    public static SegmentManifest empty() {
+        return new SegmentManifest(0, List.of());
+    }
+
+    public long getGeneration() { return generation; }
+
+    public List<Entry> getSegments() { return segments; }
+
+    public static SegmentManifest parse(String text) {
+        String[] lines = text.split("\n");
+        if (lines.length == 0 || !lines[0].startsWith("generation ")) {
+            throw new IllegalArgumentException("Malformed search manifest");
+        }
+        long generation = Long.parseLong(lines[0].substring("generation ".length()).trim());
+        List<Entry> segments = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.lastIndexOf(' ');
+            segments.add(new Entry(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1))));
+        }
+        return new SegmentManifest(generation, segments);
+    }
+
+    public String format() {
+        StringBuilder text = new StringBuilder("generation ").append(generation).append('\n');
+        for (Entry segment : segments) {
+            text.append(segment.key).append(' ').append(segment.documentCount).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,186 @@
+package com.doccollab.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds one immutable {@link IndexSegment} in memory. Posting lists are kept
+ * variable-byte encoded while documents are added, so the writer holds roughly the size
+ * of the finished segment rather than boxed postings.
+ */
+public final class SegmentWriter {
+
+    // Keeps each string within its two-byte length prefix, even in four-byte UTF-8
+    private static final int MAX_STORED_CHARS = 8192;
+
+    private final List<StoredDocument> documents = new ArrayList<>();
+    private final Map<String, PostingsCodec.Builder> postings = new HashMap<>();
+    private long totalLength;
+
+    private static final class StoredDocument {
+        final byte[] documentId;
+        final byte[] title;
+        final int editNumber;
+        final int length;
+
+        StoredDocument(String documentId, String title, int editNumber, int length) {
+            this.documentId = utf8(documentId);
+            this.title = utf8(title == null ? "" : title);
+            this.editNumber = editNumber;
+            this.length = length;
+        }
+    }
+
+    public int getDocumentCount() { return documents.size(); }
+
+    /** Adds a document with its term frequencies. */
+    public void addDocument(String documentId, String title, int editNumber, Map<String, Integer> termFrequencies, int length) {
+        int ordinal = addDocument(documentId, title, editNumber, length);
+        for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+            addPosting(entry.getKey(), ordinal, entry.getValue());
+        }
+    }
+
+    /**
+     * Adds a document without postings and returns its ordinal; postings follow through
+     * {@link #addPosting}, each term's in ascending ordinal order.
+     */
+    int addDocument(String documentId, String title, int editNumber, int length) {
+        documents.add(new StoredDocument(documentId, title, editNumber, length));
+        totalLength += length;
+        return documents.size() - 1;
+    }
+
+    void addPosting(String term, int ordinal, int frequency) {
+        postings.computeIfAbsent(term, t -> new PostingsCodec.Builder()).add(ordinal, frequency);
+    }
+
+    /**
+     * Merges the live documents of {@code index}, oldest segment first, into one segment.
+     * Superseded versions are dropped, which is the only way they ever leave the index.
+     */
+    public static SegmentWriter merge(SearchIndex index) {
+        SegmentWriter writer = new SegmentWriter();
+        List<IndexSegment> segments = index.getSegments();
+        int[][] remapped = new int[segments.size()][];
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            int[] mapping = new int[segment.getDocumentCount()];
+            for (int ordinal = 0; ordinal < mapping.length; ordinal++) {
+                mapping[ordinal] = index.isLive(s, ordinal)
+                        ? writer.addDocument(segment.documentId(ordinal), segment.title(ordinal),
+                                segment.editNumber(ordinal), segment.length(ordinal))
+                        : -1;
+            }
+            remapped[s] = mapping;
+        }
+
+        // Later segments only hold later ordinals, so every term's postings stay ascending
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            int[] mapping = remapped[s];
+            int[] ordinals = new int[segment.getDocumentCount()];
+            int[] frequencies = new int[segment.getDocumentCount()];
+            for (int t = 0; t < segment.getTermCount(); t++) {
+                int count = segment.documentFrequency(t);
+                segment.postings(t, ordinals, frequencies);
+                String term = null;
+                for (int i = 0; i < count; i++) {
+                    int target = mapping[ordinals[i]];
+                    if (target >= 0) {
+                        if (term == null) {
+                            term = segment.term(t);
+                        }
+                        writer.addPosting(term, target, frequencies[i]);
+                    }
+                }
+            }
+        }
+        return writer;
+    }
+
+    /** Serializes the segment in the layout {@link IndexSegment} reads. */
+    public byte[] toByteArray() {
+        byte[][] terms = new byte[postings.size()][];
+        int next = 0;
+        for (String term : postings.keySet()) {
+            terms[next++] = utf8(term);
+        }
+        Arrays.sort(terms, Arrays::compareUnsigned);
+
+        long size = IndexSegment.HEADER_BYTES + 4L * documents.size() + 4L * terms.length;
+        for (StoredDocument document : documents) {
+            size += 12 + document.documentId.length + document.title.length;
+        }
+        PostingsCodec.Builder[] termPostings = new PostingsCodec.Builder[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            termPostings[t] = postings.get(new String(terms[t], StandardCharsets.UTF_8));
+            size += 10 + terms[t].length + termPostings[t].getSize();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Index segment exceeds 2 GB");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        int documentIndexOffset = IndexSegment.HEADER_BYTES;
+        int documentsOffset = documentIndexOffset + 4 * documents.size();
+        int termIndexOffset = documentsOffset;
+        for (StoredDocument document : documents) {
+            termIndexOffset += 12 + document.documentId.length + document.title.length;
+        }
+        int termsOffset = termIndexOffset + 4 * terms.length;
+        int postingsOffset = termsOffset;
+        for (byte[] term : terms) {
+            postingsOffset += 10 + term.length;
+        }
+
+        out.putInt(IndexSegment.MAGIC)
+                .putInt(IndexSegment.VERSION)
+                .putInt(documents.size())
+                .putInt(terms.length)
+                .putInt(documentIndexOffset)
+                .putInt(termIndexOffset)
+                .putLong(totalLength);
+
+        int record = documentsOffset;
+        for (StoredDocument document : documents) {
+            out.putInt(record);
+            record += 12 + document.documentId.length + document.title.length;
+        }
+        for (StoredDocument document : documents) {
+            out.putInt(document.editNumber).putInt(document.length);
+            putString(out, document.documentId);
+            putString(out, document.title);
+        }
+
+        record = termsOffset;
+        for (byte[] term : terms) {
+            out.putInt(record);
+            record += 10 + term.length;
+        }
+        int postingsStart = postingsOffset;
+        for (int t = 0; t < terms.length; t++) {
+            putString(out, terms[t]);
+            out.putInt(termPostings[t].getDocumentFrequency()).putInt(postingsStart);
+            postingsStart += termPostings[t].getSize();
+        }
+        for (PostingsCodec.Builder builder : termPostings) {
+            builder.writeTo(out);
+        }
+        return out.array();
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        out.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static byte[] utf8(String value) {
+        String stored = value.length() > MAX_STORED_CHARS ? value.substring(0, MAX_STORED_CHARS) : value;
+        return stored.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,316 @@
+package com.doccollab.server;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.doccollab.config.ServiceConfig;
+import com.doccollab.handlers.DocumentBatchGetHandler;
+import com.doccollab.handlers.DocumentDiffHandler;
+import com.doccollab.handlers.DocumentEditHandler;
+import com.doccollab.handlers.DocumentGetHandler;
+import com.doccollab.handlers.DocumentHistoryHandler;
+import com.doccollab.handlers.DocumentPatchHandler;
+import com.doccollab.handlers.DocumentTransferHandler;
+import com.doccollab.handlers.DocumentUploadHandler;
+import com.doccollab.handlers.SearchHandler;
+import com.doccollab.utils.ResponseUtil;
+import com.doccollab.utils.StreamingResponse;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the document API over plain HTTP from a long-lived process instead of Lambda.
+ *
+ * Requests are translated into the same API Gateway events the Lambda functions receive
+ * and dispatched to one shared instance of each handler, so both deployments run the
+ * same code against the same container-wide AWS clients and their pooled connections.
+ * Each request runs on its own virtual thread on Java 21+, or on a fixed pool of
+ * {@code SERVER_THREADS} platform threads on older runtimes.
+ *
+ * Run with {@code java -cp document-collaboration-1.0.0.jar com.doccollab.server.DocumentServer};
+ * listens on {@code PORT} (default 8080).
+ */
+public class DocumentServer {
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_THREADS = 200;
+    // Idle keep-alive connections HttpURLConnection keeps per AWS endpoint (JDK default 5)
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> uploadHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> getHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> batchGetHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> editHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> patchHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> historyHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> transferHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> diffHandler;
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> searchHandler;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public DocumentServer() {
+        this(new DocumentUploadHandler(), new DocumentGetHandler(), new DocumentBatchGetHandler(),
+                new DocumentEditHandler(), new DocumentPatchHandler(), new DocumentHistoryHandler(),
+                new DocumentTransferHandler(), new DocumentDiffHandler(), new SearchHandler());
+    }
+
+    /** Server dispatching to the given handlers instead of ones backed by the container-wide clients. */
+    public DocumentServer(RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> uploadHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> getHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> batchGetHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> editHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> patchHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> historyHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> transferHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> diffHandler,
+                          RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> searchHandler) {
+        this.uploadHandler = uploadHandler;
+        this.getHandler = getHandler;
+        this.batchGetHandler = batchGetHandler;
+        this.editHandler = editHandler;
+        this.patchHandler = patchHandler;
+        this.historyHandler = historyHandler;
+        this.transferHandler = transferHandler;
+        this.diffHandler = diffHandler;
+        this.searchHandler = searchHandler;
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Must be set before the AWS clients open their first connection
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(ServiceConfig.intEnv("SERVER_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS)));
+        }
+
+        DocumentServer documentServer = new DocumentServer();
+        int port = documentServer.start(new InetSocketAddress(ServiceConfig.intEnv("PORT", DEFAULT_PORT)),
+                ServiceConfig.intEnv("SERVER_THREADS", DEFAULT_THREADS));
+        Runtime.getRuntime().addShutdownHook(new Thread(documentServer::stop, "document-server-shutdown"));
+        System.out.println("Document server listening on port " + port);
+    }
+
+    /**
+     * Starts listening on {@code address}; port 0 picks a free port.
+     *
+     * @param threads size of the platform thread pool used when virtual threads are unavailable
+     * @return the bound port
+     */
+    public synchronized int start(InetSocketAddress address, int threads) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server is already running");
+        }
+        // Headers and body go out as separate writes; without TCP_NODELAY the body waits on a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        executor = newRequestExecutor(threads);
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /** Stops accepting requests, waits briefly for in-flight ones, then releases the threads. */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * Virtual-thread-per-request executor on Java 21+, looked up reflectively so the
+     * build can keep targeting older runtimes.
+     */
+    static ExecutorService newRequestExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "document-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            APIGatewayProxyResponseEvent response;
+            try {
+                response = dispatch(exchange);
+            } catch (Exception e) {
+                response = ResponseUtil.createErrorResponse(500, e.getMessage());
+            }
+            writeResponse(exchange, response);
+        }
+    }
+
+    private APIGatewayProxyResponseEvent dispatch(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        String[] segments = path.length() > 1 ? path.substring(1).split("/", -1) : new String[0];
+
+        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler = null;
+        String documentId = null;
+        boolean pathMatched = true;
+
+        if (segments.length == 1 && segments[0].equals("upload")) {
+            handler = method.equals("POST") ? uploadHandler : null;
+        } else if (segments.length == 1 && segments[0].equals("search")) {
+            handler = method.equals("GET") ? searchHandler : null;
+        } else if (segments.length == 2 && segments[0].equals("upload") && segments[1].equals("url")) {
+            handler = method.equals("POST") ? transferHandler : null;
+        } else if (segments.length == 2 && segments[0].equals("documents") && segments[1].equals("batch")) {
+            handler = method.equals("POST") ? batchGetHandler : null;
+        } else if (segments.length >= 2 && segments.length <= 3 && segments[0].equals("documents") && !segments[1].isEmpty()) {
+            documentId = decodePathSegment(segments[1]);
+            if (documentId == null) {
+                return ResponseUtil.createErrorResponse(400, "Invalid document ID");
+            }
+            if (segments.length == 2) {
+                switch (method) {
+                    case "GET":
+                        handler = getHandler;
+                        break;
+                    case "PUT":
+                        handler = editHandler;
+                        break;
+                    case "PATCH":
+                        handler = patchHandler;
+                        break;
+                    default:
+                        break;
+                }
+            } else if (segments[2].equals("history")) {
+                handler = method.equals("GET") ? historyHandler : null;
+            } else if (segments[2].equals("diff")) {
+                handler = method.equals("GET") ? diffHandler : null;
+            } else if (segments[2].equals("upload-url")) {
+                handler = method.equals("POST") ? transferHandler : null;
+            } else {
+                pathMatched = false;
+            }
+        } else {
+            pathMatched = false;
+        }
+
+        if (!pathMatched) {
+            return ResponseUtil.createErrorResponse(404, "Not found");
+        }
+        if (method.equals("OPTIONS")) {
+            // CORS preflight, answered by API Gateway in the Lambda deployment
+            return ResponseUtil.createPreflightResponse();
+        }
+        if (handler == null) {
+            return ResponseUtil.createErrorResponse(405, "Method not allowed");
+        }
+
+        return handler.handleRequest(toEvent(exchange, method, path, documentId), new ServerContext());
+    }
+
+    private static APIGatewayProxyRequestEvent toEvent(HttpExchange exchange, String method, String path,
+                                                       String documentId) throws IOException {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setHttpMethod(method);
+        event.setPath(path);
+        event.setPathParameters(documentId != null ? Map.of("documentId", documentId) : null);
+        event.setQueryStringParameters(queryParameters(exchange.getRequestURI().getRawQuery()));
+
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey(), String.join(",", header.getValue()));
+            }
+        }
+        event.setHeaders(headers);
+
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readAllBytes();
+            event.setBody(bytes.length > 0 ? new String(bytes, StandardCharsets.UTF_8) : null);
+        }
+        return event;
+    }
+
+    /**
+     * Percent-decodes one path segment as API Gateway does; unlike form decoding, {@code +}
+     * stays a plus sign. Returns null for a malformed escape.
+     */
+    private static String decodePathSegment(String segment) {
+        try {
+            return URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Query parameters as API Gateway passes them: decoded, last value wins, null when absent. */
+    private static Map<String, String> queryParameters(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void writeResponse(HttpExchange exchange, APIGatewayProxyResponseEvent response) throws IOException {
+        Headers responseHeaders = exchange.getResponseHeaders();
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach(responseHeaders::set);
+        }
+        int status = response.getStatusCode() != null ? response.getStatusCode() : 200;
+
+        if (response instanceof StreamingResponse) {
+            // Length 0 selects chunked encoding, so rows go out as the handler produces them
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                ((StreamingResponse) response).writeTo(out);
+            }
+            return;
+        }
+
+        String body = response.getBody();
+        byte[] bytes = body == null ? new byte[0]
+                : Boolean.TRUE.equals(response.getIsBase64Encoded()) ? Base64.getDecoder().decode(body)
+                : body.getBytes(StandardCharsets.UTF_8);
+
+        // -1 announces an empty body, which 204 and 304 responses require
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.doccollab.server;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Lambda context for requests served by {@link DocumentServer}; handlers only use its
+ * logger, which writes to stderr.
+ */
+class ServerContext implements Context {
+
+    private static final LambdaLogger LOGGER = new LambdaLogger() {
+        @Override
+        public void log(String message) {
+            System.err.println(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+            log(new String(message, StandardCharsets.UTF_8));
+        }
+    };
+
+    private final String requestId = UUID.randomUUID().toString();
+
+    @Override public String getAwsRequestId() { return requestId; }
+    @Override public String getLogGroupName() { return null; }
+    @Override public String getLogStreamName() { return null; }
+    @Override public String getFunctionName() { return "document-server"; }
+    @Override public String getFunctionVersion() { return "$LATEST"; }
+    @Override public String getInvokedFunctionArn() { return null; }
+    @Override public CognitoIdentity getIdentity() { return null; }
+    @Override public ClientContext getClientContext() { return null; }
+    @Override public int getRemainingTimeInMillis() { return Integer.MAX_VALUE; }
+    @Override public int getMemoryLimitInMB() { return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024)); }
+    @Override public LambdaLogger getLogger() { return LOGGER; }
+}
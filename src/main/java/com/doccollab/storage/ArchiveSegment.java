@@ -0,0 +1,157 @@
+package com.doccollab.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One object packing many stored version objects (snapshots and deltas) of a document.
+ *
+ * Format: the entries back to back, each deflated on its own, then a footer indexing
+ * them: per entry its original key (two-byte length, UTF-8), long offset, int compressed
+ * length and int raw length; then int entry count, long footer offset and magic "CDA1".
+ * Readers never need the footer: a history row points at its entry through a locator,
+ * {@code {segment key}@{offset}+{length}}, which a single ranged GET resolves. The footer
+ * keeps a segment self-describing, so its contents can be checked or restored without
+ * the table.
+ */
+public final class ArchiveSegment {
+
+    public static final String PREFIX = "archives/";
+
+    static final int MAGIC = 0x43444131;
+
+    private ArchiveSegment() {}
+
+    /** Fresh segment key for versions of a document starting at {@code firstEditNumber}. */
+    public static String segmentKey(String documentId, int firstEditNumber) {
+        return PREFIX + documentId + "/" + firstEditNumber + "-" + UUID.randomUUID().toString().substring(0, 8) + ".pack";
+    }
+
+    public static boolean isLocator(String key) {
+        return key != null && key.startsWith(PREFIX) && key.lastIndexOf('@') > 0;
+    }
+
+    /** Segment object a locator points into. */
+    public static String segmentOf(String locator) {
+        return locator.substring(0, locator.lastIndexOf('@'));
+    }
+
+    /** Inclusive HTTP byte range of the entry a locator points at. */
+    static String rangeOf(String locator) {
+        String position = locator.substring(locator.lastIndexOf('@') + 1);
+        int separator = position.indexOf('+');
+        long offset = Long.parseLong(position.substring(0, separator));
+        long length = Long.parseLong(position.substring(separator + 1));
+        return "bytes=" + offset + "-" + (offset + length - 1);
+    }
+
+    /** Original bytes of an entry read through its locator's range. */
+    static byte[] inflate(byte[] entry) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(entry);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(entry.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated archive entry");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt archive entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Assembles one segment in memory; identical objects are stored once. */
+    public static final class Builder {
+
+        private final String segmentKey;
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        private final Map<String, long[]> index = new LinkedHashMap<>();
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final byte[] buffer = new byte[64 * 1024];
+        private long rawBytes;
+
+        public Builder(String segmentKey) {
+            this.segmentKey = segmentKey;
+        }
+
+        public String getSegmentKey() { return segmentKey; }
+
+        public boolean contains(String key) {
+            return index.containsKey(key);
+        }
+
+        /** Entries added so far. */
+        public int getEntryCount() { return index.size(); }
+
+        /** Bytes of the entries as stored, before compression. */
+        public long getRawBytes() { return rawBytes; }
+
+        /** Compressed bytes written so far, excluding the footer. */
+        public long getSize() { return entries.size(); }
+
+        /** Adds the stored object {@code key} with body {@code data}, unless already present. */
+        public void add(String key, byte[] data) {
+            if (index.containsKey(key)) {
+                return;
+            }
+            long offset = entries.size();
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                entries.write(buffer, 0, deflater.deflate(buffer));
+            }
+            index.put(key, new long[] {offset, entries.size() - offset, data.length});
+            rawBytes += data.length;
+        }
+
+        /** Locator of an added object, for the rows that referenced {@code key}. */
+        public String locator(String key) {
+            long[] entry = index.get(key);
+            if (entry == null) {
+                throw new IllegalArgumentException("Not in segment: " + key);
+            }
+            return segmentKey + "@" + entry[0] + "+" + entry[1];
+        }
+
+        /** Appends the footer and returns the finished segment; nothing can be added afterwards. */
+        public byte[] toByteArray() {
+            deflater.end();
+            List<byte[]> keys = new ArrayList<>(index.size());
+            int footerSize = 16;
+            for (String key : index.keySet()) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                keys.add(bytes);
+                footerSize += 2 + bytes.length + 16;
+            }
+
+            long footerOffset = entries.size();
+            ByteBuffer footer = ByteBuffer.allocate(footerSize);
+            int next = 0;
+            for (long[] entry : index.values()) {
+                byte[] key = keys.get(next++);
+                footer.putShort((short) key.length).put(key)
+                        .putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2]);
+            }
+            footer.putInt(index.size()).putLong(footerOffset).putInt(MAGIC);
+            entries.write(footer.array(), 0, footer.capacity());
+            return entries.toByteArray();
+        }
+    }
+}
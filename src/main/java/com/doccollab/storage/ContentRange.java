@@ -0,0 +1,65 @@
+package com.doccollab.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A byte range of a document version, aligned to whole UTF-8 characters.
+ */
+public class ContentRange {
+    private final byte[] bytes;
+    private final long offset;
+    private final long totalLength;
+
+    public ContentRange(byte[] bytes, long offset, long totalLength) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.totalLength = totalLength;
+    }
+
+    public String getContent() { return new String(bytes, StandardCharsets.UTF_8); }
+
+    public long getOffset() { return offset; }
+
+    public int getLength() { return bytes.length; }
+
+    /** Offset to request for the following page; equals the total length at the end. */
+    public long getNextOffset() { return offset + bytes.length; }
+
+    public long getTotalLength() { return totalLength; }
+
+    /** The page of a whole document held in memory, such as a version rebuilt from its operations. */
+    public static ContentRange slice(byte[] content, long offset, int length) {
+        int from = (int) Math.min(offset, content.length);
+        int to = (int) Math.min((long) from + length, content.length);
+        return aligned(Arrays.copyOfRange(content, from, to), offset, content.length);
+    }
+
+    /** Trims bytes read at {@code offset} to whole characters. */
+    static ContentRange aligned(byte[] bytes, long offset, long totalLength) {
+        // Skip a partial character at the start and hold back one cut off at the end
+        int start = 0;
+        while (offset > 0 && start < bytes.length && (bytes[start] & 0xC0) == 0x80) {
+            start++;
+        }
+        int end = bytes.length;
+        if (offset + bytes.length < totalLength) {
+            int lead = end - 1;
+            while (lead > start && (bytes[lead] & 0xC0) == 0x80) {
+                lead--;
+            }
+            if (lead >= start && end - lead < utf8Length(bytes[lead])) {
+                end = lead;
+            }
+        }
+
+        return new ContentRange(Arrays.copyOfRange(bytes, start, end), offset + start, totalLength);
+    }
+
+    private static int utf8Length(byte lead) {
+        if ((lead & 0x80) == 0) return 1;
+        if ((lead & 0xE0) == 0xC0) return 2;
+        if ((lead & 0xF0) == 0xE0) return 3;
+        return 4;
+    }
+}
@@ -0,0 +1,214 @@
+package com.doccollab.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary delta between two byte arrays.
+ *
+ * Format: magic "CD1", varint target length, then a sequence of ops:
+ * ADD (0, varint length, raw bytes) or COPY (1, varint base offset, varint length).
+ * Matching uses a rolling hash over fixed-size blocks of the base, so small
+ * edits anywhere in a large document produce a delta proportional to the edit.
+ */
+public final class DeltaCodec {
+
+    private static final byte[] MAGIC = {'C', 'D', '1'};
+    private static final int BLOCK_SIZE = 16;
+    private static final int HASH_PRIME = 31;
+    private static final int OP_ADD = 0;
+    private static final int OP_COPY = 1;
+
+    private DeltaCodec() {}
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC, 0, MAGIC.length);
+        writeVarint(out, target.length);
+
+        // Common prefix and suffix cover the usual single-region edit cheaply
+        int prefix = 0;
+        int maxCommon = Math.min(base.length, target.length);
+        while (prefix < maxCommon && base[prefix] == target[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && base[base.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        if (prefix > 0) {
+            writeCopy(out, 0, prefix);
+        }
+        encodeMiddle(out, base, target, prefix, target.length - suffix);
+        if (suffix > 0) {
+            writeCopy(out, base.length - suffix, suffix);
+        }
+
+        return out.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) {
+        if (!isDelta(delta)) {
+            throw new IllegalArgumentException("Not a delta");
+        }
+        int[] pos = {MAGIC.length};
+        int targetLength = readVarint(delta, pos);
+        byte[] target = new byte[targetLength];
+        int written = 0;
+
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == OP_ADD) {
+                int length = readVarint(delta, pos);
+                checkRange(pos[0], length, delta.length);
+                checkRange(written, length, targetLength);
+                System.arraycopy(delta, pos[0], target, written, length);
+                pos[0] += length;
+                written += length;
+            } else if (op == OP_COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                checkRange(offset, length, base.length);
+                checkRange(written, length, targetLength);
+                System.arraycopy(base, offset, target, written, length);
+                written += length;
+            } else {
+                throw new IllegalArgumentException("Unknown delta op: " + op);
+            }
+        }
+
+        if (written != targetLength) {
+            throw new IllegalArgumentException("Delta is truncated");
+        }
+        return target;
+    }
+
+    public static boolean isDelta(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void encodeMiddle(ByteArrayOutputStream out, byte[] base, byte[] target, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            index.putIfAbsent(hash(base, offset), offset);
+        }
+
+        int pendingStart = start;
+        int i = start;
+        int power = 1;
+        for (int k = 1; k < BLOCK_SIZE; k++) {
+            power *= HASH_PRIME;
+        }
+        int h = i + BLOCK_SIZE <= end ? hash(target, i) : 0;
+
+        while (i + BLOCK_SIZE <= end) {
+            Integer candidate = index.get(h);
+            if (candidate != null && regionEquals(base, candidate, target, i, BLOCK_SIZE)) {
+                int baseOffset = candidate;
+                int length = BLOCK_SIZE;
+                while (baseOffset + length < base.length && i + length < end
+                        && base[baseOffset + length] == target[i + length]) {
+                    length++;
+                }
+                while (i > pendingStart && baseOffset > 0 && base[baseOffset - 1] == target[i - 1]) {
+                    i--;
+                    baseOffset--;
+                    length++;
+                }
+
+                writeAdd(out, target, pendingStart, i - pendingStart);
+                writeCopy(out, baseOffset, length);
+                i += length;
+                pendingStart = i;
+                if (i + BLOCK_SIZE <= end) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+
+            if (i + BLOCK_SIZE < end) {
+                h = (h - target[i] * power) * HASH_PRIME + target[i + BLOCK_SIZE];
+            }
+            i++;
+        }
+
+        writeAdd(out, target, pendingStart, end - pendingStart);
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            h = h * HASH_PRIME + data[offset + k];
+        }
+        return h;
+    }
+
+    private static boolean regionEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            if (a[aOffset + k] != b[bOffset + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeAdd(ByteArrayOutputStream out, byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        out.write(OP_ADD);
+        writeVarint(out, length);
+        out.write(data, offset, length);
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int length) {
+        out.write(OP_COPY);
+        writeVarint(out, offset);
+        writeVarint(out, length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= data.length || shift > 28) {
+                throw new IllegalArgumentException("Malformed delta varint");
+            }
+            int b = data[pos[0]++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static void checkRange(int offset, int length, int limit) {
+        if (offset < 0 || length < 0 || offset + length > limit) {
+            throw new IllegalArgumentException("Delta op out of range");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.doccollab.storage;
+
+/**
+ * Where and how a single document version was written to S3.
+ */
+public class StoredVersion {
+    private final String filePath;
+    private final String storageType;
+    private final String baseFile;
+    private final long size;
+    private final long contentLength;
+
+    public StoredVersion(String filePath, String storageType, String baseFile, long size, long contentLength) {
+        this.filePath = filePath;
+        this.storageType = storageType;
+        this.baseFile = baseFile;
+        this.size = size;
+        this.contentLength = contentLength;
+    }
+
+    public String getFilePath() { return filePath; }
+
+    public String getStorageType() { return storageType; }
+
+    /** Snapshot this version is rebuilt from; equals {@link #getFilePath()} for snapshots. */
+    public String getBaseFile() { return baseFile; }
+
+    /** Bytes actually written to S3 for this version. */
+    public long getSize() { return size; }
+
+    /** Length in bytes of the full version content. */
+    public long getContentLength() { return contentLength; }
+
+    public boolean isSnapshot() { return VersionStore.SNAPSHOT.equals(storageType); }
+}
@@ -0,0 +1,50 @@
+package com.doccollab.storage;
+
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.time.Duration;
+
+/**
+ * Presigned URLs that let clients move large document bodies to and from S3
+ * directly, so the bytes never pass through Lambda memory.
+ */
+public class TransferUrls {
+
+    public static final Duration EXPIRY = Duration.ofMinutes(15);
+
+    private final S3Presigner presigner;
+    private final String bucket;
+
+    public TransferUrls(S3Presigner presigner, String bucket) {
+        this.presigner = presigner;
+        this.bucket = bucket;
+    }
+
+    /** URL for a single PUT of exactly {@code contentLength} bytes to {@code key}. */
+    public String uploadUrl(String key, long contentLength) {
+        return presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(EXPIRY)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentLength(contentLength)
+                        .contentType("text/plain; charset=utf-8")
+                        .build())
+                .build()).url().toString();
+    }
+
+    /** URL for reading {@code key}; S3 honours Range headers on it for paging. */
+    public String downloadUrl(String key) {
+        return presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(EXPIRY)
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .build())
+                .build()).url().toString();
+    }
+}
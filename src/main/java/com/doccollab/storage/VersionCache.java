@@ -0,0 +1,76 @@
+package com.doccollab.storage;
+
+import com.doccollab.config.ServiceConfig;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache of S3 version objects, keyed by object key.
+ *
+ * Only safe because version keys are immutable: a key is never rewritten with
+ * different content once committed, so entries never need invalidation.
+ */
+public class VersionCache {
+
+    private static final VersionCache SHARED = ServiceConfig.fromEnv().getVersionCacheBytes() > 0
+            ? new VersionCache(ServiceConfig.fromEnv().getVersionCacheBytes()) : null;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VersionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        // Keep one huge document from flushing everything else
+        this.maxEntryBytes = maxBytes / 4;
+    }
+
+    /** Container-wide cache, or null when disabled by configuration. */
+    public static VersionCache shared() {
+        return SHARED;
+    }
+
+    public byte[] get(String key) {
+        byte[] value;
+        synchronized (this) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    public void put(String key, byte[] value) {
+        if (value.length > maxEntryBytes) {
+            return;
+        }
+        synchronized (this) {
+            byte[] previous = entries.put(key, value);
+            currentBytes += value.length - (previous == null ? 0 : previous.length);
+
+            Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && eldest.hasNext()) {
+                currentBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+
+    public long getMisses() { return misses.get(); }
+
+    public synchronized long getSizeBytes() { return currentBytes; }
+
+    public synchronized int getEntryCount() { return entries.size(); }
+}
@@ -0,0 +1,351 @@
+package com.doccollab.storage;
+
+import com.doccollab.metrics.Metrics;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Stores document versions as a full snapshot every {@code snapshotInterval} versions
+ * and as a binary delta against that snapshot in between.
+ *
+ * Deltas are always taken against the snapshot, never against the previous delta,
+ * so any version (including the current one) is rebuilt from at most one snapshot
+ * plus one delta. Versions written before this layout existed are plain snapshots.
+ *
+ * Snapshots and deltas live under {@code blobs/} keyed by the SHA-256 of their bytes and
+ * may be shared between versions and documents. Nothing here deletes them: objects no
+ * longer referenced by any record are removed by {@code BlobCleanupHandler}.
+ *
+ * Old history rows may instead point into an {@link ArchiveSegment}; every read here
+ * accepts such a locator wherever it accepts an object key.
+ */
+public class VersionStore {
+
+    public static final String SNAPSHOT = "snapshot";
+    public static final String DELTA = "delta";
+    public static final String BLOB_PREFIX = "blobs/";
+
+    /**
+     * An existing object written this recently is reused without a PUT; an older one is
+     * rewritten, which restarts its cleanup grace period before a new record references it.
+     */
+    public static final Duration REUSE_WINDOW = Duration.ofHours(1);
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final int snapshotInterval;
+    private final VersionCache cache;
+
+    public VersionStore(S3Client s3Client, String bucket, int snapshotInterval) {
+        this(s3Client, bucket, snapshotInterval, null);
+    }
+
+    /**
+     * @param cache in-container cache for version objects, or null to always read from S3
+     */
+    public VersionStore(S3Client s3Client, String bucket, int snapshotInterval, VersionCache cache) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshotInterval must be at least 1");
+        }
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.snapshotInterval = snapshotInterval;
+        this.cache = cache;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Content-addressed key for a stored object body. Identical bodies share one key,
+     * so racing writers can only ever write the same bytes to it.
+     */
+    public static String blobKey(byte[] data) {
+        MessageDigest digest = newBlobDigest();
+        digest.update(data);
+        return blobKey(digest);
+    }
+
+    /** Digest to feed a body through piece by piece, for {@link #blobKey(MessageDigest)}. */
+    public static MessageDigest newBlobDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /** Content-addressed key for a body already fed through {@code digest}; completes the digest. */
+    public static String blobKey(MessageDigest digest) {
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder(BLOB_PREFIX.length() + hash.length * 2).append(BLOB_PREFIX);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /** Whether {@code editNumber} starts a new snapshot group. */
+    public boolean isSnapshotEdit(int editNumber) {
+        return (editNumber - 1) % snapshotInterval == 0;
+    }
+
+    /** First edit number of the snapshot group {@code editNumber} belongs to. */
+    public int snapshotGroupStart(int editNumber) {
+        return ((editNumber - 1) / snapshotInterval) * snapshotInterval + 1;
+    }
+
+    /**
+     * Writes {@code content} as version {@code editNumber}. Objects are stored under their
+     * content hash, so the write is skipped when it would only repeat a committed object or
+     * one written within {@link #REUSE_WINDOW}.
+     *
+     * @param baseFile snapshot the previous version was based on, or null to force a snapshot
+     * @param currentFile object of the version being replaced, or null if not known
+     */
+    public StoredVersion writeVersion(int editNumber, String content, String baseFile, String currentFile) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        if (baseFile != null && !isSnapshotEdit(editNumber)) {
+            byte[] delta = DeltaCodec.encode(readObject(baseFile), bytes);
+
+            // A rewrite of most of the document is cheaper to keep as the next base
+            if (delta.length < bytes.length) {
+                String key = blobKey(delta);
+                // Deltas are deterministic, so an unchanged save against the same base repeats the current object
+                if (!key.equals(currentFile)) {
+                    storeObject(key, delta);
+                }
+                return new StoredVersion(key, DELTA, baseFile, delta.length, bytes.length);
+            }
+        }
+
+        String key = blobKey(bytes);
+        if (!key.equals(baseFile) && !key.equals(currentFile)) {
+            storeObject(key, bytes);
+        }
+        return new StoredVersion(key, SNAPSHOT, key, bytes.length, bytes.length);
+    }
+
+    /** Key a client uploads a large version to directly, before committing it. */
+    public static String newUploadKey(String documentId) {
+        String token = UUID.randomUUID().toString().substring(0, 8);
+        return "documents/" + documentId + "-upload-" + token + ".txt";
+    }
+
+    public static boolean isUploadKeyFor(String documentId, String key) {
+        return key.startsWith("documents/" + documentId + "-upload-") && !key.contains("..");
+    }
+
+    /**
+     * Adopts an object the client uploaded directly as a snapshot version. The body is
+     * hashed as it streams past, never held whole, then copied within S3 to its
+     * content-addressed key, where the presigned URL that wrote the upload cannot reach it.
+     * The copy only succeeds if the upload is still the object that was hashed.
+     *
+     * @throws NoSuchKeyException if nothing was uploaded under {@code key}
+     */
+    public StoredVersion adoptUpload(String key) {
+        MessageDigest digest = newBlobDigest();
+        GetObjectResponse upload;
+        try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build())) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+            upload = in.response();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long length = upload.contentLength();
+        Metrics.current().recordSize("ObjectReadBytes", length);
+
+        String blobKey = blobKey(digest);
+        if (isRecentlyWritten(blobKey)) {
+            Metrics.current().count("ReusedObjects", 1);
+        } else {
+            s3Client.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket)
+                    .sourceKey(key)
+                    .copySourceIfMatch(upload.eTag())
+                    .destinationBucket(bucket)
+                    .destinationKey(blobKey)
+                    .build());
+        }
+        return new StoredVersion(blobKey, SNAPSHOT, blobKey, length, length);
+    }
+
+    /**
+     * Deletes an upload once the version adopted from it is committed. Left behind, it is
+     * swept by {@code BlobCleanupHandler} like any unreferenced object.
+     */
+    public void discardUpload(String key) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build());
+    }
+
+    /**
+     * Rebuilds the version stored at {@code filePath}.
+     *
+     * @param baseFile snapshot recorded alongside the version; may be null for snapshots
+     */
+    public String readVersion(String filePath, String baseFile) {
+        return new String(readVersionBytes(filePath, baseFile), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readVersionBytes(String filePath, String baseFile) {
+        byte[] data = readObject(filePath);
+        if (baseFile == null || baseFile.equals(filePath) || !DeltaCodec.isDelta(data)) {
+            return data;
+        }
+        return DeltaCodec.apply(readObject(baseFile), data);
+    }
+
+    /**
+     * Opens the version stored at {@code filePath} for streaming. A snapshot that is not
+     * cached is streamed from S3 without buffering it; a delta is rebuilt in memory.
+     *
+     * @param baseFile snapshot recorded alongside the version; may be null for snapshots
+     */
+    public InputStream openVersion(String filePath, String baseFile) {
+        if ((baseFile != null && !baseFile.equals(filePath)) || ArchiveSegment.isLocator(filePath)) {
+            return new ByteArrayInputStream(readVersionBytes(filePath, baseFile));
+        }
+        byte[] cached = cache == null ? null : cache.get(filePath);
+        if (cached != null) {
+            Metrics.current().count("VersionCacheHits", 1);
+            return new ByteArrayInputStream(cached);
+        }
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(filePath)
+                .build());
+    }
+
+    /**
+     * Reads up to {@code length} bytes of a version starting at {@code offset}. Snapshots
+     * use a ranged GET so only the requested bytes leave S3. The range is narrowed to
+     * whole UTF-8 characters so each page decodes cleanly on its own.
+     */
+    public ContentRange readVersionRange(String filePath, String baseFile, long offset, int length) {
+        if ((baseFile == null || baseFile.equals(filePath)) && !ArchiveSegment.isLocator(filePath)) {
+            ResponseBytes<GetObjectResponse> response;
+            try {
+                response = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(filePath)
+                        .range("bytes=" + offset + "-" + (offset + length - 1))
+                        .build());
+            } catch (S3Exception e) {
+                if (e.statusCode() == 416) {
+                    // Offset at or past the end of the object
+                    return new ContentRange(new byte[0], offset, offset);
+                }
+                throw e;
+            }
+            byte[] bytes = response.asByteArray();
+            String contentRange = response.response().contentRange();
+            long totalLength = contentRange != null && contentRange.contains("/")
+                    ? Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1))
+                    : offset + bytes.length;
+            return ContentRange.aligned(bytes, offset, totalLength);
+        }
+        return ContentRange.slice(readVersionBytes(filePath, baseFile), offset, length);
+    }
+
+    /**
+     * Bytes of one stored object as written: a snapshot, a delta or an archived entry,
+     * which is fetched with a ranged GET on its segment and inflated.
+     */
+    public byte[] readObject(String key) {
+        Metrics metrics = Metrics.current();
+        byte[] cached = cache == null ? null : cache.get(key);
+        if (cached != null) {
+            metrics.count("VersionCacheHits", 1);
+            return cached;
+        }
+        if (cache != null) {
+            metrics.count("VersionCacheMisses", 1);
+        }
+
+        byte[] data;
+        if (ArchiveSegment.isLocator(key)) {
+            byte[] entry = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(ArchiveSegment.segmentOf(key))
+                    .range(ArchiveSegment.rangeOf(key))
+                    .build()).asByteArray();
+            metrics.recordSize("ObjectReadBytes", entry.length);
+            metrics.count("ArchiveReads", 1);
+            data = ArchiveSegment.inflate(entry);
+        } else {
+            data = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build()).asByteArray();
+            metrics.recordSize("ObjectReadBytes", data.length);
+        }
+        if (cache != null) {
+            cache.put(key, data);
+        }
+        return data;
+    }
+
+    /** Writes a content-addressed object unless a recent copy is already stored. */
+    private void storeObject(String key, byte[] bytes) {
+        if (isRecentlyWritten(key)) {
+            Metrics.current().count("ReusedObjects", 1);
+        } else {
+            Metrics.current().recordSize("ObjectWriteBytes", bytes.length);
+            s3Client.putObject(
+                    PutObjectRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .build(),
+                    RequestBody.fromBytes(bytes)
+            );
+        }
+        // Snapshots are read back as the base of later deltas
+        if (cache != null) {
+            cache.put(key, bytes);
+        }
+    }
+
+    private boolean isRecentlyWritten(String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build()).lastModified().isAfter(Instant.now().minus(REUSE_WINDOW));
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.doccollab.utils;
+
+import java.util.Map;
+
+public class ETagUtil {
+
+    /** Strong ETag for a document version as first written. */
+    public static String format(String documentId, int editNumber) {
+        return format(documentId, editNumber, 0);
+    }
+
+    /**
+     * Strong ETag for one revision of a document version. A coalesced save replaces the
+     * content of the version it joins, so each replacement gets its own revision.
+     */
+    public static String format(String documentId, int editNumber, int revision) {
+        return "\"" + documentId + "-v" + editNumber + (revision > 0 ? "." + revision : "") + "\"";
+    }
+
+    /**
+     * Parses an If-Match style value into an edit number. Accepts the ETag returned by
+     * {@link #format} as well as a bare edit number, quoted or not.
+     *
+     * @return the edit number, or null if the value is absent or malformed
+     */
+    public static Integer parseEditNumber(String documentId, String value) {
+        int[] version = parseVersion(documentId, value);
+        return version == null ? null : version[0];
+    }
+
+    /**
+     * Revision named by an If-Match style value: the suffix of a coalesced version's ETag,
+     * and 0 for any other ETag or a bare edit number, so a client that never saw a
+     * coalesced save cannot overwrite it.
+     *
+     * @return the revision, or null if the value is absent or malformed
+     */
+    public static Integer parseRevision(String documentId, String value) {
+        int[] version = parseVersion(documentId, value);
+        return version == null ? null : version[1];
+    }
+
+    /** Edit number and revision of a tag, the revision 0 when unspecified; null if malformed. */
+    private static int[] parseVersion(String documentId, String value) {
+        if (value == null) {
+            return null;
+        }
+        String tag = value.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        String prefix = documentId + "-v";
+        if (tag.startsWith(prefix)) {
+            tag = tag.substring(prefix.length());
+        }
+        int separator = tag.indexOf('.');
+        try {
+            if (separator < 0) {
+                return new int[] {Integer.parseInt(tag), 0};
+            }
+            return new int[] {Integer.parseInt(tag.substring(0, separator)), Integer.parseInt(tag.substring(separator + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Whether an If-None-Match value (a list of tags or "*") matches {@code etag}. */
+    public static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Case-insensitive header lookup; API Gateway passes headers through as sent. */
+    public static String getHeader(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,142 @@
+package com.doccollab.utils;
+
+import com.doccollab.models.Document;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming JSON reads and writes on top of Jackson's core parser/generator.
+ *
+ * Avoids building a JsonNode tree or an intermediate Map for request and response
+ * bodies, which matters when {@code content} is several megabytes.
+ */
+public final class JsonCodec {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private JsonCodec() {}
+
+    /** Writes one JSON value; used to stream a response body straight from typed data. */
+    public interface BodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Extracts the named top-level scalar fields of a JSON object as text.
+     * Other fields, including nested objects and arrays, are skipped without being
+     * materialized. Absent and null fields are missing from the result.
+     */
+    public static Map<String, String> readFields(String json, Set<String> fields) throws IOException {
+        if (json == null) {
+            throw new IOException("Request body is required");
+        }
+
+        Map<String, String> values = new HashMap<>();
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Request body must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (value != JsonToken.VALUE_NULL && fields.contains(name)) {
+                    values.put(name, parser.getText());
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads the named top-level array of strings, or null if the field is absent.
+     * Everything else in the object is skipped.
+     */
+    public static List<String> readStringArray(String json, String field, int maxItems) throws IOException {
+        if (json == null) {
+            throw new IOException("Request body is required");
+        }
+
+        List<String> items = null;
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Request body must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (name.equals(field) && value == JsonToken.START_ARRAY) {
+                    items = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                            throw new IOException(field + " must be an array of strings");
+                        }
+                        if (items.size() == maxItems) {
+                            throw new IOException(field + " may contain at most " + maxItems + " items");
+                        }
+                        items.add(parser.getText());
+                    }
+                } else if (name.equals(field) && value != JsonToken.VALUE_NULL) {
+                    throw new IOException(field + " must be an array of strings");
+                } else if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return items;
+    }
+
+    /** Writes the public metadata fields of a document into the current object. */
+    public static void writeDocumentFields(JsonGenerator generator, Document document) throws IOException {
+        generator.writeStringField("documentId", document.getDocumentId());
+        generator.writeStringField("title", document.getTitle());
+        generator.writeNumberField("currentEditNumber", document.getCurrentEditNumber());
+        generator.writeStringField("createdAt", document.getCreatedAt());
+        generator.writeStringField("lastModified", document.getLastModified());
+    }
+
+    /**
+     * Serializes a body produced by {@code writer}.
+     *
+     * @param sizeHint expected serialized length, so large bodies are not regrown and copied
+     */
+    public static String write(BodyWriter writer, int sizeHint) throws IOException {
+        StringWriter out = new StringWriter(Math.max(sizeHint, 64));
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            writer.write(generator);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Streams newline-delimited JSON to {@code out}: each root value {@code writer} emits
+     * becomes one line, written out as the generator's buffer fills.
+     */
+    public static void writeLines(BodyWriter writer, OutputStream out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            writer.write(generator);
+            if (generator.getOutputContext().getEntryCount() > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
@@ -3,29 +3,88 @@ package com.doccollab.utils;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 public class ResponseUtil {
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    public static APIGatewayProxyResponseEvent createResponse(int statusCode, Object body) {
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Content-Type", "application/json");
-        headers.put("Access-Control-Allow-Origin", "*");
-        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+    // Shared by every response; only copied when a handler adds its own headers
+    private static final Map<String, String> DEFAULT_HEADERS = Map.of(
+            "Content-Type", "application/json",
+            "Access-Control-Allow-Origin", "*",
+            "Access-Control-Allow-Methods", "GET, POST, PUT, PATCH, DELETE, OPTIONS",
+            "Access-Control-Allow-Headers", "Content-Type, Authorization, If-Match, If-None-Match",
+            "Access-Control-Expose-Headers", "ETag");
 
-        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
-        response.setStatusCode(statusCode);
-        response.setHeaders(headers);
+    private static final Map<String, String> NOT_MODIFIED_HEADERS = Map.of(
+            "Access-Control-Allow-Origin", "*",
+            "Access-Control-Expose-Headers", "ETag");
 
+    public static APIGatewayProxyResponseEvent createResponse(int statusCode, Object body) {
+        return createResponse(statusCode, body, Map.of());
+    }
+
+    public static APIGatewayProxyResponseEvent createResponse(int statusCode, Object body, Map<String, String> extraHeaders) {
+        String json;
         try {
-            response.setBody(objectMapper.writeValueAsString(body));
+            json = objectMapper.writeValueAsString(body);
         } catch (Exception e) {
-            response.setBody("{\"error\": \"Failed to serialize response\"}");
+            json = "{\"error\": \"Failed to serialize response\"}";
         }
+        return buildResponse(statusCode, json, withDefaults(DEFAULT_HEADERS, extraHeaders));
+    }
 
+    /**
+     * Streams the body straight to JSON with {@link JsonCodec}, skipping the intermediate Map.
+     *
+     * @param sizeHint expected body length in characters
+     */
+    public static APIGatewayProxyResponseEvent createJsonResponse(int statusCode, JsonCodec.BodyWriter body,
+                                                                  int sizeHint, Map<String, String> extraHeaders)
+            throws IOException {
+        // Failures propagate: the writer may still be reading from DynamoDB or S3
+        String json = JsonCodec.write(body, sizeHint);
+        return buildResponse(statusCode, json, withDefaults(DEFAULT_HEADERS, extraHeaders));
+    }
+
+    /** Plain-text body of the given content type, with the usual CORS headers. */
+    public static APIGatewayProxyResponseEvent createTextResponse(int statusCode, String body, String contentType,
+                                                                  Map<String, String> extraHeaders) {
+        Map<String, String> headers = new HashMap<>(DEFAULT_HEADERS);
+        headers.put("Content-Type", contentType);
+        headers.putAll(extraHeaders);
+        return buildResponse(statusCode, body, headers);
+    }
+
+    /**
+     * Newline-delimited JSON body written by {@code rows} as it is sent, one root value per
+     * line; see {@link StreamingResponse}.
+     */
+    public static APIGatewayProxyResponseEvent createStreamingResponse(int statusCode, JsonCodec.BodyWriter rows,
+                                                                       Map<String, String> extraHeaders) {
+        StreamingResponse response = new StreamingResponse(rows);
+        Map<String, String> headers = new HashMap<>(DEFAULT_HEADERS);
+        headers.put("Content-Type", "application/x-ndjson");
+        headers.putAll(extraHeaders);
+        response.setStatusCode(statusCode);
+        response.setHeaders(headers);
+        return response;
+    }
+
+    public static APIGatewayProxyResponseEvent createNotModifiedResponse(String etag) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(304);
+        response.setHeaders(withDefaults(NOT_MODIFIED_HEADERS, Map.of("ETag", etag)));
+        return response;
+    }
+
+    /** Empty response carrying the CORS headers, for OPTIONS preflight requests. */
+    public static APIGatewayProxyResponseEvent createPreflightResponse() {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(204);
+        response.setHeaders(DEFAULT_HEADERS);
         return response;
     }
 
@@ -35,4 +94,21 @@ public class ResponseUtil {
         errorBody.put("error", message);
         return createResponse(statusCode, errorBody);
     }
+
+    private static APIGatewayProxyResponseEvent buildResponse(int statusCode, String body, Map<String, String> headers) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(statusCode);
+        response.setHeaders(headers);
+        response.setBody(body);
+        return response;
+    }
+
+    private static Map<String, String> withDefaults(Map<String, String> defaults, Map<String, String> extraHeaders) {
+        if (extraHeaders.isEmpty()) {
+            return defaults;
+        }
+        Map<String, String> headers = new HashMap<>(defaults);
+        headers.putAll(extraHeaders);
+        return headers;
+    }
 }
@@ -0,0 +1,44 @@
+package com.doccollab.utils;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Newline-delimited JSON response whose body is written only when it is sent.
+ *
+ * {@link com.doccollab.server.DocumentServer} streams it to the connection as a chunked
+ * body, so rows go out as the writer produces them. The Lambda proxy integration needs the
+ * whole body as a string, so there {@link #getBody()} renders it on first use.
+ */
+public class StreamingResponse extends APIGatewayProxyResponseEvent {
+
+    private final transient JsonCodec.BodyWriter writer;
+
+    StreamingResponse(JsonCodec.BodyWriter writer) {
+        this.writer = writer;
+    }
+
+    /** Writes the body to {@code out}; the writer runs again on every call. */
+    public void writeTo(OutputStream out) throws IOException {
+        JsonCodec.writeLines(writer, out);
+    }
+
+    @Override
+    public String getBody() {
+        if (super.getBody() == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            setBody(out.toString(StandardCharsets.UTF_8));
+        }
+        return super.getBody();
+    }
+}